@@ -0,0 +1,66 @@
+package me.agentoak.mcsdnotifier;
+
+import org.bukkit.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Calling Paper-only API through {@link Method#invoke(Object, Object...)} on every call, as the plugin used to,
+ * compared to a getter bound with {@link ReflectionUtils#bindGetter(Object, Class, String, Class)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReflectionBenchmark {
+    private Server server;
+    private Method getTPS;
+    private Method isStopping;
+    private DoubleArraySupplier boundTPS;
+    private BooleanSupplier boundIsStopping;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        server = StubServer.create();
+        getTPS = server.getClass().getMethod("getTPS");
+        isStopping = server.getClass().getMethod("isStopping");
+        boundTPS = ReflectionUtils.bindGetter(server, Server.class, "getTPS", DoubleArraySupplier.class)
+                       .orElseThrow(IllegalStateException::new);
+        boundIsStopping = ReflectionUtils.bindGetter(server, Server.class, "isStopping", BooleanSupplier.class)
+                              .orElseThrow(IllegalStateException::new);
+    }
+
+    @Benchmark
+    public double[] reflectiveTPS() throws ReflectiveOperationException {
+        return (double[]) getTPS.invoke(server);
+    }
+
+    @Benchmark
+    public double[] boundTPS() {
+        return boundTPS.getAsDoubleArray();
+    }
+
+    @Benchmark
+    public boolean reflectiveIsStopping() throws ReflectiveOperationException {
+        return (Boolean) isStopping.invoke(server);
+    }
+
+    @Benchmark
+    public boolean boundIsStopping() {
+        return boundIsStopping.getAsBoolean();
+    }
+}
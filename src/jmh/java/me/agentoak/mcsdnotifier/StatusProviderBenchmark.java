@@ -0,0 +1,73 @@
+package me.agentoak.mcsdnotifier;
+
+import org.bukkit.Server;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building a status with the built-in {@link StatusProvider}s against a {@link StubServer}, and of the
+ * tick duration {@link StatusSegment}. Since the stub and the ticks do not change, this measures the path where the
+ * cached status is reused. Includes the overhead of the proxied stub.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StatusProviderBenchmark {
+    private StatusProvider basic;
+    private StatusProvider basicWithCounters;
+    private StatusProvider tps;
+    private StatusSegment mspt;
+    private StatusSnapshot snapshot;
+
+    @Setup
+    public void setup() {
+        Server server = StubServer.create();
+        basic = new BasicStatusProvider(server);
+        // Not started, the counts stay 0 but are read the same way
+        basicWithCounters = new BasicStatusProvider(server,
+            new ServerCounters(StubServer.createPlugin(server, new File("MCSDNotifier"))));
+        tps = new TPSStatusProvider(server);
+
+        RollingHistogram ticks = new RollingHistogram(2, 300, TimeUnit.SECONDS);
+        long now = System.nanoTime();
+        for (int i = 0; i < 1200; i++) {
+            ticks.record(50_000 + i % 7 * 1_000, now);
+        }
+        mspt = new MSPTSegment(ticks);
+        snapshot = new StatusSnapshot(now, 12, 20, new double[]{19.98, 20.0, 20.0});
+    }
+
+    @Benchmark
+    public String basic() {
+        return basic.status();
+    }
+
+    @Benchmark
+    public String basicWithCounters() {
+        return basicWithCounters.status();
+    }
+
+    @Benchmark
+    public String tps() {
+        return tps.status();
+    }
+
+    @Benchmark
+    public String msptSegment() {
+        return mspt.build(snapshot);
+    }
+}
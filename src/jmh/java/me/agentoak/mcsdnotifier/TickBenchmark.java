@@ -0,0 +1,107 @@
+package me.agentoak.mcsdnotifier;
+
+import me.agentoak.mcsdnotifier.system.NullTransport;
+import me.agentoak.mcsdnotifier.system.SDNotify;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link NotifyListener#onTickStart(long)} on the main thread in ticks where no status is due, i.e. almost
+ * every tick.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TickBenchmark {
+    private static final long INTERVAL = 10_000L;
+
+    private NotifyListener listener;
+    private NotifyListener recordingListener;
+
+    @Setup
+    public void setup() throws Exception {
+        File dataFolder = Files.createTempDirectory("mcsdnotifier").toFile();
+        dataFolder.deleteOnExit();
+        Plugin plugin = StubServer.createPlugin(StubServer.create(), dataFolder);
+        NotifyIntervals intervals = new NotifyIntervals(0, INTERVAL, INTERVAL);
+        ServerLifecycle lifecycle = new StatusLifecycle();
+
+        SDNotify sdNotify = new SDNotify(1234, new NullTransport(), 0);
+        // Sender thread is not started, so the heartbeat is published but never consumed
+        NotifySender sender = new NotifySender(plugin, sdNotify, intervals);
+        listener = new NotifyListener(plugin, lifecycle, intervals, sdNotify, sender,
+            new RollingHistogram(2, 300, TimeUnit.SECONDS), new RollingHistogram(2, 300, TimeUnit.SECONDS), null, null);
+        recordingListener = new NotifyListener(plugin, lifecycle, intervals, sdNotify, sender,
+            new RollingHistogram(2, 300, TimeUnit.SECONDS), new RollingHistogram(2, 300, TimeUnit.SECONDS),
+            FlightRecorder.open(dataFolder, 1 << 20, 1234), null);
+        new File(dataFolder, FlightRecorder.FILE_NAME).deleteOnExit();
+        // First tick builds the status, following ticks within the status interval take the fast path
+        listener.onTickStart(System.nanoTime());
+        recordingListener.onTickStart(System.nanoTime());
+    }
+
+    @Benchmark
+    public void onTickStart() {
+        listener.onTickStart(System.nanoTime());
+    }
+
+    @Benchmark
+    public void onTickEnd() {
+        listener.onTickEnd(System.nanoTime(), 20_000L);
+    }
+
+    @Benchmark
+    public void onTickStartRecorded() {
+        recordingListener.onTickStart(System.nanoTime());
+    }
+
+    /**
+     * Builds the status with the basic {@link StatusProvider}, like the plugin's lifecycle.
+     */
+    private static final class StatusLifecycle implements ServerLifecycle {
+        private final StatusProvider provider = new BasicStatusProvider(StubServer.create());
+
+        @Override
+        public void startupFinished(long tickTime) {
+        }
+
+        @Override
+        public void updateStatus(NotifySender sender) {
+            sender.setStatus(provider.status());
+        }
+
+        @Override
+        public Optional<String> buildStatus() {
+            return Optional.of(provider.status());
+        }
+
+        @Override
+        public void pluginDisabling(String name, long now) {
+        }
+
+        @Override
+        public void takedown() {
+        }
+
+        @Override
+        public void stopping() {
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package me.agentoak.mcsdnotifier.system;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building each kind of message in {@link SDNotify}, without the syscall.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SDNotifyBenchmark {
+    private static final String STATUS = "Running Paper git-Paper-794 (MC: 1.16.5) with 12/20 players, " +
+                                             "TPS avg: 19.98 20.00 20.00";
+
+    private NullTransport transport;
+    private SDNotify sdNotify;
+
+    @Setup
+    public void setup() {
+        transport = new NullTransport();
+        sdNotify = new SDNotify(1234, transport, 0);
+    }
+
+    @Benchmark
+    public int init() {
+        sdNotify.init(STATUS);
+        return transport.getLength();
+    }
+
+    @Benchmark
+    public int ready() {
+        sdNotify.ready(STATUS);
+        return transport.getLength();
+    }
+
+    @Benchmark
+    public int watchdog() {
+        sdNotify.watchdog();
+        return transport.getLength();
+    }
+
+    @Benchmark
+    public int watchdogWithStatus() {
+        sdNotify.watchdog(STATUS);
+        return transport.getLength();
+    }
+
+    @Benchmark
+    public int status() {
+        sdNotify.status(STATUS);
+        return transport.getLength();
+    }
+
+    @Benchmark
+    public int reloading() {
+        sdNotify.reloading(null);
+        return transport.getLength();
+    }
+
+    @Benchmark
+    public int stopping() {
+        sdNotify.stopping(null);
+        return transport.getLength();
+    }
+}
@@ -0,0 +1,49 @@
+package me.agentoak.mcsdnotifier;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Long-running task on its own daemon thread, which parks between units of work and can be stopped from any thread.
+ */
+abstract class BackgroundTask implements Runnable {
+    private static final long JOIN_TIMEOUT = 1_000L;
+
+    protected final Thread thread;
+    private volatile boolean running = true;
+
+    BackgroundTask(String name) {
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stop the thread and wait a bit for work in progress to finish.
+     */
+    void stop() {
+        running = false;
+        wakeup();
+        if (thread.isAlive() && thread != Thread.currentThread()) {
+            try {
+                thread.join(JOIN_TIMEOUT);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Wake up the thread so it notices it should stop. Tasks that block in something other than
+     * {@link LockSupport#park()} must override this.
+     */
+    protected void wakeup() {
+        LockSupport.unpark(thread);
+    }
+
+    protected boolean isRunning() {
+        return running;
+    }
+}
@@ -5,18 +5,60 @@ import org.bukkit.Server;
 /**
  * {@link StatusProvider} implementation that just contains some basic information: server name, version, player count,
  * plugin count and world count.
+ * <p>
+ * The status string is only rebuilt when one of the counts changed.
+ * <p>
+ * With {@link ServerCounters}, the counts are read from those instead of copying the server's plugin array and world
+ * list on every call.
  */
 public class BasicStatusProvider implements StatusProvider {
     private final Server server;
+    private final ServerCounters counters;
+
+    private int lastPlayers = -1;
+    private int lastMaxPlayers;
+    private int lastPlugins;
+    private int lastWorlds;
+    private String status;
 
     public BasicStatusProvider(Server server) {
+        this(server, null);
+    }
+
+    /**
+     * @param counters counts to use instead of asking the server, {@code null} to ask the server
+     * @see MCSDNotifierPlugin#getServerCounters()
+     */
+    public BasicStatusProvider(Server server, ServerCounters counters) {
         this.server = server;
+        this.counters = counters;
     }
 
     @Override
     public String status() {
-        return String.format("Running %s %s with %d/%d players, %d plugins, %d worlds", server.getName(),
-            server.getVersion(), server.getOnlinePlayers().size(), server.getMaxPlayers(),
-            server.getPluginManager().getPlugins().length, server.getWorlds().size());
+        int maxPlayers = server.getMaxPlayers();
+        int players;
+        int plugins;
+        int worlds;
+        if (counters != null) {
+            players = (int) counters.getOnlinePlayers();
+            plugins = (int) counters.getEnabledPlugins();
+            worlds = (int) counters.getLoadedWorlds();
+        } else {
+            players = server.getOnlinePlayers().size();
+            plugins = server.getPluginManager().getPlugins().length;
+            worlds = server.getWorlds().size();
+        }
+
+        if (status == null || players != lastPlayers || maxPlayers != lastMaxPlayers || plugins != lastPlugins ||
+                worlds != lastWorlds) {
+            status = String.format("Running %s %s with %d/%d players, %d plugins, %d worlds", server.getName(),
+                server.getVersion(), players, maxPlayers, plugins, worlds);
+            lastPlayers = players;
+            lastMaxPlayers = maxPlayers;
+            lastPlugins = plugins;
+            lastWorlds = worlds;
+        }
+        return status;
     }
 }
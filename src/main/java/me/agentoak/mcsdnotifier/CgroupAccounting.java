@@ -0,0 +1,277 @@
+package me.agentoak.mcsdnotifier;
+
+import me.agentoak.mcsdnotifier.system.MemoryPressure;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * CPU and memory accounting of the server's cgroup v2, i.e. what the service manager sees and enforces
+ * ({@code CPUQuota=}, {@code MemoryHigh=}, {@code MemoryMax=}). A throttled CPU quota or a cgroup reclaiming memory
+ * explains low TPS right away.
+ * <p>
+ * A background thread samples {@code cpu.stat}, {@code memory.current}, {@code memory.max} and {@code memory.events}
+ * every few seconds and publishes the rates of change over the last interval as {@link CgroupStats}. Each file is kept
+ * open as a {@link FileChannel} and re-read from the start into a pre-allocated direct buffer, which makes the kernel
+ * generate the current values. Values are parsed from the bytes directly, so a sample only allocates the published
+ * {@link CgroupStats}.
+ */
+final class CgroupAccounting extends BackgroundTask {
+    /**
+     * In ms, time between samples, i.e. the interval rates are averaged over.
+     */
+    private static final long SAMPLE_INTERVAL = 5_000L;
+    /**
+     * Plenty for the few lines of the files read here.
+     */
+    private static final int BUFFER_SIZE = 4096;
+    private static final double USEC_PER_NSEC = 1 / 1_000.0;
+
+    private static final byte[] USAGE_USEC = key("usage_usec");
+    private static final byte[] NR_PERIODS = key("nr_periods");
+    private static final byte[] NR_THROTTLED = key("nr_throttled");
+    private static final byte[] HIGH = key("high");
+    private static final byte[] MAX = key("max");
+    private static final byte[] OOM_KILL = key("oom_kill");
+
+    private final Plugin plugin;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final FileChannel cpuStat;
+    private final FileChannel memoryCurrent;
+    private final FileChannel memoryMax;
+    private final FileChannel memoryEvents;
+
+    // Previous sample, only used by the sampling thread
+    private long lastSample;
+    private long lastUsage;
+    private long lastPeriods;
+    private long lastThrottled;
+    private long baseHighEvents;
+    private long baseMaxEvents;
+    private long baseOomKills;
+
+    private volatile CgroupStats stats = CgroupStats.NONE;
+
+    /**
+     * @param cgroup folder of the cgroup in the cgroup v2 hierarchy, must contain {@code cpu.stat}
+     */
+    CgroupAccounting(Plugin plugin, Path cgroup) throws IOException {
+        super(plugin.getName() + " Cgroup Accounting");
+        this.plugin = plugin;
+        this.cpuStat = FileChannel.open(cgroup.resolve("cpu.stat"), StandardOpenOption.READ);
+        // Memory files only exist if the memory controller is enabled for our cgroup
+        this.memoryCurrent = openIfExists(cgroup.resolve("memory.current"));
+        this.memoryMax = openIfExists(cgroup.resolve("memory.max"));
+        this.memoryEvents = openIfExists(cgroup.resolve("memory.events"));
+        thread.setPriority(Thread.MIN_PRIORITY);
+
+        // Baseline, so rates are available after the first interval and event counts start at 0
+        lastSample = System.nanoTime();
+        if (read(cpuStat)) {
+            lastUsage = parseField(buffer, USAGE_USEC);
+            lastPeriods = parseField(buffer, NR_PERIODS);
+            lastThrottled = parseField(buffer, NR_THROTTLED);
+        }
+        if (read(memoryEvents)) {
+            baseHighEvents = parseField(buffer, HIGH);
+            baseMaxEvents = parseField(buffer, MAX);
+            baseOomKills = parseField(buffer, OOM_KILL);
+        }
+    }
+
+    /**
+     * Open the accounting of our own cgroup.
+     *
+     * @return empty if the system does not use cgroup v2 or our cgroup has no accounting files
+     */
+    static Optional<CgroupAccounting> create(Plugin plugin) {
+        Optional<Path> cgroup = MemoryPressure.findCgroup(Paths.get("/proc/self/cgroup"));
+        if (!cgroup.isPresent() || !Files.exists(cgroup.get().resolve("cpu.stat"))) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(new CgroupAccounting(plugin, cgroup.get()));
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not open cgroup accounting in " + cgroup.get(), e);
+            return Optional.empty();
+        }
+    }
+
+    private static FileChannel openIfExists(Path file) throws IOException {
+        return Files.exists(file) ? FileChannel.open(file, StandardOpenOption.READ) : null;
+    }
+
+    private static byte[] key(String name) {
+        return name.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (isRunning()) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(SAMPLE_INTERVAL));
+                if (isRunning()) {
+                    sample(System.nanoTime());
+                }
+            }
+        } finally {
+            closeQuietly(cpuStat);
+            closeQuietly(memoryCurrent);
+            closeQuietly(memoryMax);
+            closeQuietly(memoryEvents);
+        }
+    }
+
+    /**
+     * Read all files and publish the values, only called by the sampling thread.
+     *
+     * @param now {@link System#nanoTime()}
+     */
+    void sample(long now) {
+        double elapsedUsec = (now - lastSample) * USEC_PER_NSEC;
+        lastSample = now;
+
+        CgroupStats previous = stats;
+        double cpuUsage = previous.getCpuUsage();
+        double throttledRatio = previous.getThrottledRatio();
+        double throttledPeriods = previous.getThrottledPeriods();
+        long memoryUsed = previous.getMemoryUsed();
+        long memoryLimit = previous.getMemoryLimit();
+        long highEvents = previous.getMemoryHighEvents();
+        long maxEvents = previous.getMemoryMaxEvents();
+        long oomKills = previous.getOomKills();
+        if (read(cpuStat)) {
+            long usage = parseField(buffer, USAGE_USEC);
+            long periods = parseField(buffer, NR_PERIODS);
+            long throttled = parseField(buffer, NR_THROTTLED);
+            cpuUsage = usage < 0 ? -1 : (usage - lastUsage) / elapsedUsec;
+            /*
+             * Missing without the cpu controller, i.e. without CPUQuota=. Not throttled_usec, which is summed over all
+             * CPUs and can exceed the elapsed time with more than one CPU.
+             */
+            if (periods < 0 || throttled < 0) {
+                throttledRatio = -1;
+                throttledPeriods = -1;
+            } else {
+                // No periods pass while the cgroup is idle
+                long elapsedPeriods = periods - lastPeriods;
+                throttledRatio = elapsedPeriods == 0 ? 0 : (throttled - lastThrottled) / (double) elapsedPeriods;
+                throttledPeriods = (throttled - lastThrottled) * 1_000_000 / elapsedUsec;
+            }
+            lastUsage = usage;
+            lastPeriods = periods;
+            lastThrottled = throttled;
+        }
+        if (read(memoryCurrent)) {
+            memoryUsed = parseNumber(buffer, 0);
+        }
+        if (read(memoryMax)) {
+            // "max" if there is no limit
+            memoryLimit = parseNumber(buffer, 0);
+        }
+        if (read(memoryEvents)) {
+            highEvents = parseField(buffer, HIGH) - baseHighEvents;
+            maxEvents = parseField(buffer, MAX) - baseMaxEvents;
+            oomKills = parseField(buffer, OOM_KILL) - baseOomKills;
+        }
+        stats = new CgroupStats(cpuUsage, throttledRatio, throttledPeriods, memoryUsed, memoryLimit, highEvents,
+            maxEvents, oomKills);
+    }
+
+    /**
+     * Read a whole file into {@link #buffer}, ready to be parsed.
+     *
+     * @return false if the file does not exist or could not be read
+     */
+    private boolean read(FileChannel channel) {
+        if (channel == null) {
+            return false;
+        }
+        buffer.clear();
+        try {
+            long position = 0;
+            int read;
+            while (buffer.hasRemaining() && (read = channel.read(buffer, position)) > 0) {
+                position += read;
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.FINE, "Could not read cgroup accounting", e);
+            return false;
+        }
+        buffer.flip();
+        return true;
+    }
+
+    /**
+     * Find a {@code key value} line in a buffer, from index 0 to its limit, e.g. in {@code cpu.stat}.
+     *
+     * @return the value, -1 if there is no such line
+     */
+    static long parseField(ByteBuffer buffer, byte[] key) {
+        int limit = buffer.limit();
+        int lineStart = 0;
+        while (lineStart + key.length < limit) {
+            if (matches(buffer, lineStart, key) && buffer.get(lineStart + key.length) == ' ') {
+                return parseNumber(buffer, lineStart + key.length + 1);
+            }
+            while (lineStart < limit && buffer.get(lineStart) != '\n') {
+                lineStart++;
+            }
+            lineStart++;
+        }
+        return -1;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int position, byte[] key) {
+        for (int i = 0; i < key.length; i++) {
+            if (buffer.get(position + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the decimal number at the position in the buffer, -1 if there is none
+     */
+    static long parseNumber(ByteBuffer buffer, int position) {
+        long value = 0;
+        boolean digits = false;
+        for (int i = position; i < buffer.limit(); i++) {
+            byte b = buffer.get(i);
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10 + (b - '0');
+            digits = true;
+        }
+        return digits ? value : -1;
+    }
+
+    private void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * @return values of the last sample, {@link CgroupStats#NONE} until the first one
+     */
+    CgroupStats getStats() {
+        return stats;
+    }
+}
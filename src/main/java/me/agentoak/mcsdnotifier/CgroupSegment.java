@@ -0,0 +1,66 @@
+package me.agentoak.mcsdnotifier;
+
+/**
+ * {@link StatusSegment} with CPU usage, CPU throttling and memory usage of the server's cgroup, e.g.
+ * {@code cgroup CPU: 1.52, throttled: 12%, memory: 3.2/4.0 GiB}. Left out until the first sample.
+ * <p>
+ * The string is only rebuilt when one of the displayed (rounded) values changed.
+ */
+final class CgroupSegment implements StatusSegment {
+    private static final long BYTES_PER_GIB = 1L << 30;
+
+    private final CgroupAccounting cgroupAccounting;
+    /**
+     * CPU usage in hundredths of CPUs, throttled periods in percent and memory used and limit in tenths of GiB, i.e.
+     * as they are displayed. -1 if unavailable.
+     */
+    private final long[] rounded = {-1, -1, -1, -1};
+    private String segment;
+
+    CgroupSegment(CgroupAccounting cgroupAccounting) {
+        this.cgroupAccounting = cgroupAccounting;
+    }
+
+    @Override
+    public String build(StatusSnapshot snapshot) {
+        CgroupStats stats = cgroupAccounting.getStats();
+        double cpu = stats.getCpuUsage();
+        double throttled = stats.getThrottledRatio();
+        long memoryUsed = stats.getMemoryUsed();
+        long memoryLimit = stats.getMemoryLimit();
+        long[] current = {
+            cpu < 0 ? -1 : Math.round(cpu * 100),
+            throttled < 0 ? -1 : Math.round(throttled * 100),
+            memoryUsed < 0 ? -1 : Math.round(memoryUsed * 10.0 / BYTES_PER_GIB),
+            memoryLimit < 0 ? -1 : Math.round(memoryLimit * 10.0 / BYTES_PER_GIB)
+        };
+        if (current[0] < 0) {
+            return null;
+        }
+
+        boolean changed = false;
+        for (int i = 0; i < current.length; i++) {
+            if (rounded[i] != current[i]) {
+                rounded[i] = current[i];
+                changed = true;
+            }
+        }
+
+        if (segment == null || changed) {
+            StringBuilder sb = new StringBuilder(64).append("cgroup CPU: ").append(rounded[0] / 100).append('.')
+                                                    .append(rounded[0] % 100 < 10 ? "0" : "").append(rounded[0] % 100);
+            if (rounded[1] >= 0) {
+                sb.append(", throttled: ").append(rounded[1]).append('%');
+            }
+            if (rounded[2] >= 0) {
+                sb.append(", memory: ").append(rounded[2] / 10).append('.').append(rounded[2] % 10);
+                if (rounded[3] >= 0) {
+                    sb.append('/').append(rounded[3] / 10).append('.').append(rounded[3] % 10);
+                }
+                sb.append(" GiB");
+            }
+            segment = sb.toString();
+        }
+        return segment;
+    }
+}
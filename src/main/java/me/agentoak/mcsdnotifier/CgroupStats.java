@@ -0,0 +1,99 @@
+package me.agentoak.mcsdnotifier;
+
+/**
+ * CPU and memory accounting of the server's cgroup as of the last sample, i.e. what the service manager sees and
+ * enforces ({@code CPUQuota=}, {@code MemoryHigh=}, {@code MemoryMax=}). Immutable, all values are from the same
+ * sample.
+ *
+ * @see MCSDNotifierPlugin#getCgroupStats()
+ */
+public final class CgroupStats {
+    /**
+     * Before the first sample.
+     */
+    static final CgroupStats NONE = new CgroupStats(-1, -1, -1, -1, -1, 0, 0, 0);
+
+    private final double cpuUsage;
+    private final double throttledRatio;
+    private final double throttledPeriods;
+    private final long memoryUsed;
+    private final long memoryLimit;
+    private final long memoryHighEvents;
+    private final long memoryMaxEvents;
+    private final long oomKills;
+
+    CgroupStats(double cpuUsage, double throttledRatio, double throttledPeriods, long memoryUsed, long memoryLimit,
+                long memoryHighEvents, long memoryMaxEvents, long oomKills) {
+        this.cpuUsage = cpuUsage;
+        this.throttledRatio = throttledRatio;
+        this.throttledPeriods = throttledPeriods;
+        this.memoryUsed = memoryUsed;
+        this.memoryLimit = memoryLimit;
+        this.memoryHighEvents = memoryHighEvents;
+        this.memoryMaxEvents = memoryMaxEvents;
+        this.oomKills = oomKills;
+    }
+
+    /**
+     * CPU time used by the cgroup over the last few seconds, in CPUs. E.g. 1.5 means one and a half CPUs were busy on
+     * average. -1 until the first sample.
+     */
+    public double getCpuUsage() {
+        return cpuUsage;
+    }
+
+    /**
+     * Share of the CPU quota enforcement periods (usually 100 ms) of the last few seconds in which the cgroup was
+     * throttled for exceeding its quota, from 0 to 1. -1 until the first sample or if the cgroup has no CPU quota
+     * accounting.
+     */
+    public double getThrottledRatio() {
+        return throttledRatio;
+    }
+
+    /**
+     * Enforcement periods per second over the last few seconds in which the cgroup was throttled. -1 until the first
+     * sample or if the cgroup has no CPU quota accounting.
+     */
+    public double getThrottledPeriods() {
+        return throttledPeriods;
+    }
+
+    /**
+     * In bytes, memory currently used by the cgroup, including page cache. -1 until the first sample or if the memory
+     * controller is not enabled.
+     */
+    public long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * In bytes, {@code MemoryMax=} of the cgroup. -1 if there is no limit, until the first sample or if the memory
+     * controller is not enabled.
+     */
+    public long getMemoryLimit() {
+        return memoryLimit;
+    }
+
+    /**
+     * Number of times the cgroup was throttled and reclaimed for exceeding {@code MemoryHigh=} since the plugin was
+     * enabled.
+     */
+    public long getMemoryHighEvents() {
+        return memoryHighEvents;
+    }
+
+    /**
+     * Number of times the cgroup was about to exceed {@code MemoryMax=} since the plugin was enabled.
+     */
+    public long getMemoryMaxEvents() {
+        return memoryMaxEvents;
+    }
+
+    /**
+     * Number of processes in the cgroup killed by the OOM killer since the plugin was enabled.
+     */
+    public long getOomKills() {
+        return oomKills;
+    }
+}
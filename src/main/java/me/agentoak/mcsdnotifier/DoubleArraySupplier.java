@@ -0,0 +1,11 @@
+package me.agentoak.mcsdnotifier;
+
+/**
+ * Supplier of {@code double[]} results, e.g. a bound {@code Server#getTPS()}.
+ *
+ * @see ReflectionUtils#bindGetter(Object, Class, String, Class)
+ */
+@FunctionalInterface
+interface DoubleArraySupplier {
+    double[] getAsDoubleArray();
+}
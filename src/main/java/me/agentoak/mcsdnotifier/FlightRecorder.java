@@ -0,0 +1,382 @@
+package me.agentoak.mcsdnotifier;
+
+import me.agentoak.mcsdnotifier.system.NotifyObserver;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records ticks, notifications and lifecycle events into a ring buffer in a memory-mapped file, so they can be looked
+ * at after the watchdog killed the server or the OOM killer killed the whole cgroup, when logs are often cut off.
+ * <p>
+ * Records are written with plain stores into the shared mapping, without system calls or allocation. The pages belong
+ * to the kernel's page cache, so they survive the process dying and are written back to the file eventually. They
+ * do not survive the machine crashing. Each record carries its sequence number, which is stored last, so the reader
+ * can tell complete records apart and find the newest one.
+ * <p>
+ * When opened, the file of the previous JVM run is kept as {@code flight-previous.bin}, since the service manager
+ * restarts the server right after a crash. A file written by this JVM before a {@code /reload} is overwritten instead,
+ * so a reload after a crash does not replace the crash's recording.
+ * <p>
+ * File layout, all numbers in native byte order: a {@link #HEADER_SIZE} byte header with magic, version, record size,
+ * capacity, pid and the wall clock and {@link System#nanoTime()} when the file was opened, then {@code capacity}
+ * records of {@link #RECORD_SIZE} bytes each: sequence number + 1 (0 if unused), {@code System.nanoTime()}, type,
+ * an int argument and two long values.
+ */
+final class FlightRecorder implements NotifyObserver {
+    static final String FILE_NAME = "flight.bin";
+    static final String PREVIOUS_FILE_NAME = "flight-previous.bin";
+
+    private static final long MAGIC = 0x4d43_5344_4652_3031L; // "MCSDFR01"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 40;
+    private static final int MIN_CAPACITY = 64;
+    /**
+     * In µs, tick duration or interval above which the reader lists a tick on its own.
+     */
+    private static final long SLOW_TICK = 50_000L;
+    private static final long NSEC_PER_USEC = 1_000L;
+    private static final long NSEC_PER_MSEC = 1_000_000L;
+
+    private static final int TICK_START = 1;
+    private static final int TICK_END = 2;
+    private static final int NOTIFY = 3;
+    private static final int OPENED = 4;
+    private static final int STARTED = 5;
+    private static final int PLUGIN_DISABLE = 6;
+    private static final int STOP = 7;
+    private static final int RELOAD = 8;
+
+    private static final String[] ASSIGNMENT_NAMES = {
+        "MAINPID", "READY", "RELOADING", "STOPPING", "WATCHDOG", "STATUS", "EXTEND_TIMEOUT_USEC", "FDSTORE",
+        "FDSTOREREMOVE"
+    };
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private FlightRecorder(MappedByteBuffer buffer, int capacity) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Keep the file of the previous JVM run and map a new one.
+     *
+     * @param size in bytes, size of the file including the header
+     */
+    static FlightRecorder open(File folder, long size, int pid) throws IOException {
+        int capacity = (int) Math.max(MIN_CAPACITY, Math.min(Integer.MAX_VALUE - HEADER_SIZE, size - HEADER_SIZE) /
+                                                        RECORD_SIZE);
+        File file = new File(folder, FILE_NAME);
+        boolean reused = false;
+        if (file.isFile()) {
+            reused = isFromThisJvm(file, pid);
+            if (!reused) {
+                Files.move(file.toPath(), new File(folder, PREVIOUS_FILE_NAME).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+        } else if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Could not create folder " + folder);
+        }
+
+        MappedByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // Mapping stays valid after the channel is closed
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_SIZE + (long) capacity * RECORD_SIZE);
+        }
+        // Fault the pages in now rather than on the first records
+        buffer.load();
+        buffer.order(ByteOrder.nativeOrder());
+        if (reused) {
+            // Records from before the reload would look newer than the first records of the new sequence
+            for (int i = 0; i < capacity; i++) {
+                buffer.putLong(HEADER_SIZE + i * RECORD_SIZE, 0);
+            }
+        }
+        buffer.putInt(8, RECORD_SIZE)
+              .putInt(12, VERSION)
+              .putInt(16, capacity)
+              .putInt(20, pid)
+              .putLong(24, System.currentTimeMillis())
+              .putLong(32, System.nanoTime())
+              .putLong(0, MAGIC);
+
+        FlightRecorder recorder = new FlightRecorder(buffer, capacity);
+        recorder.record(OPENED, pid, System.nanoTime(), 0, 0);
+        return recorder;
+    }
+
+    /**
+     * @return whether the file was opened by this JVM, i.e. before a reload
+     */
+    private static boolean isFromThisJvm(File file, int pid) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // Read the whole header
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        // The pid alone is not enough, containers may give the server the same pid on every start
+        return !header.hasRemaining() && header.getLong(0) == MAGIC && header.getInt(20) == pid &&
+                   header.getLong(24) >= ManagementFactory.getRuntimeMXBean().getStartTime();
+    }
+
+    private void record(int type, int argument, long time, long value1, long value2) {
+        long seq = sequence.getAndIncrement();
+        int offset = HEADER_SIZE + (int) (seq % capacity) * RECORD_SIZE;
+        buffer.putLong(offset + 8, time)
+              .putInt(offset + 16, type)
+              .putInt(offset + 20, argument)
+              .putLong(offset + 24, value1)
+              .putLong(offset + 32, value2)
+              .putLong(offset, seq + 1);
+    }
+
+    void tickStart(long tickTime) {
+        record(TICK_START, 0, tickTime, 0, 0);
+    }
+
+    /**
+     * @param tickDuration in µs
+     */
+    void tickEnd(long endTime, long tickDuration) {
+        record(TICK_END, 0, endTime, tickDuration, 0);
+    }
+
+    void startupFinished(long tickTime) {
+        record(STARTED, 0, tickTime, 0, 0);
+    }
+
+    void takedownDetected(boolean reload) {
+        record(reload ? RELOAD : STOP, 0, System.nanoTime(), 0, 0);
+    }
+
+    /**
+     * Only the first 16 characters of the name are kept.
+     */
+    void pluginDisabling(String name, long now) {
+        record(PLUGIN_DISABLE, name.length(), now, pack(name, 0), pack(name, 8));
+    }
+
+    @Override
+    public void sent(int assignments, long value, int result) {
+        record(NOTIFY, assignments, System.nanoTime(), result, value);
+    }
+
+    /**
+     * @return 8 ASCII characters of the string starting at the index, non-ASCII characters replaced by {@code ?}
+     */
+    private static long pack(String s, int start) {
+        long packed = 0;
+        for (int i = Math.min(s.length(), start + 8) - 1; i >= start; i--) {
+            char c = s.charAt(i);
+            packed = packed << 8 | (c < 128 ? c : '?');
+        }
+        return packed;
+    }
+
+    private static void unpack(StringBuilder sb, long packed, int length) {
+        for (int i = 0; i < length; i++, packed >>>= 8) {
+            sb.append((char) (packed & 0xff));
+        }
+    }
+
+    /**
+     * Decode the records of the last seconds before the newest record. Runs of normal ticks are summarized in one line.
+     *
+     * @return one line per record or run of ticks
+     * @throws IOException if the file cannot be read or is not a flight recorder file
+     */
+    static List<String> decode(File file, long seconds) throws IOException {
+        ByteBuffer buffer;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        if (buffer.limit() < HEADER_SIZE || buffer.getLong(0) != MAGIC || buffer.getInt(12) != VERSION ||
+                buffer.getInt(8) != RECORD_SIZE) {
+            throw new IOException(file + " is not a flight recorder file");
+        }
+        int capacity = buffer.getInt(16);
+        if (buffer.limit() < HEADER_SIZE + (long) capacity * RECORD_SIZE) {
+            throw new IOException(file + " is truncated");
+        }
+        long baseMillis = buffer.getLong(24);
+        long baseNanos = buffer.getLong(32);
+
+        long newest = 0;
+        for (int i = 0; i < capacity; i++) {
+            newest = Math.max(newest, buffer.getLong(HEADER_SIZE + i * RECORD_SIZE));
+        }
+        List<String> lines = new ArrayList<>();
+        if (newest == 0) {
+            return lines;
+        }
+        long cutoff = buffer.getLong(HEADER_SIZE + (int) ((newest - 1) % capacity) * RECORD_SIZE + 8) -
+                          TimeUnit.SECONDS.toNanos(seconds);
+
+        Decoder decoder = new Decoder(lines, baseMillis, baseNanos, buffer.getInt(20));
+        for (long seq = Math.max(1, newest - capacity + 1); seq <= newest; seq++) {
+            int offset = HEADER_SIZE + (int) ((seq - 1) % capacity) * RECORD_SIZE;
+            long time = buffer.getLong(offset + 8);
+            // Skip records that were not completely written
+            if (buffer.getLong(offset) == seq && time - cutoff >= 0) {
+                decoder.decode(time, buffer.getInt(offset + 16), buffer.getInt(offset + 20),
+                    buffer.getLong(offset + 24), buffer.getLong(offset + 32));
+            }
+        }
+        decoder.flushTicks();
+        return lines;
+    }
+
+    private static final class Decoder {
+        private final List<String> lines;
+        private final long baseMillis;
+        private final long baseNanos;
+        private final int pid;
+        private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+
+        private long lastTickStart;
+        private long runStart;
+        private int runTicks;
+        private long runMaxDuration;
+
+        Decoder(List<String> lines, long baseMillis, long baseNanos, int pid) {
+            this.lines = lines;
+            this.baseMillis = baseMillis;
+            this.baseNanos = baseNanos;
+            this.pid = pid;
+        }
+
+        void decode(long time, int type, int argument, long value1, long value2) {
+            switch (type) {
+                case TICK_START:
+                    long interval = lastTickStart == 0 ? 0 : (time - lastTickStart) / NSEC_PER_USEC;
+                    lastTickStart = time;
+                    if (interval > 2 * SLOW_TICK) {
+                        flushTicks();
+                        add(time, new StringBuilder("tick started ").append(formatMillis(interval))
+                                                                    .append(" after the previous one"));
+                    }
+                    if (runTicks++ == 0) {
+                        runStart = time;
+                    }
+                    return;
+                case TICK_END:
+                    if (value1 > SLOW_TICK) {
+                        // The slow tick gets its own line instead of counting towards the run
+                        runTicks = Math.max(0, runTicks - 1);
+                        flushTicks();
+                        add(time, new StringBuilder("slow tick took ").append(formatMillis(value1)));
+                    } else {
+                        runMaxDuration = Math.max(runMaxDuration, value1);
+                    }
+                    return;
+                default:
+                    flushTicks();
+            }
+
+            StringBuilder sb = new StringBuilder();
+            switch (type) {
+                case NOTIFY:
+                    sb.append("sent");
+                    for (int i = 0; i < ASSIGNMENT_NAMES.length; i++) {
+                        if ((argument & 1 << i) != 0) {
+                            sb.append(' ').append(ASSIGNMENT_NAMES[i]);
+                            if ((1 << i) == MAINPID || (1 << i) == EXTEND_TIMEOUT_USEC) {
+                                sb.append('=').append(value2);
+                            }
+                        }
+                    }
+                    if (value1 < 0) {
+                        sb.append(" (failed: errno ").append(-value1).append(')');
+                    } else if (value1 == 0) {
+                        sb.append(" (no notify socket)");
+                    }
+                    break;
+                case OPENED:
+                    sb.append("recorder opened by pid ").append(argument == 0 ? pid : argument);
+                    break;
+                case STARTED:
+                    sb.append("first tick, startup finished");
+                    break;
+                case PLUGIN_DISABLE:
+                    sb.append("disabling plugin ");
+                    unpack(sb, value1, Math.min(argument, 8));
+                    unpack(sb, value2, Math.max(0, Math.min(argument, 16) - 8));
+                    if (argument > 16) {
+                        sb.append("...");
+                    }
+                    break;
+                case STOP:
+                    sb.append("detected stop");
+                    break;
+                case RELOAD:
+                    sb.append("detected reload");
+                    break;
+                default:
+                    sb.append("unknown record type ").append(type);
+            }
+            add(time, sb);
+        }
+
+        /**
+         * Summarize the ticks since the last line.
+         */
+        void flushTicks() {
+            if (runTicks > 0) {
+                StringBuilder sb = new StringBuilder().append(runTicks).append(runTicks == 1 ? " tick" : " ticks");
+                if (runMaxDuration > 0) {
+                    sb.append(", longest ").append(formatMillis(runMaxDuration));
+                }
+                add(runStart, sb);
+                runTicks = 0;
+                runMaxDuration = 0;
+            }
+        }
+
+        private void add(long time, CharSequence text) {
+            lines.add(format.format(new Date(baseMillis + (time - baseNanos) / NSEC_PER_MSEC)) + " " + text);
+        }
+
+        private static String formatMillis(long usec) {
+            long tenths = Math.round(usec / 100.0);
+            return tenths / 10 + "." + tenths % 10 + " ms";
+        }
+    }
+
+    /**
+     * Decode a flight recorder file without a server, e.g. when the server does not start anymore:
+     * {@code java -cp MCSDNotifier.jar me.agentoak.mcsdnotifier.FlightRecorder <file> [seconds]}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: FlightRecorder <file> [seconds]");
+            System.exit(2);
+        }
+        for (String line : decode(new File(args[0]), args.length > 1 ? Long.parseLong(args[1]) : 60)) {
+            System.out.println(line);
+        }
+    }
+}
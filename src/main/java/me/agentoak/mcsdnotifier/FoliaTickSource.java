@@ -0,0 +1,168 @@
+package me.agentoak.mcsdnotifier;
+
+import org.bukkit.Server;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+
+/**
+ * Folia has no main thread: the global region (world time, weather, console commands) and all world regions tick on
+ * different threads in parallel, and {@code Server#getScheduler()} is unsupported.
+ * <p>
+ * The {@link TickListener} is called from a task on the global region scheduler. On top of that, every player gets a
+ * task on its entity scheduler, which runs on whichever region thread currently ticks the player and publishes a
+ * heartbeat to {@link RegionHeartbeats}. Regions without players are not tracked, the API has no way to enumerate
+ * regions. The task is retired by Folia when the player leaves, which releases the slot.
+ * <p>
+ * Folia API is only available in Java 17+ builds of Paper API, so everything is called by reflection. Reflection is
+ * only used to schedule the tasks, not on every tick.
+ *
+ * @see #isSupported()
+ */
+final class FoliaTickSource implements TickSource, Listener {
+    private static final String REGIONIZED_SERVER = "io.papermc.paper.threadedregions.RegionizedServer";
+    private static final String SCHEDULER_PACKAGE = "io.papermc.paper.threadedregions.scheduler.";
+
+    private final Plugin plugin;
+    private final RegionHeartbeats heartbeats;
+
+    private Method getEntityScheduler;
+    private Method runEntityAtFixedRate;
+    private Method cancelTask;
+    private volatile boolean fullWarned;
+
+    FoliaTickSource(Plugin plugin, RegionHeartbeats heartbeats) {
+        this.plugin = plugin;
+        this.heartbeats = heartbeats;
+    }
+
+    @Override
+    public void start(TickListener listener) {
+        Method runGlobalAtFixedRate;
+        try {
+            runGlobalAtFixedRate = Class.forName(SCHEDULER_PACKAGE + "GlobalRegionScheduler")
+                                       .getMethod("runAtFixedRate", Plugin.class, Consumer.class, long.class,
+                                           long.class);
+            getEntityScheduler = Entity.class.getMethod("getScheduler");
+            runEntityAtFixedRate = Class.forName(SCHEDULER_PACKAGE + "EntityScheduler")
+                                       .getMethod("runAtFixedRate", Plugin.class, Consumer.class, Runnable.class,
+                                           long.class, long.class);
+            cancelTask = Class.forName(SCHEDULER_PACKAGE + "ScheduledTask").getMethod("cancel");
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            throw new IllegalStateException("Missing Folia scheduler API", e);
+        }
+
+        Consumer<Object> globalTick = task -> {
+            if (cancelIfDisabled(task)) {
+                return;
+            }
+            listener.onTickStart(System.nanoTime());
+        };
+        invoke(runGlobalAtFixedRate, globalScheduler(plugin.getServer()), plugin, globalTick, 1L, 1L);
+
+        plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        for (Player player : plugin.getServer().getOnlinePlayers()) {
+            track(player);
+        }
+    }
+
+    @Override
+    public boolean reportsTickDuration() {
+        return false;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        track(event.getPlayer());
+    }
+
+    private void track(Player player) {
+        int slot = heartbeats.claim(player.getName(), System.nanoTime());
+        if (slot == -1) {
+            if (!fullWarned) {
+                fullWarned = true;
+                plugin.getLogger().warning("Too many players to track all regions for the watchdog, some regions are " +
+                                               "not monitored");
+            }
+            return;
+        }
+
+        Consumer<Object> regionTick = task -> {
+            if (cancelIfDisabled(task)) {
+                heartbeats.release(slot);
+                return;
+            }
+            heartbeats.beat(slot, System.nanoTime());
+        };
+        Runnable retired = () -> heartbeats.release(slot);
+
+        Object entityScheduler = invoke(getEntityScheduler, player);
+        // Returns null if the player was removed in the meantime, in which case retired is never called
+        if (invoke(runEntityAtFixedRate, entityScheduler, plugin, regionTick, retired, 1L, 1L) == null) {
+            heartbeats.release(slot);
+        }
+    }
+
+    /**
+     * Entity tasks may outlive our plugin, e.g. when it is disabled by a plugin manager, so tasks cancel themselves.
+     */
+    private boolean cancelIfDisabled(Object task) {
+        if (plugin.isEnabled()) {
+            return false;
+        }
+        invoke(cancelTask, task);
+        return true;
+    }
+
+    private static Object invoke(Method method, Object object, Object... args) {
+        try {
+            return method.invoke(object, args);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Cannot call Folia method " + method, e);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static Object globalScheduler(Server server) {
+        try {
+            return invoke(Server.class.getMethod("getGlobalRegionScheduler"), server);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Missing Folia scheduler API", e);
+        }
+    }
+
+    /**
+     * Run a task once on the global region, which is the closest thing to the main thread Folia has.
+     */
+    static void runGlobal(Plugin plugin, Runnable task) {
+        try {
+            Method execute = Class.forName(SCHEDULER_PACKAGE + "GlobalRegionScheduler")
+                                 .getMethod("execute", Plugin.class, Runnable.class);
+            invoke(execute, globalScheduler(plugin.getServer()), plugin, task);
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            plugin.getLogger().log(Level.SEVERE, "Missing Folia scheduler API", e);
+        }
+    }
+
+    /**
+     * Checks if the server is Folia, i.e. ticks regions in parallel and requires this {@code TickSource}.
+     */
+    static boolean isSupported() {
+        return ReflectionUtils.classExists(REGIONIZED_SERVER);
+    }
+}
@@ -0,0 +1,56 @@
+package me.agentoak.mcsdnotifier;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link StatusSegment} with the number, 99th percentile and maximum of GC pauses of the last 5 minutes and the heap
+ * occupancy after the last GC, e.g. {@code GC 5m: 12 pauses p99/max: 25/40 ms, heap after GC: 43%}.
+ * <p>
+ * The string is only rebuilt when one of the displayed (rounded) values changed.
+ */
+final class GCSegment implements StatusSegment {
+    private static final long USEC_PER_MSEC = 1_000L;
+
+    private final GCStatistics gcStatistics;
+    /**
+     * GC pause count, 99th percentile and max in ms, and heap occupancy in percent, i.e. as they are displayed.
+     */
+    private final long[] rounded = new long[4];
+    private String segment;
+
+    GCSegment(GCStatistics gcStatistics) {
+        this.gcStatistics = gcStatistics;
+    }
+
+    @Override
+    public String build(StatusSnapshot snapshot) {
+        RollingHistogram.Snapshot pauses = gcStatistics.getPauseStats(5, TimeUnit.MINUTES);
+        long heapUsed = gcStatistics.getHeapUsedAfterGC();
+        long heapMax = gcStatistics.getHeapMax();
+        long[] current = {
+            pauses.getCount(),
+            Math.round((double) pauses.getPercentile(99) / USEC_PER_MSEC),
+            Math.round((double) pauses.getMax() / USEC_PER_MSEC),
+            heapUsed < 0 || heapMax <= 0 ? -1 : Math.round(heapUsed * 100.0 / heapMax)
+        };
+        boolean changed = false;
+        for (int i = 0; i < current.length; i++) {
+            if (rounded[i] != current[i]) {
+                rounded[i] = current[i];
+                changed = true;
+            }
+        }
+
+        if (segment == null || changed) {
+            StringBuilder sb = new StringBuilder(64).append("GC 5m: ").append(rounded[0]).append(" pauses");
+            if (rounded[0] > 0) {
+                sb.append(" p99/max: ").append(rounded[1]).append('/').append(rounded[2]).append(" ms");
+            }
+            if (rounded[3] >= 0) {
+                sb.append(", heap after GC: ").append(rounded[3]).append('%');
+            }
+            segment = sb.toString();
+        }
+        return segment;
+    }
+}
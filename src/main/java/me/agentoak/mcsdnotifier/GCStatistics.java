@@ -0,0 +1,161 @@
+package me.agentoak.mcsdnotifier;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rolling statistics of garbage collections and heap occupancy after collections, so long GC pauses and a nearly full
+ * heap can be told apart from code stalls.
+ * <p>
+ * Subscribes to the notifications each {@link GarbageCollectorMXBean} emits after a collection, so nothing is polled.
+ * The JVM delivers them one at a time on its own notification thread, which is the single writer of all histograms.
+ * Collectors whose name indicates they run concurrently with the application (e.g. {@code G1 Concurrent GC},
+ * {@code ZGC Cycles}) are tracked on their own, but do not count as pauses.
+ *
+ * @see MCSDNotifierPlugin#getGCStatistics()
+ */
+public final class GCStatistics {
+    /**
+     * In s, granularity and longest window of the statistics.
+     */
+    private static final long SLOT = 10L;
+    private static final long WINDOW = 300L;
+    private static final long USEC_PER_MSEC = 1_000L;
+
+    private final Map<String, RollingHistogram> collectors = new LinkedHashMap<>();
+    private final Set<String> concurrentCollectors = new HashSet<>();
+    private final RollingHistogram pauses = new RollingHistogram(SLOT, WINDOW, TimeUnit.SECONDS);
+    private final Set<String> heapPools = new HashSet<>();
+    private final long heapMax = Runtime.getRuntime().maxMemory();
+    private final NotificationListener listener = (notification, handback) -> handleNotification(notification);
+
+    private volatile long heapUsedAfterGC = -1;
+
+    GCStatistics() {
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collectors.put(bean.getName(), new RollingHistogram(SLOT, WINDOW, TimeUnit.SECONDS));
+            if (bean.getName().contains("Concurrent") || bean.getName().contains("Cycles")) {
+                concurrentCollectors.add(bean.getName());
+            }
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool.getName());
+            }
+        }
+    }
+
+    void start() {
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (bean instanceof NotificationEmitter) {
+                ((NotificationEmitter) bean).addNotificationListener(listener, null, null);
+            }
+        }
+    }
+
+    void stop() {
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (bean instanceof NotificationEmitter) {
+                try {
+                    ((NotificationEmitter) bean).removeNotificationListener(listener);
+                } catch (ListenerNotFoundException ignored) {
+                }
+            }
+        }
+    }
+
+    private void handleNotification(Notification notification) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+
+        GarbageCollectionNotificationInfo info =
+            GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        GcInfo gcInfo = info.getGcInfo();
+        long now = System.nanoTime();
+        long duration = gcInfo.getDuration() * USEC_PER_MSEC;
+
+        RollingHistogram histogram = collectors.get(info.getGcName());
+        if (histogram != null) {
+            histogram.record(duration, now);
+        }
+        if (!concurrentCollectors.contains(info.getGcName())) {
+            pauses.record(duration, now);
+        }
+
+        long used = 0;
+        for (Map.Entry<String, MemoryUsage> pool : gcInfo.getMemoryUsageAfterGc().entrySet()) {
+            if (heapPools.contains(pool.getKey())) {
+                used += pool.getValue().getUsed();
+            }
+        }
+        heapUsedAfterGC = used;
+    }
+
+    /**
+     * Names of the garbage collectors of this JVM, e.g. {@code G1 Young Generation} and {@code G1 Old Generation}.
+     */
+    public Set<String> getCollectors() {
+        return Collections.unmodifiableSet(collectors.keySet());
+    }
+
+    /**
+     * Statistics of the durations of one collector's collections in µs. JVMs report durations in whole ms.
+     *
+     * @param window how far to look back, up to 5 minutes. Rounded up to a multiple of 10 seconds
+     * @return empty if there is no collector with that name
+     * @see #getCollectors()
+     */
+    public Optional<RollingHistogram.Snapshot> getCollectorStats(String collector, long window, TimeUnit unit) {
+        return Optional.ofNullable(collectors.get(collector)).map(histogram -> histogram.snapshot(window, unit));
+    }
+
+    /**
+     * Statistics of the durations of all collections of collectors that pause the application, in µs.
+     *
+     * @param window how far to look back, up to 5 minutes. Rounded up to a multiple of 10 seconds
+     */
+    public RollingHistogram.Snapshot getPauseStats(long window, TimeUnit unit) {
+        return pauses.snapshot(window, unit);
+    }
+
+    /**
+     * In bytes, heap in use right after the last collection, i.e. roughly the live data. -1 if there was no collection
+     * yet.
+     */
+    public long getHeapUsedAfterGC() {
+        return heapUsedAfterGC;
+    }
+
+    /**
+     * In bytes, maximum heap size ({@code -Xmx}).
+     */
+    public long getHeapMax() {
+        return heapMax;
+    }
+
+    /**
+     * Checks if the JVM provides garbage collection notifications, which are required for {@code GCStatistics}.
+     */
+    static boolean isSupported() {
+        return ReflectionUtils.classExists("com.sun.management.GarbageCollectionNotificationInfo");
+    }
+}
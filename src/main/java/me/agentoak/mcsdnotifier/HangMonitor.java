@@ -0,0 +1,131 @@
+package me.agentoak.mcsdnotifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Captures stack samples of the main thread when it has not ticked for a while, so there is a record of what the
+ * server was stuck on before the watchdog kills it.
+ * <p>
+ * While ticks are healthy the monitor thread only wakes up once per threshold to check the heartbeat. Once the main
+ * thread has been silent for the threshold, it takes several samples spread over the time remaining until the
+ * watchdog deadline and appends each one to a dump file right away, so the file is useful even if the kill lands
+ * before all samples are taken.
+ */
+final class HangMonitor extends BackgroundTask {
+    /**
+     * In ms, minimum time between samples.
+     */
+    private static final long MIN_SAMPLE_INTERVAL = 100L;
+
+    private final MCSDNotifierPlugin plugin;
+    private final NotifySender sender;
+    private final Thread mainThread;
+    private final long watchdogNanos;
+    private final long thresholdNanos;
+    private final int samples;
+    private final boolean allThreads;
+    private final File dumpFolder;
+
+    /**
+     * @param mainThread the server thread, whose heartbeat is published to {@code sender}
+     * @param threshold  fraction of the watchdog interval after which to start sampling
+     * @param samples    number of samples to take until the watchdog deadline
+     * @param allThreads whether to sample all threads with lock information, or just the main thread
+     */
+    HangMonitor(MCSDNotifierPlugin plugin, NotifySender sender, Thread mainThread, double threshold, int samples,
+                boolean allThreads) {
+        super(plugin.getName() + " Hang Monitor");
+        this.plugin = plugin;
+        this.sender = sender;
+        this.mainThread = mainThread;
+        this.watchdogNanos = TimeUnit.MILLISECONDS.toNanos(plugin.getWatchdogInterval());
+        this.thresholdNanos = (long) (watchdogNanos * threshold);
+        this.samples = Math.max(1, samples);
+        this.allThreads = allThreads;
+        this.dumpFolder = new File(plugin.getDataFolder(), "hangs");
+    }
+
+    @Override
+    public void run() {
+        long dumpedTick = 0;
+        while (isRunning()) {
+            long lastTick = sender.getLastTick();
+            long now = System.nanoTime();
+            if (lastTick == 0 || lastTick == dumpedTick) {
+                // No ticks yet (startup has its own timeout), or we already captured this hang
+                LockSupport.parkNanos(this, thresholdNanos);
+            } else if (now - lastTick < thresholdNanos) {
+                LockSupport.parkNanos(this, lastTick + thresholdNanos - now);
+            } else {
+                dumpedTick = lastTick;
+                try {
+                    dump(lastTick);
+                } catch (IOException | RuntimeException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not write hang dump", e);
+                }
+            }
+        }
+    }
+
+    private void dump(long lastTick) throws IOException {
+        long start = System.nanoTime();
+        // Spread samples over the time until the watchdog is expected to kill us, leaving some margin at the end
+        long remaining = lastTick + watchdogNanos - start;
+        long interval = Math.max(TimeUnit.MILLISECONDS.toNanos(MIN_SAMPLE_INTERVAL), remaining / (samples + 1));
+
+        if (!dumpFolder.isDirectory()) {
+            Files.createDirectories(dumpFolder.toPath());
+        }
+        File file = new File(dumpFolder, "hang-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".txt");
+        plugin.getLogger().severe("Main thread did not tick for " + TimeUnit.NANOSECONDS.toMillis(start - lastTick) +
+                                      " ms, watchdog will kill the server soon. Writing stack samples to " + file);
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8)) {
+            writer.write("Main thread did not tick for " + TimeUnit.NANOSECONDS.toMillis(start - lastTick) +
+                             " ms (watchdog timeout " + plugin.getWatchdogInterval() + " ms)\n\n");
+
+            for (int i = 1; i <= samples && isRunning(); i++) {
+                long now = System.nanoTime();
+                if (sender.getLastTick() != lastTick) {
+                    writer.write("Main thread recovered after " + TimeUnit.NANOSECONDS.toMillis(now - lastTick) +
+                                     " ms\n");
+                    plugin.getLogger().info("Main thread recovered, stopped taking stack samples");
+                    break;
+                }
+
+                StringBuilder sb = new StringBuilder();
+                sb.append("--- Sample ").append(i).append(" of ").append(samples).append(", main thread silent for ")
+                    .append(TimeUnit.NANOSECONDS.toMillis(now - lastTick)).append(" ms ---\n\n");
+                if (allThreads) {
+                    for (ThreadInfo info : threadMXBean.dumpAllThreads(threadMXBean.isObjectMonitorUsageSupported(),
+                        threadMXBean.isSynchronizerUsageSupported())) {
+                        ThreadDumps.appendThread(sb, info);
+                    }
+                } else {
+                    ThreadDumps.appendThread(sb, mainThread, mainThread.getStackTrace());
+                }
+                writer.write(sb.toString());
+                // Make sure the sample is on disk in case the kill comes before the next one
+                writer.flush();
+
+                if (i < samples) {
+                    LockSupport.parkNanos(this, interval);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package me.agentoak.mcsdnotifier;
+
+/**
+ * How close the server is to falling behind or to missing the watchdog deadline, so other plugins can defer expensive
+ * work (autosaves, mob AI, async chunk jobs) before the server degrades further. Levels are ordered, so
+ * {@code pressure.compareTo(LagPressure.ELEVATED) >= 0} checks for at least elevated pressure.
+ *
+ * @see MCSDNotifierPlugin#getLagPressure()
+ * @see LagPressureEvent
+ */
+public enum LagPressure {
+    /**
+     * Ticks fit into their 50 ms budget.
+     */
+    NORMAL,
+    /**
+     * Ticks use up almost all of their budget, or a single tick took a noticeable share of the watchdog interval.
+     * Deferrable work should be deferred.
+     */
+    ELEVATED,
+    /**
+     * The server is falling behind, or a single tick took a large share of the watchdog interval. Only essential work
+     * should be done.
+     */
+    CRITICAL
+}
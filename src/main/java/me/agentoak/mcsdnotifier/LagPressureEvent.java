@@ -0,0 +1,49 @@
+package me.agentoak.mcsdnotifier;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+/**
+ * Called on the main thread when the {@link LagPressure} changes. Pressure rises as soon as a tick crosses a
+ * threshold, but only falls one level at a time after ticks stayed well below it for a few seconds, so listeners are
+ * not called every tick while the server hovers around a threshold.
+ *
+ * @see MCSDNotifierPlugin#getLagPressure()
+ */
+public final class LagPressureEvent extends Event {
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final LagPressure previous;
+    private final LagPressure pressure;
+    private final double budgetUsage;
+
+    LagPressureEvent(LagPressure previous, LagPressure pressure, double budgetUsage) {
+        this.previous = previous;
+        this.pressure = pressure;
+        this.budgetUsage = budgetUsage;
+    }
+
+    public LagPressure getPrevious() {
+        return previous;
+    }
+
+    public LagPressure getPressure() {
+        return pressure;
+    }
+
+    /**
+     * @return recent tick time as a fraction of the 50 ms budget, e.g. 1.5 for ticks taking 75 ms on average
+     */
+    public double getBudgetUsage() {
+        return budgetUsage;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
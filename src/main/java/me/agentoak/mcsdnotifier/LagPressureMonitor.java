@@ -0,0 +1,179 @@
+package me.agentoak.mcsdnotifier;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Derives the {@link LagPressure} from ticks and fires {@link LagPressureEvent} when it changes. Fed by
+ * {@link NotifyListener} on the main thread; reading the pressure is safe from any thread.
+ * <p>
+ * Two signals are combined, and the higher level wins:
+ * <ul>
+ *     <li>Budget usage: tick time smoothed over about a second, relative to the 50 ms budget. Uses the server's own
+ *     tick durations if the tick source reports them. Otherwise only tick intervals are known, which never go below
+ *     the budget, so pressure only becomes elevated once the server falls behind.</li>
+ *     <li>Watchdog margin: the last tick interval relative to the watchdog interval, so a single long tick raises the
+ *     pressure even while the average still looks fine. While a tick is still running, {@link #getPressure()} already
+ *     takes its time so far into account.</li>
+ * </ul>
+ * Pressure rises right away. It only falls one level after both signals stayed below the level's exit threshold for
+ * {@link #HOLD} ms.
+ */
+final class LagPressureMonitor {
+    private static final double NSEC_PER_USEC = 1_000.0;
+    /**
+     * In µs, the time a tick may take at 20 TPS.
+     */
+    private static final double TICK_BUDGET = 50_000.0;
+    /**
+     * Weight of the latest tick in the smoothed budget usage, about a second's worth of ticks.
+     */
+    private static final double SMOOTHING = 0.05;
+    private static final double ELEVATED_USAGE = 0.9;
+    private static final double ELEVATED_USAGE_EXIT = 0.75;
+    /**
+     * A server that keeps up has intervals right at the budget, so these start at about 18 TPS.
+     */
+    private static final double ELEVATED_INTERVAL_USAGE = 1.1;
+    private static final double ELEVATED_INTERVAL_USAGE_EXIT = 1.02;
+    private static final double CRITICAL_USAGE = 1.5;
+    private static final double CRITICAL_USAGE_EXIT = 1.25;
+    private static final double ELEVATED_MARGIN = 0.25;
+    private static final double CRITICAL_MARGIN = 0.5;
+    private static final double MARGIN_EXIT_RATIO = 0.8;
+    /**
+     * In ms, how long ticks must stay below a level's exit thresholds before the pressure falls.
+     */
+    private static final long HOLD = 5_000L;
+    private static final LagPressure[] LEVELS = LagPressure.values();
+
+    private final Plugin plugin;
+    private final boolean tickDurations;
+    private final double elevatedUsage;
+    private final double elevatedUsageExit;
+    /**
+     * 0 if the watchdog is disabled.
+     */
+    private final long watchdogNanos;
+    private final long holdNanos = TimeUnit.MILLISECONDS.toNanos(HOLD);
+
+    private volatile LagPressure pressure = LagPressure.NORMAL;
+    /**
+     * {@link System#nanoTime()} at the start of the last tick, 0 if there was no tick yet.
+     */
+    private volatile long lastTickStart;
+
+    // Only used by the main thread
+    private double budgetUsage;
+    private double marginUsage;
+    /**
+     * {@link System#nanoTime()} since when ticks stayed below the exit thresholds, only valid if {@link #calm}.
+     */
+    private long calmSince;
+    private boolean calm;
+
+    /**
+     * @param tickDurations whether {@link #tickEnded(long, long)} is called with the server's own tick durations
+     */
+    LagPressureMonitor(Plugin plugin, NotifyIntervals intervals, boolean tickDurations) {
+        this.plugin = plugin;
+        this.tickDurations = tickDurations;
+        this.elevatedUsage = tickDurations ? ELEVATED_USAGE : ELEVATED_INTERVAL_USAGE;
+        this.elevatedUsageExit = tickDurations ? ELEVATED_USAGE_EXIT : ELEVATED_INTERVAL_USAGE_EXIT;
+        this.watchdogNanos = TimeUnit.MILLISECONDS.toNanos(intervals.getWatchdogInterval());
+    }
+
+    /**
+     * May be called from any thread.
+     */
+    LagPressure getPressure() {
+        LagPressure current = pressure;
+        long start = lastTickStart;
+        if (current == LagPressure.CRITICAL || start == 0 || watchdogNanos == 0) {
+            return current;
+        }
+        // A tick that is still running does not show up in the other signals yet
+        LagPressure running = marginLevel((System.nanoTime() - start) / (double) watchdogNanos, 1);
+        return running.compareTo(current) > 0 ? running : current;
+    }
+
+    /**
+     * @param tickTime {@link System#nanoTime()} at the start of the tick
+     */
+    void tickStarted(long tickTime) {
+        long previous = lastTickStart;
+        lastTickStart = tickTime;
+        if (previous == 0) {
+            return;
+        }
+
+        long interval = tickTime - previous;
+        if (watchdogNanos != 0) {
+            marginUsage = interval / (double) watchdogNanos;
+        }
+        if (!tickDurations) {
+            smooth(interval / NSEC_PER_USEC);
+        }
+        update(tickTime);
+    }
+
+    /**
+     * @param endTime      {@link System#nanoTime()} at the end of the tick
+     * @param tickDuration in µs, how long the server was busy with the tick
+     */
+    void tickEnded(long endTime, long tickDuration) {
+        if (tickDurations) {
+            smooth(tickDuration);
+            update(endTime);
+        }
+    }
+
+    private void smooth(double tickTime) {
+        budgetUsage += SMOOTHING * (tickTime / TICK_BUDGET - budgetUsage);
+    }
+
+    private void update(long now) {
+        LagPressure current = pressure;
+        LagPressure target = max(usageLevel(elevatedUsage, CRITICAL_USAGE), marginLevel(marginUsage, 1));
+        if (target.compareTo(current) > 0) {
+            calm = false;
+            change(current, target);
+            return;
+        }
+
+        LagPressure exitLevel = max(usageLevel(elevatedUsageExit, CRITICAL_USAGE_EXIT),
+            marginLevel(marginUsage, MARGIN_EXIT_RATIO));
+        if (exitLevel.compareTo(current) >= 0) {
+            calm = false;
+        } else if (!calm) {
+            calm = true;
+            calmSince = now;
+        } else if (now - calmSince >= holdNanos) {
+            // Fall one level at a time, the next level needs its own calm period
+            calmSince = now;
+            change(current, LEVELS[current.ordinal() - 1]);
+        }
+    }
+
+    private LagPressure usageLevel(double elevated, double critical) {
+        return budgetUsage >= critical ? LagPressure.CRITICAL :
+            budgetUsage >= elevated ? LagPressure.ELEVATED : LagPressure.NORMAL;
+    }
+
+    private static LagPressure marginLevel(double margin, double ratio) {
+        return margin >= CRITICAL_MARGIN * ratio ? LagPressure.CRITICAL :
+            margin >= ELEVATED_MARGIN * ratio ? LagPressure.ELEVATED : LagPressure.NORMAL;
+    }
+
+    private static LagPressure max(LagPressure a, LagPressure b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    private void change(LagPressure previous, LagPressure current) {
+        pressure = current;
+        plugin.getLogger().fine(String.format("Lag pressure changed from %s to %s (%.0f%% of tick budget)", previous,
+            current, budgetUsage * 100));
+        plugin.getServer().getPluginManager().callEvent(new LagPressureEvent(previous, current, budgetUsage));
+    }
+}
@@ -1,5 +1,8 @@
 package me.agentoak.mcsdnotifier;
 
+import me.agentoak.mcsdnotifier.system.ListenFds;
+import me.agentoak.mcsdnotifier.system.MemoryPressure;
+import me.agentoak.mcsdnotifier.system.NotifyField;
 import me.agentoak.mcsdnotifier.system.SDNotify;
 import me.agentoak.mcsdnotifier.system.SDNotifyException;
 import org.bukkit.command.ConsoleCommandSender;
@@ -7,38 +10,66 @@ import org.bukkit.event.HandlerList;
 import org.bukkit.plugin.ServicePriority;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 public final class MCSDNotifierPlugin extends JavaPlugin {
-    private static final long MSEC_PER_SEC = 1_000L;
-    private static final long USEC_PER_MSEC = 1_000L;
     /**
-     * In ms, default interval for watchdog/status updates to {@link SDNotify#watchdog(String)}. Used when the service
-     * manager does not tell us the watchdog interval (usually when it does not have watchdog enabled).
+     * In s, granularity and longest window of tick statistics.
      */
-    private static final long DEFAULT_NOTIFY_INTERVAL = 10L * MSEC_PER_SEC;
+    private static final long TICK_STATS_SLOT = 2L;
+    private static final long TICK_STATS_WINDOW = 300L;
     /**
-     * In ms, upper cap for notify interval. If service manager sets watchdog interval to a higher value, we will
-     * still report at this interval for up-to-date status messages.
+     * Region heartbeat slots in addition to max players, for players joining while others are still leaving.
      */
-    private static final long MAX_NOTIFY_INTERVAL = 10L * MSEC_PER_SEC;
+    private static final int SPARE_REGION_SLOTS = 16;
+
+    private final RollingHistogram tickHistogram =
+        new RollingHistogram(TICK_STATS_SLOT, TICK_STATS_WINDOW, TimeUnit.SECONDS);
+    private final RollingHistogram tickDurationHistogram =
+        new RollingHistogram(TICK_STATS_SLOT, TICK_STATS_WINDOW, TimeUnit.SECONDS);
+
     /**
-     * In ms, how long a tick is. Used as lower cap for notify interval. Minecraft is hardcoded to 20 ticks/sec.
+     * Folia ticks regions in parallel and has no main thread or Bukkit scheduler.
      */
-    private static final long TICK_INTERVAL = MSEC_PER_SEC / 20L;
+    private final boolean folia = FoliaTickSource.isSupported();
 
     private SDNotify sdNotify;
-    private long watchdogInterval;
-    private long notifyInterval;
+    private ListenFds listenFds = ListenFds.EMPTY;
+    /**
+     * All 0 until {@link #onLoad()}.
+     */
+    private NotifyIntervals intervals = new NotifyIntervals(0, 0, 0);
 
     private boolean sdNotifyEnabled;
+    private NotifySender notifySender;
+    private StatusComposer statusComposer;
+    private HangMonitor hangMonitor;
+    private SpikeProfiler spikeProfiler;
+    private ProgressMonitor progressMonitor;
+    private StartupProfiler startupProfiler;
+    private ShutdownProfiler shutdownProfiler;
     private NotifyListener notifyListener;
+    private FlightRecorder flightRecorder;
+    private TickSource tickSource;
+    private GCStatistics gcStatistics;
+    private MemoryPressure memoryPressure;
+    private MemoryPressureWatcher memoryPressureWatcher;
+    private CgroupAccounting cgroupAccounting;
+    private RegionHeartbeats regionHeartbeats;
+    private ServerCounters serverCounters;
+    private MetricsServer metricsServer;
+    private LagPressureMonitor lagPressure;
 
     private boolean hangStop;
 
     @Override
     public void onLoad() {
+        saveDefaultConfig();
+
         /*
          * Some servers (notably Minecraft 1.17+) already include JNA, so we can't just shade the JNA classes into
          * our plugin JAR or there would be version conflicts depending on the class load order. However, JNA also
@@ -62,46 +93,214 @@ public final class MCSDNotifierPlugin extends JavaPlugin {
             return;
         }
 
-        if (sdNotify.getWatchdogUsec() == 0) {
+        intervals = NotifyIntervals.forWatchdog(sdNotify.getWatchdogUsec());
+        if (intervals.getWatchdogInterval() == 0) {
             getLogger().warning("Not running through service manager or watchdog is not configured, " +
                                     "hangs will not be detected!");
-            notifyInterval = DEFAULT_NOTIFY_INTERVAL;
         } else {
-            watchdogInterval = Math.max(1, sdNotify.getWatchdogUsec() / USEC_PER_MSEC);
-            getLogger().info("Watchdog timeout is " + watchdogInterval + " ms");
-            if (watchdogInterval < TICK_INTERVAL * 2) {
+            getLogger().info("Watchdog timeout is " + intervals.getWatchdogInterval() + " ms");
+            if (!intervals.isWatchdogAchievable()) {
                 getLogger().severe("Watchdog interval too low, we cannot send notifications this fast! " +
                                        "Should be at least two ticks (100ms)");
             }
-            // General recommendation is to send updates at half the watchdog interval
-            notifyInterval = Math.min(MAX_NOTIFY_INTERVAL, Math.max(TICK_INTERVAL, watchdogInterval / 2));
+        }
+
+        try {
+            listenFds = ListenFds.fromEnvironment(sdNotify.getPid());
+            if (listenFds.size() > 0) {
+                getLogger().info("Service manager passed " + listenFds.size() + " file descriptors: " +
+                                     listenFds.getNames());
+            }
+        } catch (SDNotifyException e) {
+            getLogger().log(Level.WARNING, "Ignoring file descriptors passed by service manager", e);
         }
 
         sdNotifyEnabled = true;
 
+        // Before the first notification, so the recording covers the whole run
+        long flightRecorderSize = getConfig().getLong("flight-recorder");
+        if (flightRecorderSize > 0) {
+            try {
+                flightRecorder = FlightRecorder.open(getDataFolder(), flightRecorderSize * 1024, sdNotify.getPid());
+                sdNotify.setObserver(flightRecorder);
+            } catch (IOException e) {
+                getLogger().log(Level.WARNING, "Could not open flight recorder", e);
+            }
+        }
+
         /*
          * #onLoad is the earliest point in our plugin where we can run code, so get a status out as early as possible.
          * We don't know if the server is just starting or reloading, but sending the same MAINPID again should not do
          * any harm. Cannot consult StatusProvider here since plugins are not enabled yet.
          */
-        getLogger().info("We are pid " + sdNotify.getPid() + " - notifying service manager. " +
-                             "Sending watchdog updates every " + notifyInterval + " ms");
+        getLogger().info("We are pid " + sdNotify.getPid() + " - notifying service manager via " +
+                             sdNotify.getTransport() + ". Sending watchdog updates every " +
+                             intervals.getNotifyInterval() + " ms");
         sdNotify.init(null);
+
+        // Worlds are loaded before the first tick, when the service manager still applies TimeoutStartSec
+        long progressTimeout = getConfig().getLong("progress-timeout");
+        if (progressTimeout > 0) {
+            progressMonitor = new ProgressMonitor(this, sdNotify, progressTimeout);
+            progressMonitor.start();
+        }
+
+        // Worlds are already loaded if this is a reload, which is not worth profiling
+        if (getConfig().getBoolean("startup-profiler") && getServer().getWorlds().isEmpty()) {
+            startupProfiler = new StartupProfiler(this, sdNotify);
+            startupProfiler.start();
+        }
     }
 
     @Override
     public void onEnable() {
+        intervals = intervals.withStatusInterval(getConfig().getLong("status-interval"));
+
+        if (sdNotifyEnabled) {
+            if (folia) {
+                regionHeartbeats = new RegionHeartbeats(getServer().getMaxPlayers() + SPARE_REGION_SLOTS);
+            }
+            notifySender = new NotifySender(this, sdNotify, intervals, regionHeartbeats);
+            tickSource = folia ?
+                new FoliaTickSource(this, regionHeartbeats) :
+                TickSource.create(this);
+            // On Folia, the global region tick says little about the regions players are in
+            if (!folia && getConfig().getBoolean("lag-pressure")) {
+                lagPressure = new LagPressureMonitor(this, intervals, tickSource.reportsTickDuration());
+            }
+            notifyListener = new NotifyListener(this, new Lifecycle(), intervals, sdNotify, notifySender,
+                tickHistogram, tickDurationHistogram, flightRecorder, lagPressure);
+        }
+
+        // onEnable is called on the main thread
+        serverCounters = new ServerCounters(this);
+        serverCounters.start();
+
+        if (GCStatistics.isSupported()) {
+            gcStatistics = new GCStatistics();
+            gcStatistics.start();
+        }
+
+        if (getConfig().getBoolean("cgroup-accounting")) {
+            cgroupAccounting = CgroupAccounting.create(this).orElse(null);
+            if (cgroupAccounting != null) {
+                cgroupAccounting.start();
+            }
+        }
+
+        if (sdNotifyEnabled && getConfig().getBoolean("memory-pressure")) {
+            try {
+                Optional<MemoryPressure> pressure = MemoryPressure.fromEnvironment();
+                if (pressure.isPresent()) {
+                    memoryPressureWatcher = new MemoryPressureWatcher(this, pressure.get());
+                    memoryPressure = pressure.get();
+                    getLogger().info("Watching memory pressure via " + memoryPressure.getPath());
+                }
+            } catch (SDNotifyException e) {
+                getLogger().log(Level.WARNING, "Not watching memory pressure", e);
+            }
+        }
+
+        // Prefer the server's own tick durations over tick intervals, which include the time sleeping between ticks
+        RollingHistogram msptHistogram = tickSource != null && tickSource.reportsTickDuration() ?
+            tickDurationHistogram : tickHistogram;
+        if (sdNotifyEnabled) {
+            // Extras are segments, so they are appended to whatever status provider is in use
+            statusComposer = new StatusComposer(this, notifySender, serverCounters,
+                getConfig().getLong("status-segment-budget"));
+            if (getConfig().getBoolean("status-mspt") && regionHeartbeats == null) {
+                statusComposer.addBuiltInSegment("MSPT", new MSPTSegment(msptHistogram));
+            }
+            if (getConfig().getBoolean("status-gc") && gcStatistics != null) {
+                statusComposer.addBuiltInSegment("GC", new GCSegment(gcStatistics));
+            }
+            if (getConfig().getBoolean("status-memory-pressure") && memoryPressure != null) {
+                statusComposer.addBuiltInSegment("memory pressure", new MemoryPressureSegment(memoryPressure));
+            }
+            if (getConfig().getBoolean("status-cgroup") && cgroupAccounting != null) {
+                statusComposer.addBuiltInSegment("cgroup", new CgroupSegment(cgroupAccounting));
+            }
+            // Before registering our provider, so the composer sees it
+            getServer().getPluginManager().registerEvents(statusComposer, this);
+        }
         getServer().getServicesManager().register(StatusProvider.class,
-            TPSStatusProvider.isSupported() ? new TPSStatusProvider(getServer()) : new BasicStatusProvider(getServer()),
+            regionHeartbeats != null ? new RegionStatusProvider(getServer(), serverCounters, regionHeartbeats) :
+            TPSStatusProvider.isSupported() ? new TPSStatusProvider(getServer()) :
+                new BasicStatusProvider(getServer(), serverCounters),
             this, ServicePriority.Lowest);
 
         if (sdNotifyEnabled) {
-            notifyListener = new NotifyListener(this, sdNotify);
+            double hangDumpThreshold = getConfig().getDouble("hang-dump-threshold");
+            long spikeProfilerThreshold = getConfig().getLong("spike-profiler-threshold");
+            long watchdogInterval = intervals.getWatchdogInterval();
+            if (folia && (watchdogInterval > 0 && hangDumpThreshold > 0 || spikeProfilerThreshold > 0)) {
+                // There is no single main thread we could take stack samples of
+                getLogger().info("Hang dumps and the lag spike profiler are not supported on Folia");
+            } else if (watchdogInterval > 0 && hangDumpThreshold > 0) {
+                // onEnable is called on the main thread
+                hangMonitor = new HangMonitor(this, notifySender, Thread.currentThread(), hangDumpThreshold,
+                    getConfig().getInt("hang-dump-samples"), getConfig().getBoolean("hang-dump-all-threads"));
+            }
+            if (!folia && spikeProfilerThreshold > 0) {
+                spikeProfiler = new SpikeProfiler(this, notifySender, Thread.currentThread(), spikeProfilerThreshold,
+                    getConfig().getLong("spike-profiler-interval"));
+            }
             getServer().getPluginManager().registerEvents(notifyListener, this);
-            // Bukkit/Spigot API lacks tick event so work around by running a task timer every tick.
-            getServer().getScheduler().runTaskTimer(this, notifyListener::onTick, 1L, 1L);
+            if (progressMonitor != null) {
+                getServer().getPluginManager().registerEvents(progressMonitor, this);
+            }
+            if (startupProfiler != null) {
+                getServer().getPluginManager().registerEvents(startupProfiler, this);
+            }
+            notifySender.start();
+            statusComposer.start();
+            if (hangMonitor != null) {
+                hangMonitor.start();
+            }
+            if (spikeProfiler != null) {
+                spikeProfiler.start();
+            }
+            if (memoryPressureWatcher != null) {
+                memoryPressureWatcher.start();
+            }
+            tickSource.start(notifyListener);
+
+            String metricsAddress = getConfig().getString("metrics-address", "");
+            if (!metricsAddress.isEmpty()) {
+                try {
+                    metricsServer = new MetricsServer(this, notifySender, serverCounters, metricsAddress);
+                    metricsServer.start();
+                    getLogger().info("Serving metrics on " + metricsAddress);
+                } catch (IOException e) {
+                    getLogger().log(Level.WARNING, "Not serving metrics on " + metricsAddress, e);
+                }
+            }
         }
 
+        getCommand("flight-recorder").setExecutor((commandSender, command, s, args) -> {
+            if (args.length > 2) {
+                return false;
+            }
+            long seconds;
+            try {
+                seconds = args.length > 0 ? Long.parseLong(args[0]) : 10;
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            // The previous run is the interesting one after the server was killed and restarted
+            boolean previous = args.length > 1 && "previous".equals(args[1]);
+            File file = new File(getDataFolder(),
+                previous ? FlightRecorder.PREVIOUS_FILE_NAME : FlightRecorder.FILE_NAME);
+            try {
+                for (String line : FlightRecorder.decode(file, seconds)) {
+                    commandSender.sendMessage(line);
+                }
+            } catch (IOException e) {
+                commandSender.sendMessage("Could not read " + file + ": " + e.getMessage());
+            }
+            return true;
+        });
+
         installHangCommand("hang-main-and-accept-data-loss", () -> {
             getLogger().info("Deliberately hanging on main thread");
             hang();
@@ -120,11 +319,22 @@ public final class MCSDNotifierPlugin extends JavaPlugin {
                 return true;
             }
 
-            getServer().getScheduler().runTask(this, task);
+            runTask(task);
             return true;
         });
     }
 
+    /**
+     * Run a task on the main thread, or on the global region on Folia. May be called from any thread.
+     */
+    void runTask(Runnable task) {
+        if (folia) {
+            FoliaTickSource.runGlobal(this, task);
+        } else {
+            getServer().getScheduler().runTask(this, task);
+        }
+    }
+
     @Override
     public void onDisable() {
         if (hangStop) {
@@ -137,13 +347,127 @@ public final class MCSDNotifierPlugin extends JavaPlugin {
             getLogger().warning(String.format("Plugin is being disabled but we did not detect a reload or stop. " +
                                                   "While plugin is disabled, notifications are not sent.%s " +
                                                   "If the server is reloading/stopping, you can ignore this message.",
-                watchdogInterval == 0 ? "" : " To avoid triggering the watchdog never disable this plugin!"));
+                intervals.getWatchdogInterval() == 0 ? "" :
+                    " To avoid triggering the watchdog never disable this plugin!"));
         }
 
         // Undo everything we may have done in onEnable, in case some server does not disable plugins properly
-        getServer().getScheduler().cancelTasks(this);
+        if (notifySender != null) {
+            notifySender.stop();
+        }
+        if (statusComposer != null) {
+            statusComposer.stop();
+        }
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        stopMonitors();
+        if (startupProfiler != null) {
+            // Only still running if the server never ticked
+            startupProfiler.stop();
+        }
+        if (gcStatistics != null) {
+            gcStatistics.stop();
+        }
+        if (memoryPressureWatcher != null) {
+            memoryPressureWatcher.stop();
+        }
+        if (cgroupAccounting != null) {
+            cgroupAccounting.stop();
+        }
+        if (!folia) {
+            // Folia tasks cancel themselves, see FoliaTickSource
+            getServer().getScheduler().cancelTasks(this);
+        }
         HandlerList.unregisterAll(this);
         getServer().getServicesManager().unregisterAll(this);
+
+        // While stopping, worlds are saved after plugins are disabled. Keep extending and profiling until the JVM exits
+        if (shutdownProfiler != null) {
+            shutdownProfiler.ownPluginDisabled(System.nanoTime());
+        }
+        if (progressMonitor != null && progressMonitor.isActive() || shutdownProfiler != null) {
+            return;
+        } else if (progressMonitor != null) {
+            progressMonitor.stop();
+        }
+
+        // A reload creates a new plugin instance which opens its own transport in onLoad
+        if (sdNotify != null) {
+            sdNotify.getTransport().close();
+        }
+    }
+
+    /**
+     * Stop all threads that watch the main thread, e.g. because the server is stopping and not ticking anymore.
+     */
+    private void stopMonitors() {
+        if (hangMonitor != null) {
+            hangMonitor.stop();
+        }
+        if (spikeProfiler != null) {
+            spikeProfiler.stop();
+        }
+    }
+
+    /**
+     * Start or stop extending the service manager's timeout while worlds are loaded or saved, if enabled.
+     */
+    private void monitorProgress(boolean active) {
+        if (progressMonitor != null) {
+            progressMonitor.setActive(active);
+        }
+    }
+
+    /**
+     * Lifecycle callbacks of {@link NotifyListener}, kept out of the plugin's API.
+     */
+    private final class Lifecycle implements ServerLifecycle {
+        @Override
+        public void startupFinished(long tickTime) {
+            monitorProgress(false);
+            if (startupProfiler != null) {
+                startupProfiler.finish(tickTime);
+            }
+        }
+
+        @Override
+        public void updateStatus(NotifySender sender) {
+            String status = buildStatus().orElse(null);
+            if (statusComposer != null) {
+                statusComposer.update(status);
+            } else {
+                sender.setStatus(status);
+            }
+        }
+
+        @Override
+        public Optional<String> buildStatus() {
+            return MCSDNotifierPlugin.this.buildStatus();
+        }
+
+        @Override
+        public void pluginDisabling(String name, long now) {
+            if (shutdownProfiler != null) {
+                shutdownProfiler.pluginDisabling(name, now);
+            }
+        }
+
+        @Override
+        public void takedown() {
+            stopMonitors();
+        }
+
+        @Override
+        public void stopping() {
+            // Main thread is about to save the worlds and will not tick anymore
+            monitorProgress(true);
+            // Time the rest of the stop if enabled
+            if (shutdownProfiler == null && getConfig().getBoolean("shutdown-profiler")) {
+                shutdownProfiler = new ShutdownProfiler(MCSDNotifierPlugin.this, sdNotify);
+                shutdownProfiler.start();
+            }
+        }
     }
 
     private static void hang() {
@@ -164,26 +488,138 @@ public final class MCSDNotifierPlugin extends JavaPlugin {
         return sdNotifyEnabled;
     }
 
+    /**
+     * File descriptors the service manager passed to the server, e.g. ones stored with
+     * {@link #storeFds(String, int...)} before the last restart.
+     */
+    public ListenFds getListenFds() {
+        return listenFds;
+    }
+
+    /**
+     * Keep file descriptors open in the service manager while the server restarts, and get them back with
+     * {@link #getListenFds()} after the restart. For example, a listening socket stored this way keeps accepting
+     * connections into its backlog while the server is down. Requires {@code FileDescriptorStoreMax=} to be set in the
+     * service unit.
+     *
+     * @param name identifies the descriptors, up to 255 printable ASCII characters except {@code :}
+     * @return whether the descriptors were sent, i.e. false if {@link #isSDNotifyEnabled()} is false
+     * @throws IllegalArgumentException if the name is invalid
+     */
+    public boolean storeFds(String name, int... fds) {
+        return sdNotifyEnabled && sdNotify.storeFds(name, fds);
+    }
+
     /**
      * In ms, the time without watchdog updates before the watchdog kills the server. 0 if watchdog is disabled.
      */
     public long getWatchdogInterval() {
-        return watchdogInterval;
+        return intervals.getWatchdogInterval();
     }
 
     /**
      * In ms, the interval we try to send watchdog and status updates to the service manager with {@code sd_notify(3)}.
      */
     public long getNotifyInterval() {
-        return notifyInterval;
+        return intervals.getNotifyInterval();
+    }
+
+    /**
+     * In ms, the minimum interval between status updates sent to the service manager. Status updates are only sent when
+     * the status changed.
+     */
+    public long getStatusInterval() {
+        return intervals.getStatusInterval();
+    }
+
+    /**
+     * Statistics of tick intervals in µs, measured from the start of one tick to the start of the next, so a healthy
+     * server reports about 50 ms. Ticks are only measured while {@link #isSDNotifyEnabled()}.
+     *
+     * @param window how far to look back, up to 5 minutes. Rounded up to a multiple of 2 seconds
+     */
+    public RollingHistogram.Snapshot getTickStats(long window, TimeUnit unit) {
+        return tickHistogram.snapshot(window, unit);
+    }
+
+    /**
+     * Statistics of tick durations in µs as measured by the server, i.e. the time spent on a tick without the time
+     * sleeping until the next one. Only available on Paper, on other servers the snapshot is always empty. Ticks are only
+     * measured while {@link #isSDNotifyEnabled()}.
+     *
+     * @param window how far to look back, up to 5 minutes. Rounded up to a multiple of 2 seconds
+     */
+    public RollingHistogram.Snapshot getTickDurationStats(long window, TimeUnit unit) {
+        return tickDurationHistogram.snapshot(window, unit);
+    }
+
+    /**
+     * How close the server is to falling behind or missing the watchdog deadline, derived from recent ticks. Cheap
+     * enough to call before every piece of deferrable work, from any thread. {@link LagPressureEvent} is called when it
+     * changes.
+     * <p>
+     * While a tick is still running, this may already report a higher pressure than the last event.
+     *
+     * @return {@link LagPressure#NORMAL} if the pressure is not monitored (disabled, {@link #isSDNotifyEnabled()} is
+     * false or on Folia)
+     */
+    public LagPressure getLagPressure() {
+        LagPressureMonitor monitor = lagPressure;
+        return monitor == null ? LagPressure.NORMAL : monitor.getPressure();
+    }
+
+    /**
+     * Counts of players, plugins, worlds, chunks and entities, which are cheap to read from any thread.
+     *
+     * @return empty if the plugin is not enabled
+     */
+    public Optional<ServerCounters> getServerCounters() {
+        return Optional.ofNullable(serverCounters);
+    }
+
+    /**
+     * Statistics of garbage collection pauses and heap occupancy.
+     *
+     * @return empty if the JVM does not provide garbage collection notifications or the plugin is not enabled
+     */
+    public Optional<GCStatistics> getGCStatistics() {
+        return Optional.ofNullable(gcStatistics);
+    }
+
+    /**
+     * CPU and memory accounting of the server's cgroup as of the last sample, e.g. CPU throttling by
+     * {@code CPUQuota=}. Sampled every 5 seconds, so fetch it again for newer values.
+     *
+     * @return empty if the system does not use cgroup v2, accounting is disabled or the plugin is not enabled
+     */
+    public Optional<CgroupStats> getCgroupStats() {
+        CgroupAccounting accounting = cgroupAccounting;
+        return accounting == null ? Optional.empty() : Optional.of(accounting.getStats());
+    }
+
+    /**
+     * Current memory pressure stall averages of the server's cgroup. {@link MemoryPressureEvent} is called when the
+     * service manager signals pressure.
+     *
+     * @return empty if memory pressure is not watched (e.g. disabled, no cgroup v2 or not Linux) or the service manager
+     * does not signal pressure through a PSI file
+     */
+    public Optional<MemoryPressure.Stats> getMemoryPressureStats() {
+        return memoryPressure == null ? Optional.empty() : memoryPressure.readStats();
     }
 
     /**
      * Obtain a status message describing the current state of the server from the {@link StatusProvider} service.
+     * Does not include the parts of {@link StatusSegment} services, which are built on another thread. Must be called
+     * on the main thread.
      *
-     * @return empty if no {@link StatusProvider} service is registered or threw an exception
+     * @return empty if no {@link StatusProvider} service is registered, it threw an exception or it is skipped for
+     * exceeding {@code status-segment-budget} repeatedly
      */
     public Optional<String> buildStatus() {
+        if (statusComposer != null) {
+            return statusComposer.buildStatus();
+        }
         Optional<String> status = Optional.empty();
 
         StatusProvider statusProvider = getServer().getServicesManager().load(StatusProvider.class);
@@ -198,4 +634,21 @@ public final class MCSDNotifierPlugin extends JavaPlugin {
 
         return status;
     }
+
+    /**
+     * Send a field to the service manager, e.g. {@link NotifyField#extendTimeout(long, TimeUnit)} during a long
+     * migration, without a native library or socket of your own. May be called from any thread.
+     * <p>
+     * Fields are queued and sent with our next notification, usually within milliseconds. Fields submitted in the
+     * meantime, also by other plugins, are merged with our own {@code WATCHDOG=1} and {@code STATUS=} into a single
+     * message; see {@link me.agentoak.mcsdnotifier.system.NotifyBatch} for how fields with the same key are combined.
+     * A submitted status is replaced by our own status after the status interval.
+     *
+     * @return whether the field will be sent, i.e. {@link #isSDNotifyEnabled()}, this plugin is enabled and not too
+     * many fields are waiting to be sent
+     */
+    public boolean submitNotifyField(NotifyField field) {
+        NotifySender sender = notifySender;
+        return sender != null && sender.submit(field);
+    }
 }
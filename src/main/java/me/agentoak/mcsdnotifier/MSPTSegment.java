@@ -0,0 +1,53 @@
+package me.agentoak.mcsdnotifier;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link StatusSegment} with the median, 99th percentile and maximum tick duration of the last minute, e.g.
+ * {@code MSPT 1m p50/p99/max: 12.3/45.6/78.9}.
+ * <p>
+ * The string is only rebuilt when one of the displayed (rounded) values changed.
+ */
+final class MSPTSegment implements StatusSegment {
+    private static final double[] PERCENTILES = {50, 99, 100};
+    private static final long USEC_PER_MSPT_UNIT = 100L;
+
+    private final RollingHistogram tickHistogram;
+    /**
+     * Tick duration percentiles in tenths of ms, i.e. as they are displayed.
+     */
+    private final long[] rounded = new long[PERCENTILES.length];
+    private String segment;
+
+    /**
+     * @param tickHistogram tick durations in µs
+     */
+    MSPTSegment(RollingHistogram tickHistogram) {
+        this.tickHistogram = tickHistogram;
+    }
+
+    @Override
+    public String build(StatusSnapshot snapshot) {
+        RollingHistogram.Snapshot ticks = tickHistogram.snapshot(1, TimeUnit.MINUTES);
+        boolean changed = false;
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            long value = Math.round((double) ticks.getPercentile(PERCENTILES[i]) / USEC_PER_MSPT_UNIT);
+            if (rounded[i] != value) {
+                rounded[i] = value;
+                changed = true;
+            }
+        }
+
+        if (segment == null || changed) {
+            StringBuilder sb = new StringBuilder(40).append("MSPT 1m p50/p99/max: ");
+            for (int i = 0; i < rounded.length; i++) {
+                if (i > 0) {
+                    sb.append('/');
+                }
+                sb.append(rounded[i] / 10).append('.').append(rounded[i] % 10);
+            }
+            segment = sb.toString();
+        }
+        return segment;
+    }
+}
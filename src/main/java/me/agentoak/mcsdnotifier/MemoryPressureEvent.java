@@ -0,0 +1,45 @@
+package me.agentoak.mcsdnotifier;
+
+import me.agentoak.mcsdnotifier.system.MemoryPressure;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+import java.util.Optional;
+
+/**
+ * Called on the main thread when the service manager signals memory pressure for the server's cgroup, i.e. the server
+ * spent a significant share of time stalled waiting for memory (by default 200 ms within 2 s). Listeners should free
+ * what they can do without, e.g. drop caches or unload idle chunks, before the kernel starts reclaiming harder or the
+ * server is killed for running out of memory.
+ * <p>
+ * Pressure signalled again while this event still waits for the main thread does not fire another event.
+ *
+ * @see MCSDNotifierPlugin#getMemoryPressureStats()
+ */
+public final class MemoryPressureEvent extends Event {
+    private static final HandlerList HANDLERS = new HandlerList();
+
+    private final MemoryPressure.Stats stats;
+
+    MemoryPressureEvent(MemoryPressure.Stats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Pressure stall averages at the time the pressure was signalled.
+     *
+     * @return empty if the service manager does not signal pressure through a PSI file (e.g. through a FIFO)
+     */
+    public Optional<MemoryPressure.Stats> getStats() {
+        return Optional.ofNullable(stats);
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return HANDLERS;
+    }
+
+    public static HandlerList getHandlerList() {
+        return HANDLERS;
+    }
+}
@@ -0,0 +1,42 @@
+package me.agentoak.mcsdnotifier;
+
+import me.agentoak.mcsdnotifier.system.MemoryPressure;
+
+import java.util.Optional;
+
+/**
+ * {@link StatusSegment} with the memory pressure stall averages of the last 10 seconds, e.g.
+ * {@code memory pressure 10s some/full: 1.2/0.0%}. Left out if the stall averages are not available.
+ * <p>
+ * The string is only rebuilt when one of the displayed (rounded) values changed.
+ */
+final class MemoryPressureSegment implements StatusSegment {
+    private final MemoryPressure memoryPressure;
+    /**
+     * Some/full averages in tenths of percent, i.e. as they are displayed.
+     */
+    private final long[] rounded = {-1, -1};
+    private String segment;
+
+    MemoryPressureSegment(MemoryPressure memoryPressure) {
+        this.memoryPressure = memoryPressure;
+    }
+
+    @Override
+    public String build(StatusSnapshot snapshot) {
+        Optional<MemoryPressure.Stats> stats = memoryPressure.readStats();
+        if (!stats.isPresent()) {
+            return null;
+        }
+
+        long some = Math.round(stats.get().getSome().getAvg10() * 10);
+        long full = Math.round(stats.get().getFull().getAvg10() * 10);
+        if (segment == null || rounded[0] != some || rounded[1] != full) {
+            rounded[0] = some;
+            rounded[1] = full;
+            segment = "memory pressure 10s some/full: " + some / 10 + '.' + some % 10 + '/' + full / 10 + '.' +
+                          full % 10 + '%';
+        }
+        return segment;
+    }
+}
@@ -0,0 +1,70 @@
+package me.agentoak.mcsdnotifier;
+
+import me.agentoak.mcsdnotifier.system.MemoryPressure;
+import me.agentoak.mcsdnotifier.system.SDNotifyException;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Waits for memory pressure notifications on its own thread and fires {@link MemoryPressureEvent} on the main thread.
+ * <p>
+ * The thread blocks in {@link MemoryPressure#await()} and only wakes up when pressure is signalled or it is stopped.
+ * While an event still waits for the main thread, further signals do not schedule another one, so a main thread that
+ * is slowed down by the memory pressure is not flooded with tasks.
+ */
+final class MemoryPressureWatcher extends BackgroundTask {
+    private final MCSDNotifierPlugin plugin;
+    private final MemoryPressure pressure;
+    private final AtomicBoolean eventPending = new AtomicBoolean();
+
+    /**
+     * @throws SDNotifyException if the pressure file could not be watched
+     */
+    MemoryPressureWatcher(MCSDNotifierPlugin plugin, MemoryPressure pressure) throws SDNotifyException {
+        super(plugin.getName() + " Memory Pressure Watcher");
+        this.plugin = plugin;
+        this.pressure = pressure;
+        pressure.open();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (isRunning()) {
+                if (pressure.await() && isRunning()) {
+                    signal();
+                }
+            }
+        } catch (SDNotifyException e) {
+            plugin.getLogger().log(Level.WARNING, "Stopped watching memory pressure", e);
+        } finally {
+            pressure.close();
+        }
+    }
+
+    @Override
+    protected void wakeup() {
+        pressure.wakeup();
+    }
+
+    private void signal() {
+        if (!eventPending.compareAndSet(false, true)) {
+            return;
+        }
+
+        // Read on this thread, the main thread is likely slow enough already
+        Optional<MemoryPressure.Stats> stats = pressure.readStats();
+        plugin.getLogger().fine("Memory pressure signalled by " + pressure.getPath());
+        try {
+            plugin.runTask(() -> {
+                eventPending.set(false);
+                plugin.getServer().getPluginManager().callEvent(new MemoryPressureEvent(stats.orElse(null)));
+            });
+        } catch (RuntimeException e) {
+            // Plugin is being disabled
+            eventPending.set(false);
+        }
+    }
+}
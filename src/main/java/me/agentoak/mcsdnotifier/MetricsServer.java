@@ -0,0 +1,447 @@
+package me.agentoak.mcsdnotifier;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Serves metrics in the Prometheus text format over HTTP, on a TCP address or a unix socket, e.g. for a node exporter
+ * or a sidecar.
+ * <p>
+ * A single thread runs a non-blocking NIO server. Metrics are only read from thread-safe sources (never from the main
+ * thread) and rendered at most once per {@link #RENDER_INTERVAL} into one of two pre-allocated buffers, while
+ * connections still sending the previous rendering keep using the other one. Connections come from a fixed pool and
+ * share one read buffer, so serving a request does not allocate in this class. Every request gets the metrics,
+ * regardless of method and path, and the connection is closed after the response.
+ * <p>
+ * Unix sockets require Java 16+.
+ */
+final class MetricsServer extends BackgroundTask {
+    private static final String UNIX_PREFIX = "unix:";
+    private static final int MAX_CONNECTIONS = 16;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int READ_BUFFER_SIZE = 1024;
+    /**
+     * Requests are discarded, but must not be larger than this.
+     */
+    private static final int MAX_REQUEST_SIZE = 8192;
+    /**
+     * In ms, how long metrics are served from the same rendering.
+     */
+    private static final long RENDER_INTERVAL = 1_000L;
+    /**
+     * In ms, connections still open after this are closed.
+     */
+    private static final long CONNECTION_TIMEOUT = 10_000L;
+    /**
+     * In ms, how often timed out connections are looked for.
+     */
+    private static final long SELECT_TIMEOUT = 1_000L;
+    private static final double[] QUANTILES = {0.5, 0.99, 1};
+    private static final double SEC_PER_MSEC = 1 / 1_000.0;
+    private static final double SEC_PER_USEC = 1 / 1_000_000.0;
+    private static final double SEC_PER_NSEC = 1 / 1_000_000_000.0;
+    private static final byte[] REQUEST_END = ascii("\r\n\r\n");
+    private static final byte[] RESPONSE_HEADER = ascii("HTTP/1.1 200 OK\r\n" +
+                                                         "Content-Type: text/plain; version=0.0.4; charset=utf-8\r\n" +
+                                                         "Connection: close\r\n" +
+                                                         "Content-Length: ");
+
+    private final MCSDNotifierPlugin plugin;
+    private final NotifySender sender;
+    private final ServerCounters counters;
+    private final Selector selector;
+    private final ServerSocketChannel server;
+    private final Path socketFile;
+    private final Connection[] connections = new Connection[MAX_CONNECTIONS];
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final ByteBuffer body = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final byte[] digits = new byte[20];
+
+    private ByteBuffer front = ByteBuffer.allocateDirect(BUFFER_SIZE + RESPONSE_HEADER.length + 32);
+    private ByteBuffer back = ByteBuffer.allocateDirect(front.capacity());
+    private int frontLength;
+    private long renderTime;
+    private boolean rendered;
+
+    /**
+     * @param address {@code host:port}, or {@code unix:} followed by a socket path
+     * @throws IOException if the address is invalid or cannot be bound
+     */
+    MetricsServer(MCSDNotifierPlugin plugin, NotifySender sender, ServerCounters counters, String address)
+        throws IOException {
+        super(plugin.getName() + " Metrics Server");
+        this.plugin = plugin;
+        this.sender = sender;
+        this.counters = counters;
+        for (int i = 0; i < connections.length; i++) {
+            connections[i] = new Connection();
+        }
+
+        if (address.startsWith(UNIX_PREFIX)) {
+            socketFile = Paths.get(address.substring(UNIX_PREFIX.length()));
+            server = openUnix(socketFile);
+        } else {
+            socketFile = null;
+            server = ServerSocketChannel.open();
+            server.bind(parseInet(address));
+        }
+        try {
+            server.configureBlocking(false);
+            selector = Selector.open();
+            server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            throw e;
+        }
+        thread.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    private static InetSocketAddress parseInet(String address) throws IOException {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IOException("Invalid metrics address, expected host:port or unix:/path: " + address);
+        }
+        String host = address.substring(0, colon);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        try {
+            return new InetSocketAddress(host, Integer.parseInt(address.substring(colon + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid metrics address: " + address, e);
+        }
+    }
+
+    /**
+     * Java 16+ API, called by reflection since we compile for Java 8.
+     */
+    private static ServerSocketChannel openUnix(Path path) throws IOException {
+        ServerSocketChannel channel;
+        SocketAddress address;
+        try {
+            ProtocolFamily unix = StandardProtocolFamily.valueOf("UNIX");
+            channel = (ServerSocketChannel) ServerSocketChannel.class.getMethod("open", ProtocolFamily.class)
+                                                                     .invoke(null, unix);
+            address = (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+                                           .getMethod("of", Path.class).invoke(null, path);
+        } catch (IllegalArgumentException | ReflectiveOperationException e) {
+            throw new IOException("Unix sockets require Java 16+", e);
+        }
+
+        // A previous server may have left its socket behind
+        Files.deleteIfExists(path);
+        try {
+            channel.bind(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    @Override
+    protected void wakeup() {
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (isRunning()) {
+                selector.select(SELECT_TIMEOUT);
+                long now = System.nanoTime();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept(now);
+                        } else if (key.isReadable()) {
+                            read((Connection) key.attachment(), now);
+                        } else if (key.isWritable()) {
+                            write((Connection) key.attachment());
+                        }
+                    } catch (IOException e) {
+                        plugin.getLogger().log(Level.FINE, "Metrics connection failed", e);
+                        if (key.attachment() != null) {
+                            ((Connection) key.attachment()).close();
+                        }
+                    }
+                }
+                closeTimedOut(now);
+            }
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().log(Level.WARNING, "Metrics server failed", e);
+        } finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+            closeQuietly();
+        }
+    }
+
+    private void accept(long now) throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) {
+            return;
+        }
+        for (Connection connection : connections) {
+            if (connection.channel == null) {
+                channel.configureBlocking(false);
+                connection.open(channel, channel.register(selector, SelectionKey.OP_READ, connection), now);
+                return;
+            }
+        }
+        // All connections busy, a scraper will retry
+        channel.close();
+    }
+
+    private void read(Connection connection, long now) throws IOException {
+        readBuffer.clear();
+        int read = connection.channel.read(readBuffer);
+        if (read < 0) {
+            connection.close();
+            return;
+        }
+        connection.requestSize += read;
+        for (int i = 0; i < read && connection.matched < REQUEST_END.length; i++) {
+            byte b = readBuffer.get(i);
+            connection.matched = b == REQUEST_END[connection.matched] ? connection.matched + 1 :
+                                     b == REQUEST_END[0] ? 1 : 0;
+        }
+
+        if (connection.matched == REQUEST_END.length) {
+            if (!rendered || now - renderTime >= TimeUnit.MILLISECONDS.toNanos(RENDER_INTERVAL)) {
+                render(now);
+            }
+            connection.respond(front, frontLength);
+            write(connection);
+        } else if (connection.requestSize > MAX_REQUEST_SIZE) {
+            connection.close();
+        }
+    }
+
+    private void write(Connection connection) throws IOException {
+        ByteBuffer response = connection.response;
+        response.limit(connection.responseLength).position(connection.written);
+        connection.channel.write(response);
+        connection.written = response.position();
+        if (connection.written == connection.responseLength) {
+            connection.close();
+        } else {
+            connection.key.interestOps(SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void closeTimedOut(long now) {
+        for (Connection connection : connections) {
+            if (connection.channel != null &&
+                    now - connection.openTime > TimeUnit.MILLISECONDS.toNanos(CONNECTION_TIMEOUT)) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Render the metrics into the back buffer, unless a connection is still sending from it, and make it the front
+     * buffer.
+     */
+    private void render(long now) {
+        for (Connection connection : connections) {
+            if (connection.channel != null && connection.response == back) {
+                return;
+            }
+        }
+
+        body.clear();
+        gauge("mcsdnotifier_watchdog_interval_seconds", "WatchdogSec= of the service, 0 if the watchdog is disabled",
+            plugin.getWatchdogInterval() * SEC_PER_MSEC);
+        gauge("mcsdnotifier_notify_interval_seconds", "Interval watchdog notifications are sent at",
+            plugin.getNotifyInterval() * SEC_PER_MSEC);
+        gauge("mcsdnotifier_last_ping_age_seconds", "Time since the last watchdog notification was sent",
+            age(sender.getLastPing(), now));
+        gauge("mcsdnotifier_last_tick_age_seconds", "Time since the last tick started", age(sender.getLastTick(), now));
+
+        RollingHistogram.Snapshot ticks = plugin.getTickStats(1, TimeUnit.MINUTES);
+        // Same cap as the server's own TPS
+        gauge("mcsdnotifier_tps", "Ticks per second over the last minute",
+            ticks.getCount() == 0 ? 0 : Math.min(20, 1 / (ticks.getMean() * SEC_PER_USEC)));
+        gauge("mcsdnotifier_players", "Online players", counters.getOnlinePlayers());
+        gauge("mcsdnotifier_lag_pressure", "Lag pressure, 0 normal, 1 elevated, 2 critical",
+            plugin.getLagPressure().ordinal());
+
+        RollingHistogram.Snapshot latency = sender.getSendLatency(5, TimeUnit.MINUTES);
+        header("mcsdnotifier_send_latency_seconds", "Time sending a notification took over the last 5 minutes",
+            "summary");
+        for (double quantile : QUANTILES) {
+            putAscii("mcsdnotifier_send_latency_seconds{quantile=\"");
+            putNumber(quantile);
+            putAscii("\"} ");
+            putNumber(latency.getPercentile(quantile * 100) * SEC_PER_USEC);
+            body.put((byte) '\n');
+        }
+        putAscii("mcsdnotifier_send_latency_seconds_sum ");
+        putNumber(latency.getTotal() * SEC_PER_USEC);
+        putAscii("\nmcsdnotifier_send_latency_seconds_count ");
+        putLong(latency.getCount());
+        body.put((byte) '\n');
+        body.flip();
+
+        ByteBuffer response = back;
+        response.clear();
+        response.put(RESPONSE_HEADER);
+        putLong(response, body.remaining());
+        response.put(REQUEST_END);
+        response.put(body);
+        back = front;
+        front = response;
+        frontLength = response.position();
+        renderTime = now;
+        rendered = true;
+    }
+
+    private static double age(long time, long now) {
+        return time == 0 ? Double.NaN : (now - time) * SEC_PER_NSEC;
+    }
+
+    private void header(String name, String help, String type) {
+        putAscii("# HELP ");
+        putAscii(name);
+        body.put((byte) ' ');
+        putAscii(help);
+        putAscii("\n# TYPE ");
+        putAscii(name);
+        body.put((byte) ' ');
+        putAscii(type);
+        body.put((byte) '\n');
+    }
+
+    private void gauge(String name, String help, double value) {
+        header(name, help, "gauge");
+        putAscii(name);
+        body.put((byte) ' ');
+        putNumber(value);
+        body.put((byte) '\n');
+    }
+
+    private void putAscii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            body.put((byte) s.charAt(i));
+        }
+    }
+
+    /**
+     * Append a number with up to 6 decimals, without allocating like {@link Double#toString(double)} does.
+     */
+    private void putNumber(double value) {
+        if (Double.isNaN(value)) {
+            putAscii("NaN");
+            return;
+        }
+        long micros = Math.round(value * 1_000_000);
+        if (micros < 0) {
+            body.put((byte) '-');
+            micros = -micros;
+        }
+        putLong(body, micros / 1_000_000);
+        long fraction = micros % 1_000_000;
+        if (fraction != 0) {
+            body.put((byte) '.');
+            for (long unit = 100_000; fraction != 0; unit /= 10) {
+                body.put((byte) ('0' + fraction / unit));
+                fraction %= unit;
+            }
+        }
+    }
+
+    private void putLong(long value) {
+        putLong(body, value);
+    }
+
+    private void putLong(ByteBuffer buffer, long value) {
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (count > 0) {
+            buffer.put(digits[--count]);
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private void closeQuietly() {
+        try {
+            selector.close();
+            server.close();
+            if (socketFile != null) {
+                Files.deleteIfExists(socketFile);
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * A pooled client connection, only used by the server thread.
+     */
+    private static final class Connection {
+        private SocketChannel channel;
+        private SelectionKey key;
+        private long openTime;
+        private int requestSize;
+        /**
+         * Number of bytes of {@link #REQUEST_END} matched so far.
+         */
+        private int matched;
+        private ByteBuffer response;
+        private int responseLength;
+        private int written;
+
+        void open(SocketChannel channel, SelectionKey key, long now) {
+            this.channel = channel;
+            this.key = key;
+            this.openTime = now;
+            requestSize = 0;
+            matched = 0;
+            response = null;
+        }
+
+        void respond(ByteBuffer response, int length) {
+            this.response = response;
+            responseLength = length;
+            written = 0;
+        }
+
+        void close() {
+            if (channel != null) {
+                key.cancel();
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+                channel = null;
+                key = null;
+                response = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package me.agentoak.mcsdnotifier;
+
+/**
+ * How often to notify the service manager, derived from its watchdog interval and the configured status interval. All
+ * intervals are in ms. Immutable.
+ */
+final class NotifyIntervals {
+    private static final long MSEC_PER_SEC = 1_000L;
+    private static final long USEC_PER_MSEC = 1_000L;
+    /**
+     * In ms, default interval for watchdog/status updates. Used when the service manager does not tell us the watchdog
+     * interval (usually when it does not have watchdog enabled).
+     */
+    private static final long DEFAULT_NOTIFY_INTERVAL = 10L * MSEC_PER_SEC;
+    /**
+     * In ms, upper cap for notify interval. If service manager sets watchdog interval to a higher value, we will
+     * still report at this interval for up-to-date status messages.
+     */
+    private static final long MAX_NOTIFY_INTERVAL = 10L * MSEC_PER_SEC;
+    /**
+     * In ms, how long a tick is. Used as lower cap for notify and status interval. Minecraft is hardcoded to 20
+     * ticks/sec.
+     */
+    static final long TICK_INTERVAL = MSEC_PER_SEC / 20L;
+
+    private final long watchdogInterval;
+    private final long notifyInterval;
+    private final long statusInterval;
+
+    /**
+     * @param watchdogInterval time without watchdog updates before the watchdog kills the server, 0 if disabled
+     * @param notifyInterval   interval of watchdog updates
+     * @param statusInterval   minimum interval between status updates
+     */
+    NotifyIntervals(long watchdogInterval, long notifyInterval, long statusInterval) {
+        this.watchdogInterval = watchdogInterval;
+        this.notifyInterval = notifyInterval;
+        this.statusInterval = statusInterval;
+    }
+
+    /**
+     * Notify at half the watchdog interval, within the supported bounds. The status interval is left at 0 until
+     * {@link #withStatusInterval(long)}.
+     *
+     * @param watchdogUsec watchdog interval of the service manager, 0 if disabled
+     */
+    static NotifyIntervals forWatchdog(long watchdogUsec) {
+        if (watchdogUsec == 0) {
+            return new NotifyIntervals(0, DEFAULT_NOTIFY_INTERVAL, 0);
+        }
+        long watchdogInterval = Math.max(1, watchdogUsec / USEC_PER_MSEC);
+        // General recommendation is to send updates at half the watchdog interval
+        return new NotifyIntervals(watchdogInterval,
+            Math.min(MAX_NOTIFY_INTERVAL, Math.max(TICK_INTERVAL, watchdogInterval / 2)), 0);
+    }
+
+    /**
+     * @param statusInterval configured status interval, raised to one tick if lower
+     */
+    NotifyIntervals withStatusInterval(long statusInterval) {
+        return new NotifyIntervals(watchdogInterval, notifyInterval, Math.max(TICK_INTERVAL, statusInterval));
+    }
+
+    /**
+     * @return whether notifications can be sent often enough for the watchdog, i.e. it allows at least two ticks
+     */
+    boolean isWatchdogAchievable() {
+        return watchdogInterval == 0 || watchdogInterval >= TICK_INTERVAL * 2;
+    }
+
+    long getWatchdogInterval() {
+        return watchdogInterval;
+    }
+
+    long getNotifyInterval() {
+        return notifyInterval;
+    }
+
+    long getStatusInterval() {
+        return statusInterval;
+    }
+}
@@ -1,32 +1,60 @@
 package me.agentoak.mcsdnotifier;
 
 import me.agentoak.mcsdnotifier.system.SDNotify;
+import org.bukkit.Server;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.Plugin;
 
-final class NotifyListener implements Listener {
+import java.util.function.BooleanSupplier;
+
+final class NotifyListener implements Listener, TickListener {
+    private static final long NSEC_PER_USEC = 1_000L;
     private static final long NSEC_PER_MSEC = 1_000_000L;
 
-    private final MCSDNotifierPlugin plugin;
+    private final Plugin plugin;
+    private final ServerLifecycle lifecycle;
+    private final long statusInterval;
     private final SDNotify sdNotify;
+    private final NotifySender sender;
+    private final RollingHistogram tickHistogram;
+    private final RollingHistogram tickDurationHistogram;
+    private final FlightRecorder flightRecorder;
+    private final LagPressureMonitor lagPressure;
+    /**
+     * Bound {@code Server#isStopping()}, which is Paper-specific 1.15.2+ API.
+     */
+    private final BooleanSupplier isStopping;
 
-    private long nextNotifyTime;
+    private long nextStatusTime;
+    private long lastTickTime;
     private boolean seenDisableAll;
     private boolean takedown;
 
-    NotifyListener(MCSDNotifierPlugin plugin, SDNotify sdNotify) {
+    /**
+     * @param lifecycle      reacts to the first tick, status updates and the server being taken down
+     * @param flightRecorder records ticks and lifecycle events, {@code null} to not record them
+     * @param lagPressure    derives the lag pressure from ticks, {@code null} to not monitor it
+     */
+    NotifyListener(Plugin plugin, ServerLifecycle lifecycle, NotifyIntervals intervals, SDNotify sdNotify,
+                   NotifySender sender, RollingHistogram tickHistogram, RollingHistogram tickDurationHistogram,
+                   FlightRecorder flightRecorder, LagPressureMonitor lagPressure) {
         this.plugin = plugin;
+        this.lifecycle = lifecycle;
+        this.statusInterval = intervals.getStatusInterval();
         this.sdNotify = sdNotify;
+        this.sender = sender;
+        this.tickHistogram = tickHistogram;
+        this.tickDurationHistogram = tickDurationHistogram;
+        this.flightRecorder = flightRecorder;
+        this.lagPressure = lagPressure;
+        this.isStopping = ReflectionUtils.bindGetter(plugin.getServer(), Server.class, "isStopping",
+            BooleanSupplier.class).orElse(() -> false);
 
-        // Get a notification out on the first tick
-        nextNotifyTime = 0;
-    }
-
-    private static long monotonicMillis() {
-        // System.currentTimeMillis() is not monotonic
-        return System.nanoTime() / NSEC_PER_MSEC;
+        // Get a status out on the first tick
+        nextStatusTime = 0;
     }
 
     /**
@@ -37,23 +65,48 @@ final class NotifyListener implements Listener {
     }
 
     /*
-     * Just scheduling a timer to fire right at nextNotifyTime is not good enough; for the watchdog updates to
-     * have any meaning, we need to make them block on the main thread. However, the server running slowly (i.e.
-     * tick time increases) should not trigger the watchdog, as long as server is responsive at all. So check if
-     * we should update watchdog in every tick.
+     * Just scheduling a timer to fire right at the next notify time is not good enough; for the watchdog updates to
+     * have any meaning, they need to depend on the main thread. However, the server running slowly (i.e. tick time
+     * increases) should not trigger the watchdog, as long as server is responsive at all. So publish a heartbeat in
+     * every tick, and let NotifySender do the actual sd_notify call only while the heartbeat advances.
      */
-    public void onTick() {
-        long currentTime = monotonicMillis();
-        if (currentTime >= nextNotifyTime) {
-            if (nextNotifyTime == 0) {
-                // This is the first tick, so signal that startup/reload is finished
-                plugin.getLogger().info("Server ready - notifying service manager");
-                sdNotify.ready(plugin.buildStatus().orElse(null));
-            } else {
-                sdNotify.watchdog(plugin.buildStatus().orElse(null));
+    @Override
+    public void onTickStart(long tickTime) {
+        if (flightRecorder != null) {
+            flightRecorder.tickStart(tickTime);
+        }
+        if (lastTickTime != 0) {
+            tickHistogram.record((tickTime - lastTickTime) / NSEC_PER_USEC, tickTime);
+        } else {
+            if (flightRecorder != null) {
+                flightRecorder.startupFinished(tickTime);
             }
+            // Startup is done, from now on the watchdog takes care of hangs
+            lifecycle.startupFinished(tickTime);
+        }
+        lastTickTime = tickTime;
+        if (lagPressure != null) {
+            lagPressure.tickStarted(tickTime);
+        }
 
-            nextNotifyTime = currentTime + plugin.getNotifyInterval();
+        // StatusProvider may only be called on the main thread, so status is still built here
+        long currentTime = tickTime / NSEC_PER_MSEC;
+        if (currentTime >= nextStatusTime) {
+            lifecycle.updateStatus(sender);
+            nextStatusTime = currentTime + statusInterval;
+        }
+        // Publish heartbeat after status so the first notification (READY=1) already carries it
+        sender.beat(tickTime);
+    }
+
+    @Override
+    public void onTickEnd(long endTime, long tickDuration) {
+        if (flightRecorder != null) {
+            flightRecorder.tickEnd(endTime, tickDuration);
+        }
+        tickDurationHistogram.record(tickDuration, endTime);
+        if (lagPressure != null) {
+            lagPressure.tickEnded(endTime, tickDuration);
         }
     }
 
@@ -65,14 +118,21 @@ final class NotifyListener implements Listener {
      */
     @EventHandler(priority = EventPriority.LOWEST)
     public void onPluginDisable(PluginDisableEvent event) {
+        long now = System.nanoTime();
+        if (flightRecorder != null) {
+            flightRecorder.pluginDisabling(event.getPlugin().getName(), now);
+        }
         // We never reset seenDisableAll, but onEnable creates a new NotifyListener instance anyway
-        if (seenDisableAll) {
+        if (!seenDisableAll) {
             // Skip checks if we already know it's a reload/stop (or couldn't determine it the first time)
-            return;
+            detectTakedown();
         }
+        // Shutdown profiler is started by detecting the stop, so the plugin that revealed it is timed as well
+        lifecycle.pluginDisabling(event.getPlugin().getName(), now);
+    }
 
-        // isStopping is Paper-specific 1.15.2+ API
-        if (ReflectionUtils.methodIsTrue(plugin.getServer(), "isStopping")) {
+    private void detectTakedown() {
+        if (isStopping.getAsBoolean()) {
             handleTakedown(false);
             return;
         }
@@ -102,12 +162,13 @@ final class NotifyListener implements Listener {
         }
 
         if (seenDisableAll) {
+            sender.stop();
             /*
-             * The last notify time could be up to MCSDNotifierPlugin#MAX_NOTIFY_INTERVAL ago. In case this is an
+             * The last notify time could be up to NotifyIntervals#MAX_NOTIFY_INTERVAL ago. In case this is an
              * undetected stop/reload, we update the watchdog one last time, so we don't get killed too early during
              * shutdown. Makes WatchdogSec timeout consistent for shutdown on servers lacking Server#isStopping
              */
-            sdNotify.watchdog(plugin.buildStatus().orElse(null));
+            sdNotify.watchdog(lifecycle.buildStatus().orElse(null));
         }
     }
 
@@ -115,11 +176,19 @@ final class NotifyListener implements Listener {
         if (!takedown) {
             seenDisableAll = true;
             takedown = true;
+            // Don't let a concurrent watchdog notification overwrite our status
+            sender.stop();
+            // Service manager stops the watchdog once we are stopping, so a long shutdown is not a hang
+            lifecycle.takedown();
+            if (flightRecorder != null) {
+                flightRecorder.takedownDetected(reload);
+            }
             plugin.getLogger().info("Detected " + (reload ? "reload" : "stop") + " - notifying service manager");
             if (reload) {
                 sdNotify.reloading(null);
             } else {
                 sdNotify.stopping(null);
+                lifecycle.stopping();
             }
         }
     }
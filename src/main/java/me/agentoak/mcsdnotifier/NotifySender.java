@@ -0,0 +1,276 @@
+package me.agentoak.mcsdnotifier;
+
+import me.agentoak.mcsdnotifier.system.NotifyBatch;
+import me.agentoak.mcsdnotifier.system.NotifyField;
+import me.agentoak.mcsdnotifier.system.NotifyObserver;
+import me.agentoak.mcsdnotifier.system.SDNotify;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Sends watchdog notifications from a dedicated thread, so a slow notify socket never delays a tick.
+ * <p>
+ * The main thread only publishes a heartbeat with {@link #beat(long)}, which is a single volatile store (and a volatile
+ * read). The sender wakes up once per notify interval and only sends {@code WATCHDOG=1} if the heartbeat advanced since
+ * the last notification, otherwise it sends it as soon as the next heartbeat arrives. A hung main thread stops the
+ * heartbeat and therefore starves the watchdog just like sending directly from the main thread would. On Folia, the
+ * regions players are in must also have published heartbeats within the notify interval, see {@link RegionHeartbeats}.
+ * <p>
+ * To keep pings small, the status is only sent when it changed, and no more often than the status interval. Status
+ * changes between pings are sent as separate status-only notifications.
+ * <p>
+ * Other plugins can {@link #submit(NotifyField)} fields from any thread. The sender drains them on its next wakeup and
+ * sends them together with whatever it sends anyway, so each wakeup costs at most one send. A submitted status is shown
+ * until our own status is sent again, which happens no earlier than the status interval.
+ */
+final class NotifySender extends BackgroundTask {
+    private static final long NSEC_PER_USEC = 1_000L;
+    /**
+     * How many submitted fields may wait for the next wakeup, so a plugin submitting in a loop cannot exhaust memory.
+     */
+    private static final int MAX_SUBMITTED = 1024;
+
+    private final Plugin plugin;
+    private final SDNotify sdNotify;
+    private final long intervalNanos;
+    private final long statusIntervalNanos;
+    private final RegionHeartbeats regions;
+
+    /**
+     * {@link System#nanoTime()} of the last tick, 0 if there was no tick yet. Written by main thread only.
+     */
+    private volatile long lastTick;
+    private volatile String status;
+    /**
+     * Whether a ping is overdue and the sender waits for the next heartbeat to send it.
+     */
+    private volatile boolean awaitingBeat;
+    /**
+     * {@link System#nanoTime()} of the last {@code READY=1} or {@code WATCHDOG=1} sent, 0 if there was none yet.
+     */
+    private volatile long lastPing;
+    /**
+     * In µs, how long sending each notification took.
+     */
+    private final RollingHistogram sendLatency = new RollingHistogram(2, 300, TimeUnit.SECONDS);
+    /**
+     * Lock-free, so submitting threads never wait for each other or for the sender. Bounded by {@link #submittedCount},
+     * which is reserved before offering and released after polling.
+     */
+    private final Queue<NotifyField> submitted = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger submittedCount = new AtomicInteger();
+    private final NotifyBatch batch = new NotifyBatch();
+
+    private long lastSentTick;
+    private String lastSentStatus;
+    private boolean readySent;
+    private boolean staleWarned;
+
+    NotifySender(Plugin plugin, SDNotify sdNotify, NotifyIntervals intervals) {
+        this(plugin, sdNotify, intervals, null);
+    }
+
+    /**
+     * @param regions heartbeats of regions that must all have ticked within the notify interval for a watchdog
+     *                notification to be sent, in addition to the main thread heartbeat. {@code null} if the server has
+     *                no regions ticking separately from the main thread
+     */
+    NotifySender(Plugin plugin, SDNotify sdNotify, NotifyIntervals intervals, RegionHeartbeats regions) {
+        super(plugin.getName() + " Sender");
+        this.regions = regions;
+        this.plugin = plugin;
+        this.sdNotify = sdNotify;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervals.getNotifyInterval());
+        this.statusIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervals.getStatusInterval());
+    }
+
+    /**
+     * Publish a heartbeat of the main thread. The first heartbeat makes the sender signal readiness right away, and a
+     * heartbeat after a ping was held back makes it send that ping right away.
+     *
+     * @param tickTime {@link System#nanoTime()} at the time of the tick
+     */
+    void beat(long tickTime) {
+        boolean first = lastTick == 0;
+        lastTick = tickTime == 0 ? 1 : tickTime;
+        if (first || awaitingBeat) {
+            awaitingBeat = false;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Set the status to be sent to the service manager. Does nothing if the status did not change.
+     *
+     * @param status a single-line free-form status string, {@code null} to keep the current status
+     */
+    void setStatus(String status) {
+        if (status != null && !status.equals(this.status)) {
+            this.status = status;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Queue a field to be sent with the next notification. May be called from any thread.
+     *
+     * @return whether the field will be sent, i.e. the sender is running and the queue is not full
+     */
+    boolean submit(NotifyField field) {
+        if (!isRunning()) {
+            return false;
+        }
+        int count;
+        do {
+            count = submittedCount.get();
+            if (count >= MAX_SUBMITTED) {
+                return false;
+            }
+        } while (!submittedCount.compareAndSet(count, count + 1));
+        submitted.offer(field);
+        LockSupport.unpark(thread);
+        return true;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} of the last heartbeat, 0 if there was none yet
+     */
+    long getLastTick() {
+        return lastTick;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} of the last watchdog notification, 0 if there was none yet
+     */
+    long getLastPing() {
+        return lastPing;
+    }
+
+    /**
+     * @return how long sending notifications took in µs
+     */
+    RollingHistogram.Snapshot getSendLatency(long window, TimeUnit unit) {
+        return sendLatency.snapshot(window, unit);
+    }
+
+    @Override
+    public void run() {
+        long nextPing = System.nanoTime();
+        long nextStatus = nextPing;
+
+        while (isRunning()) {
+            long now = System.nanoTime();
+            long tick = lastTick;
+            String currentStatus = status;
+            boolean statusDue = isStatusChanged(currentStatus) && now - nextStatus >= 0;
+            boolean sent = false;
+            boolean pinged = false;
+
+            batch.clear();
+            NotifyField field;
+            while ((field = submitted.poll()) != null) {
+                submittedCount.decrementAndGet();
+                batch.add(field);
+            }
+            // A submitted status replaces ours, which is sent again once the status interval passed
+            String sendStatus = batch.getStatus();
+            int assignments = 0;
+
+            try {
+                if (!readySent) {
+                    if (tick != 0) {
+                        plugin.getLogger().info("Server ready - notifying service manager");
+                        assignments = NotifyObserver.READY;
+                        if (sendStatus == null) {
+                            sendStatus = currentStatus == null ? "Running" : currentStatus;
+                        }
+                        readySent = true;
+                        lastSentTick = tick;
+                        nextPing = now + intervalNanos;
+                    }
+                } else if (now - nextPing >= 0) {
+                    if (tick != lastSentTick && isRegionsAlive(now)) {
+                        assignments = NotifyObserver.WATCHDOG;
+                        if (sendStatus == null && statusDue) {
+                            sendStatus = currentStatus;
+                        }
+                        lastSentTick = tick;
+                        nextPing = now + intervalNanos;
+                    }
+                    // Otherwise the ping stays due and is sent on the next heartbeat, see beat()
+                } else if (sendStatus == null && statusDue) {
+                    sendStatus = currentStatus;
+                }
+
+                if (assignments != 0 || sendStatus != null || !batch.isEmpty()) {
+                    sdNotify.send(assignments, sendStatus, batch);
+                    sent = true;
+                    pinged = assignments != 0;
+                    if (sendStatus != null) {
+                        lastSentStatus = sendStatus;
+                        nextStatus = now + statusIntervalNanos;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Should never happen, but if the sender thread dies the watchdog will kill the server
+                plugin.getLogger().log(Level.SEVERE, "Sending notification failed", e);
+            }
+            if (sent) {
+                long end = System.nanoTime();
+                sendLatency.record((end - now) / NSEC_PER_USEC, end);
+                if (pinged) {
+                    lastPing = end;
+                }
+            }
+
+            if (readySent && System.nanoTime() - nextPing >= 0) {
+                /*
+                 * The ping is due but the heartbeat did not advance (or a region is stale), so wait for beat() to wake
+                 * us up. Waiting for the next interval instead would delay the ping after a single long tick by up to
+                 * a whole interval, and two intervals are the whole watchdog interval. Check the heartbeat again
+                 * after raising the flag, in case it advanced just before.
+                 */
+                awaitingBeat = true;
+                if (lastTick == tick) {
+                    LockSupport.parkNanos(this, intervalNanos);
+                }
+            } else {
+                // Without a pending status change, only wake up for the next ping (or when setStatus/beat unparks us)
+                long wakeup = readySent && isStatusChanged(status) && nextStatus - nextPing < 0 ?
+                    nextStatus : nextPing;
+                LockSupport.parkNanos(this, readySent ? Math.max(0, wakeup - System.nanoTime()) : intervalNanos);
+            }
+        }
+    }
+
+    /**
+     * @return whether all regions ticked within the last notify interval
+     */
+    private boolean isRegionsAlive(long now) {
+        if (regions == null) {
+            return true;
+        }
+
+        int stale = regions.findStale(now - intervalNanos);
+        if (stale == -1) {
+            staleWarned = false;
+            return true;
+        } else if (!staleWarned) {
+            staleWarned = true;
+            plugin.getLogger().warning("Region of " + regions.getLabel(stale) + " did not tick for " +
+                                           TimeUnit.NANOSECONDS.toMillis(now - regions.getLastBeat(stale)) +
+                                           " ms, holding back watchdog notifications until it ticks again");
+        }
+        return false;
+    }
+
+    private boolean isStatusChanged(String currentStatus) {
+        return currentStatus != null && !currentStatus.equals(lastSentStatus);
+    }
+}
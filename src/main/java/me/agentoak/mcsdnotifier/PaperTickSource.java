@@ -0,0 +1,68 @@
+package me.agentoak.mcsdnotifier;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Uses Paper's {@code ServerTickStartEvent} and {@code ServerTickEndEvent}, which are fired right at the start and end
+ * of every tick. The end event carries the tick duration as measured by the server itself.
+ * <p>
+ * The events are registered by reflection with an {@link org.bukkit.plugin.EventExecutor}, so this works when
+ * compiling against Bukkit API.
+ *
+ * @see #isSupported()
+ */
+final class PaperTickSource implements TickSource, Listener {
+    private static final String START_EVENT = "com.destroystokyo.paper.event.server.ServerTickStartEvent";
+    private static final String END_EVENT = "com.destroystokyo.paper.event.server.ServerTickEndEvent";
+    private static final long USEC_PER_MSEC = 1_000L;
+
+    private final Plugin plugin;
+
+    PaperTickSource(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void start(TickListener listener) {
+        Class<? extends Event> startEvent = eventClass(START_EVENT);
+        Class<? extends Event> endEvent = eventClass(END_EVENT);
+        ToDoubleFunction<Event> tickDuration =
+            ReflectionUtils.bindFunction(endEvent, "getTickDuration", ToDoubleFunction.class)
+                .orElseThrow(() -> new IllegalStateException("Missing ServerTickEndEvent#getTickDuration() method"));
+
+        PluginManager pluginManager = plugin.getServer().getPluginManager();
+        // Be the first on tick start and the last on tick end, to get as close to the actual tick as possible
+        pluginManager.registerEvent(startEvent, this, EventPriority.LOWEST,
+            (l, event) -> listener.onTickStart(System.nanoTime()), plugin);
+        pluginManager.registerEvent(endEvent, this, EventPriority.MONITOR,
+            (l, event) -> listener.onTickEnd(System.nanoTime(),
+                (long) (tickDuration.applyAsDouble(event) * USEC_PER_MSEC)), plugin);
+    }
+
+    @Override
+    public boolean reportsTickDuration() {
+        return true;
+    }
+
+    private static Class<? extends Event> eventClass(String name) {
+        try {
+            return Class.forName(name).asSubclass(Event.class);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Missing Paper event " + name, e);
+        }
+    }
+
+    /**
+     * Checks if the server has Paper's tick events, which are required for this {@code TickSource}.
+     */
+    static boolean isSupported() {
+        return ReflectionUtils.classExists(START_EVENT) && ReflectionUtils.classExists(END_EVENT);
+    }
+}
@@ -0,0 +1,123 @@
+package me.agentoak.mcsdnotifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durations of named phases of a startup or shutdown, grouped by kind (e.g. {@code plugin}, {@code world}), and the
+ * report that is written from them.
+ * <p>
+ * Not thread-safe. Phases are recorded on the main thread, and the report must only be built once recording is done.
+ */
+final class PhaseTimeline {
+    private final List<Phase> phases = new ArrayList<>();
+
+    void add(String kind, String name, long nanos) {
+        phases.add(new Phase(kind, name, nanos));
+    }
+
+    boolean isEmpty() {
+        return phases.isEmpty();
+    }
+
+    /**
+     * @return phases sorted by duration, longest first
+     */
+    List<Phase> getSlowest(int limit) {
+        List<Phase> sorted = new ArrayList<>(phases);
+        sorted.sort(Comparator.comparingLong(Phase::getNanos).reversed());
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    /**
+     * @return total duration of each kind of phase, in order of first appearance
+     */
+    Map<String, Long> getTotals() {
+        Map<String, Long> totals = new LinkedHashMap<>();
+        for (Phase phase : phases) {
+            totals.merge(phase.kind, phase.nanos, Long::sum);
+        }
+        return totals;
+    }
+
+    /**
+     * Write a report with all phases sorted by duration and the totals per kind.
+     *
+     * @param title      first line of the report
+     * @param totalNanos overall duration, the part not covered by any phase is reported as {@code other}
+     */
+    void writeReport(File file, String title, long totalNanos) throws IOException {
+        write(file, formatReport(title, totalNanos));
+    }
+
+    /**
+     * @see #writeReport(File, String, long)
+     */
+    String formatReport(String title, long totalNanos) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(title).append(", took ").append(formatSeconds(totalNanos)).append("\n\nTotals:\n");
+        long covered = 0;
+        for (Map.Entry<String, Long> total : getTotals().entrySet()) {
+            appendPhase(sb, total.getKey(), total.getValue());
+            covered += total.getValue();
+        }
+        appendPhase(sb, "other", Math.max(0, totalNanos - covered));
+
+        sb.append("\nAll phases, slowest first:\n");
+        for (Phase phase : getSlowest(phases.size())) {
+            appendPhase(sb, phase.kind + " " + phase.name, phase.nanos);
+        }
+        return sb.toString();
+    }
+
+    static void write(File file, String report) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), report.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendPhase(StringBuilder sb, String name, long nanos) {
+        sb.append(String.format(Locale.ROOT, "%10s  %s%n", formatSeconds(nanos), name));
+    }
+
+    static String formatSeconds(long nanos) {
+        return String.format(Locale.ROOT, "%.2f s", nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    static final class Phase {
+        private final String kind;
+        private final String name;
+        private final long nanos;
+
+        private Phase(String kind, String name, long nanos) {
+            this.kind = kind;
+            this.name = name;
+            this.nanos = nanos;
+        }
+
+        String getKind() {
+            return kind;
+        }
+
+        String getName() {
+            return name;
+        }
+
+        long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + name + " " + formatSeconds(nanos);
+        }
+    }
+}
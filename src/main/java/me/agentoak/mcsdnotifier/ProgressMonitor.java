@@ -0,0 +1,171 @@
+package me.agentoak.mcsdnotifier;
+
+import me.agentoak.mcsdnotifier.system.SDNotify;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldSaveEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Extends the service manager's start/stop timeout while the server visibly makes progress loading or saving worlds.
+ * <p>
+ * While worlds are loaded on startup and saved on shutdown, the main thread is blocked and cannot send notifications,
+ * so on large worlds {@code TimeoutStartSec=}/{@code TimeoutStopSec=} may run out although the server is healthy. The
+ * monitor thread periodically checks for progress, i.e. chunk load and world events or region files in the world
+ * folders growing or being rewritten, and sends {@code EXTEND_TIMEOUT_USEC} for every check that saw progress. Once
+ * nothing happened for the timeout, it stops extending and a stuck server is killed as usual.
+ * <p>
+ * Only active while starting (until the first tick) and while stopping, see {@link #setActive(boolean)}.
+ */
+final class ProgressMonitor extends BackgroundTask implements Listener {
+    /**
+     * In ms, minimum time between progress checks.
+     */
+    private static final long MIN_CHECK_INTERVAL = 1_000L;
+
+    private final Plugin plugin;
+    private final SDNotify sdNotify;
+    private final long timeoutNanos;
+    private final long intervalNanos;
+    private final File worldContainer;
+    private final RegionFileScanner regionScanner = new RegionFileScanner();
+    private final LongAdder events = new LongAdder();
+
+    private volatile boolean active = true;
+    private long lastRegionSignature;
+    private long lastEvents;
+
+    /**
+     * @param timeout in ms, how long to keep extending after the last progress was seen
+     */
+    ProgressMonitor(Plugin plugin, SDNotify sdNotify, long timeout) {
+        super(plugin.getName() + " Progress Monitor");
+        this.plugin = plugin;
+        this.sdNotify = sdNotify;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(MIN_CHECK_INTERVAL, timeout / 4));
+        this.worldContainer = plugin.getServer().getWorldContainer();
+        thread.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    /**
+     * Start or pause extending the timeout. Should be active while the service manager is in a state with a timeout
+     * that the main thread cannot serve, i.e. before {@code READY=1} and after {@code STOPPING=1}.
+     */
+    void setActive(boolean active) {
+        this.active = active;
+        LockSupport.unpark(thread);
+    }
+
+    boolean isActive() {
+        return active;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        events.increment();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        events.increment();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldSave(WorldSaveEvent event) {
+        events.increment();
+    }
+
+    @Override
+    public void run() {
+        /*
+         * Scanning the world folders may take a while, so the first baseline is taken here rather than on the main
+         * thread. This also loads every class the monitor thread needs while our plugin class loader is still usable;
+         * on shutdown it keeps running after our plugin was disabled.
+         */
+        baseline();
+        boolean baselined = true;
+        boolean stalled = false;
+        long lastProgress = System.nanoTime();
+        while (isRunning()) {
+            if (!active) {
+                // Progress made while running normally must not count once we become active again
+                baselined = false;
+                LockSupport.park(this);
+                continue;
+            } else if (!baselined) {
+                baseline();
+                baselined = true;
+                stalled = false;
+                lastProgress = System.nanoTime();
+            }
+
+            LockSupport.parkNanos(this, intervalNanos);
+            if (!active || !isRunning()) {
+                continue;
+            }
+
+            long now = System.nanoTime();
+            if (checkProgress()) {
+                if (stalled) {
+                    plugin.getLogger().info("Server is making progress again, extending timeout");
+                    stalled = false;
+                }
+                lastProgress = now;
+                // Service manager must hear from us again within the timeout, or the regular timeout applies
+                sdNotify.extendTimeout(TimeUnit.NANOSECONDS.toMicros(timeoutNanos));
+            } else if (!stalled && now - lastProgress >= timeoutNanos) {
+                stalled = true;
+                plugin.getLogger().warning("Server made no progress for " +
+                                               TimeUnit.NANOSECONDS.toMillis(now - lastProgress) +
+                                               " ms, not extending the timeout anymore");
+            }
+        }
+    }
+
+    private void baseline() {
+        lastEvents = events.sum();
+        lastRegionSignature = scanRegionFiles();
+    }
+
+    /**
+     * @return whether anything changed since the last check or baseline
+     */
+    private boolean checkProgress() {
+        long currentEvents = events.sum();
+        long regionSignature = scanRegionFiles();
+        boolean progress = currentEvents != lastEvents || regionSignature != lastRegionSignature;
+        lastEvents = currentEvents;
+        lastRegionSignature = regionSignature;
+        return progress;
+    }
+
+    /**
+     * @see RegionFileScanner
+     */
+    private long scanRegionFiles() {
+        // The worlds may not be loaded yet, so look for world folders instead of asking the server
+        File[] worlds = worldContainer.listFiles(file -> new File(file, "level.dat").isFile());
+        long signature = 0;
+        if (worlds != null) {
+            for (File world : worlds) {
+                try {
+                    signature += regionScanner.scan(world);
+                } catch (IOException | RuntimeException e) {
+                    plugin.getLogger().log(Level.FINE, "Could not scan world folder " + world, e);
+                }
+            }
+        }
+        return signature;
+    }
+}
@@ -1,6 +1,13 @@
 package me.agentoak.mcsdnotifier;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Optional;
 
 final class ReflectionUtils {
     private ReflectionUtils() {
@@ -31,44 +38,96 @@ final class ReflectionUtils {
     }
 
     /**
-     * Call a method with no arguments and return its result.
+     * Bind a method with no arguments of the given object to an instance of a functional interface, so it can be called
+     * without any reflection. The method is looked up only once, and the returned instance is generated by
+     * {@link LambdaMetafactory}, so the JIT can inline the call just like a normal method call.
      *
-     * @throws RuntimeException if the method does not exist or is not accessible
+     * @param object              object to bind the method to
+     * @param type                type declaring the method, must be a public supertype of {@code object}
+     * @param methodName          name of a public method with no arguments
+     * @param functionalInterface interface to implement, its single abstract method must have no arguments and a
+     *                            return type compatible with the method
+     * @return empty if the method does not exist or is not accessible
      */
-    @SuppressWarnings("unchecked")
-    public static <T> T methodGetter(Object object, String methodName) {
+    public static <T, S> Optional<T> bindGetter(S object, Class<? super S> type, String methodName,
+                                                Class<T> functionalInterface) {
+        Method method;
         try {
-            return (T) object.getClass().getMethod(methodName).invoke(object);
-        } catch (NoSuchMethodException | IllegalAccessException e) {
-            throw new RuntimeException("Cannot call method " + object.getClass().getName() + "#" + methodName + "(). " +
-                                           "This is a bug", e);
-        } catch (InvocationTargetException e) {
-            if (e.getCause() instanceof RuntimeException) {
-                throw (RuntimeException) e.getCause();
-            } else if (e.getCause() instanceof Error) {
-                throw (Error) e.getCause();
-            }
-            throw new RuntimeException(e.getCause());
+            method = type.getMethod(methodName);
+        } catch (NoSuchMethodException ignored) {
+            return Optional.empty();
+        }
+
+        Method sam = findSingleAbstractMethod(functionalInterface);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle handle;
+        try {
+            handle = lookup.unreflect(method);
+        } catch (IllegalAccessException ignored) {
+            return Optional.empty();
+        }
+
+        try {
+            CallSite site = LambdaMetafactory.metafactory(lookup, sam.getName(),
+                MethodType.methodType(functionalInterface, method.getDeclaringClass()),
+                MethodType.methodType(sam.getReturnType()), handle, MethodType.methodType(sam.getReturnType()));
+            return Optional.of(functionalInterface.cast(site.getTarget().invoke(object)));
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("Cannot bind method " + type.getName() + "#" + methodName + "() to " +
+                                           functionalInterface.getName() + ". This is a bug", e);
         }
     }
 
     /**
-     * Check if a method exists, and if it does, invokes it and checks if it returns {@code true}.
+     * Like {@link #bindGetter(Object, Class, String, Class)}, but without binding an object. The object to call the
+     * method on is passed as the only argument to the functional interface, e.g. {@code ToDoubleFunction}, so one
+     * instance works for all objects of the type.
      *
-     * @return {@code true} if method exists and returned {@code true}, {@code false} otherwise
+     * @param type                type declaring the method, must be public
+     * @param methodName          name of a public method with no arguments
+     * @param functionalInterface interface to implement, its single abstract method must take one argument the type can
+     *                            be passed as, and have a return type compatible with the method
+     * @return empty if the method does not exist or is not accessible
      */
-    public static boolean methodIsTrue(Object object, String methodName) {
+    public static <T> Optional<T> bindFunction(Class<?> type, String methodName, Class<T> functionalInterface) {
+        Method method;
         try {
-            return Boolean.TRUE.equals(object.getClass().getMethod(methodName).invoke(object));
-        } catch (NoSuchMethodException | IllegalAccessException ignored) {
-            return false;
-        } catch (InvocationTargetException e) {
-            if (e.getCause() instanceof RuntimeException) {
-                throw (RuntimeException) e.getCause();
-            } else if (e.getCause() instanceof Error) {
-                throw (Error) e.getCause();
+            method = type.getMethod(methodName);
+        } catch (NoSuchMethodException ignored) {
+            return Optional.empty();
+        }
+
+        Method sam = findSingleAbstractMethod(functionalInterface);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle handle;
+        try {
+            handle = lookup.unreflect(method);
+        } catch (IllegalAccessException ignored) {
+            return Optional.empty();
+        }
+
+        try {
+            CallSite site = LambdaMetafactory.metafactory(lookup, sam.getName(),
+                MethodType.methodType(functionalInterface),
+                MethodType.methodType(sam.getReturnType(), sam.getParameterTypes()), handle,
+                MethodType.methodType(sam.getReturnType(), method.getDeclaringClass()));
+            return Optional.of(functionalInterface.cast(site.getTarget().invoke()));
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new RuntimeException("Cannot bind method " + type.getName() + "#" + methodName + "() to " +
+                                           functionalInterface.getName() + ". This is a bug", e);
+        }
+    }
+
+    private static Method findSingleAbstractMethod(Class<?> functionalInterface) {
+        for (Method m : functionalInterface.getMethods()) {
+            if (Modifier.isAbstract(m.getModifiers())) {
+                return m;
             }
-            throw new RuntimeException(e.getCause());
         }
+        throw new IllegalArgumentException(functionalInterface.getName() + " is not a functional interface");
     }
 }
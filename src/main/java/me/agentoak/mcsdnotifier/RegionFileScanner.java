@@ -0,0 +1,47 @@
+package me.agentoak.mcsdnotifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.EnumSet;
+
+/**
+ * Combines size and modification time of all region files of a world folder into one value, which changes whenever a
+ * region file is created, grows or is rewritten. Used to see the server loading or saving a world without asking it.
+ * <p>
+ * Not thread-safe.
+ */
+final class RegionFileScanner extends SimpleFileVisitor<Path> {
+    /**
+     * Deep enough for {@code world/dimensions/<namespace>/<name>/region/r.0.0.mca}.
+     */
+    private static final int MAX_DEPTH = 5;
+
+    private long signature;
+
+    long scan(File world) throws IOException {
+        signature = 0;
+        Files.walkFileTree(world.toPath(), EnumSet.noneOf(FileVisitOption.class), MAX_DEPTH, this);
+        return signature;
+    }
+
+    @Override
+    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (attrs.isRegularFile() && file.getFileName().toString().endsWith(".mca")) {
+            // Sum is independent of the order files are visited in
+            signature += attrs.size() * 31 + attrs.lastModifiedTime().toMillis();
+        }
+        return FileVisitResult.CONTINUE;
+    }
+
+    @Override
+    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+        // Files may disappear while the server saves, that's fine
+        return FileVisitResult.CONTINUE;
+    }
+}
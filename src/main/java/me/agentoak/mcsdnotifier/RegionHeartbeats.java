@@ -0,0 +1,207 @@
+package me.agentoak.mcsdnotifier;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Heartbeats of the independently ticking regions of a Folia server, so the watchdog can require all of them to be
+ * alive instead of a single main thread.
+ * <p>
+ * Each tracked region anchor (e.g. a player, whose region ticks it) claims a slot and its region thread publishes a
+ * heartbeat into it every tick. Slots are spread over a flat {@link AtomicLongArray} with 128 bytes between them, so
+ * region threads beating in parallel never write to the same cache line. Publishing a heartbeat is two ordered stores
+ * and never allocates or blocks.
+ * <p>
+ * Every slot expects a single writer at a time. Reads from other threads see the latest or a slightly older value.
+ */
+final class RegionHeartbeats {
+    /**
+     * Longs per slot, 128 bytes to also defeat adjacent cache line prefetching.
+     */
+    private static final int STRIDE = 16;
+    /**
+     * {@link #FREE}, {@link #CLAIMING} or {@link #IN_USE}.
+     */
+    private static final int STATE = 0;
+    /**
+     * {@link System#nanoTime()} of the last tick.
+     */
+    private static final int BEAT = 1;
+    /**
+     * Moving average of the tick interval, in µs.
+     */
+    private static final int INTERVAL = 2;
+    /**
+     * Weight of a new tick interval in the moving average, as a power of two (i.e. 1/8).
+     */
+    private static final int AVERAGE_SHIFT = 3;
+    private static final long NSEC_PER_USEC = 1_000L;
+
+    private static final long FREE = 0;
+    /**
+     * Taken by {@link #claim(String, long)}, but the heartbeat is not initialized yet, so readers skip the slot.
+     */
+    private static final long CLAIMING = 1;
+    private static final long IN_USE = 2;
+
+    private final int capacity;
+    private final AtomicLongArray slots;
+    private final AtomicReferenceArray<String> labels;
+
+    /**
+     * @param capacity maximum number of region anchors that can be tracked at once
+     */
+    RegionHeartbeats(int capacity) {
+        this.capacity = capacity;
+        // One extra slot in front so the first slot does not share a cache line with the array header
+        this.slots = new AtomicLongArray((capacity + 1) * STRIDE);
+        this.labels = new AtomicReferenceArray<>(capacity);
+    }
+
+    private static int base(int slot) {
+        return (slot + 1) * STRIDE;
+    }
+
+    /**
+     * Claim a free slot. Counts as a heartbeat, so a new slot is not considered stale right away.
+     *
+     * @param label describes the region anchor, for status and log messages
+     * @param now   {@link System#nanoTime()}
+     * @return the slot, -1 if all slots are taken
+     */
+    int claim(String label, long now) {
+        for (int slot = 0; slot < capacity; slot++) {
+            if (slots.compareAndSet(base(slot) + STATE, FREE, CLAIMING)) {
+                labels.set(slot, label);
+                slots.set(base(slot) + INTERVAL, 0);
+                slots.set(base(slot) + BEAT, now);
+                // Publish only now, so readers never see the heartbeat of the slot's previous owner
+                slots.set(base(slot) + STATE, IN_USE);
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Publish a heartbeat. Must only be called by the current owner of the slot.
+     *
+     * @param now {@link System#nanoTime()} at the start of the tick
+     */
+    void beat(int slot, long now) {
+        int base = base(slot);
+        long interval = (now - slots.get(base + BEAT)) / NSEC_PER_USEC;
+        long average = slots.get(base + INTERVAL);
+        slots.lazySet(base + INTERVAL, average == 0 ? interval : average + ((interval - average) >> AVERAGE_SHIFT));
+        slots.lazySet(base + BEAT, now);
+    }
+
+    /**
+     * Give up a slot, e.g. because its anchor left the world.
+     */
+    void release(int slot) {
+        labels.set(slot, null);
+        slots.set(base(slot) + STATE, FREE);
+    }
+
+    /**
+     * Find a claimed slot whose last heartbeat is older than the given time.
+     *
+     * @param since {@link System#nanoTime()} that all heartbeats should be newer than
+     * @return the stale slot with the oldest heartbeat, -1 if all claimed slots beat since then
+     */
+    int findStale(long since) {
+        int stale = -1;
+        long oldest = since;
+        for (int slot = 0; slot < capacity; slot++) {
+            int base = base(slot);
+            if (slots.get(base + STATE) == IN_USE) {
+                long beat = slots.get(base + BEAT);
+                if (beat - oldest < 0) {
+                    oldest = beat;
+                    stale = slot;
+                }
+            }
+        }
+        return stale;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} of the last heartbeat in the slot
+     */
+    long getLastBeat(int slot) {
+        return slots.get(base(slot) + BEAT);
+    }
+
+    /**
+     * @return label of the slot, {@code null} if it was released
+     */
+    String getLabel(int slot) {
+        return labels.get(slot);
+    }
+
+    /**
+     * Summarize the tick intervals of all claimed slots.
+     */
+    Summary summarize() {
+        int count = 0;
+        long sum = 0;
+        long max = 0;
+        String slowest = null;
+        for (int slot = 0; slot < capacity; slot++) {
+            int base = base(slot);
+            if (slots.get(base + STATE) == IN_USE) {
+                long interval = slots.get(base + INTERVAL);
+                count++;
+                sum += interval;
+                if (slowest == null || interval > max) {
+                    max = interval;
+                    slowest = labels.get(slot);
+                }
+            }
+        }
+        return new Summary(count, count == 0 ? 0 : sum / count, max, slowest);
+    }
+
+    static final class Summary {
+        private final int count;
+        private final long averageInterval;
+        private final long maxInterval;
+        private final String slowest;
+
+        private Summary(int count, long averageInterval, long maxInterval, String slowest) {
+            this.count = count;
+            this.averageInterval = averageInterval;
+            this.maxInterval = maxInterval;
+            this.slowest = slowest;
+        }
+
+        /**
+         * @return number of tracked region anchors
+         */
+        int getCount() {
+            return count;
+        }
+
+        /**
+         * @return in µs, average of the tick intervals of all anchors' regions
+         */
+        long getAverageInterval() {
+            return averageInterval;
+        }
+
+        /**
+         * @return in µs, tick interval of the slowest anchor's region
+         */
+        long getMaxInterval() {
+            return maxInterval;
+        }
+
+        /**
+         * @return label of the slowest anchor, {@code null} if there are none
+         */
+        String getSlowest() {
+            return slowest;
+        }
+    }
+}
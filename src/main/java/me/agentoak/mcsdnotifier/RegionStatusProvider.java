@@ -0,0 +1,44 @@
+package me.agentoak.mcsdnotifier;
+
+import org.bukkit.Server;
+
+/**
+ * {@link StatusProvider} for Folia, which has no global TPS. Contains the same information as
+ * {@link BasicStatusProvider} plus the average and slowest tick interval of the regions players are in.
+ */
+final class RegionStatusProvider extends BasicStatusProvider {
+    /**
+     * Intervals are shown in ms with one decimal.
+     */
+    private static final long USEC_PER_TENTH_MS = 100L;
+
+    private final RegionHeartbeats heartbeats;
+
+    RegionStatusProvider(Server server, ServerCounters counters, RegionHeartbeats heartbeats) {
+        super(server, counters);
+        this.heartbeats = heartbeats;
+    }
+
+    @Override
+    public String status() {
+        RegionHeartbeats.Summary summary = heartbeats.summarize();
+        StringBuilder sb = new StringBuilder(super.status());
+        if (summary.getCount() > 0) {
+            // Time between tick starts, i.e. 50 ms when keeping up, not the time spent ticking
+            sb.append(", player region tick interval avg/max: ");
+            appendMillis(sb, summary.getAverageInterval());
+            sb.append('/');
+            appendMillis(sb, summary.getMaxInterval());
+            sb.append(" ms (slowest: ").append(summary.getSlowest()).append(')');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Append a duration in µs as ms with one decimal.
+     */
+    private static void appendMillis(StringBuilder sb, long usec) {
+        long rounded = Math.round((double) usec / USEC_PER_TENTH_MS);
+        sb.append(rounded / 10).append('.').append(rounded % 10);
+    }
+}
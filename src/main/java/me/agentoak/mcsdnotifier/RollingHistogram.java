@@ -0,0 +1,202 @@
+package me.agentoak.mcsdnotifier;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of non-negative values (e.g. durations in µs) over a rolling time window, in the spirit of HdrHistogram.
+ * <p>
+ * Values are counted in log-linear buckets: exact below 8, above that each power of two is split into 8 buckets, so
+ * percentiles are accurate to about 12.5%. Time is split into fixed-length slots, each with its own set of buckets,
+ * so recording a value is a handful of array stores and never allocates. Reading aggregates all slots within the
+ * requested window, i.e. windows have the granularity of one slot.
+ * <p>
+ * Recording is lock-free but expects a single writer thread. Snapshots can be taken from any thread at any time and
+ * are consistent enough for statistics.
+ */
+public final class RollingHistogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    /**
+     * Values are clamped to below {@code 2^MAX_MAGNITUDE}, i.e. about 134 seconds for µs.
+     */
+    private static final int MAX_MAGNITUDE = 27;
+    private static final long MAX_VALUE = (1L << MAX_MAGNITUDE) - 1;
+    static final int BUCKETS = (MAX_MAGNITUDE - SUB_BITS + 1) * SUB_COUNT;
+
+    private static final int META_EPOCH = 0;
+    private static final int META_COUNT = 1;
+    private static final int META_SUM = 2;
+    private static final int META_MAX = 3;
+    private static final int META_SIZE = 4;
+
+    private final long slotNanos;
+    private final int slots;
+    private final AtomicLongArray buckets;
+    private final AtomicLongArray meta;
+
+    /**
+     * @param slotLength length of each time slot, i.e. the granularity of windows
+     * @param window     longest window that can be read
+     */
+    public RollingHistogram(long slotLength, long window, TimeUnit unit) {
+        this.slotNanos = unit.toNanos(slotLength);
+        // One more slot than needed for the window, since the current slot is incomplete
+        this.slots = (int) ((unit.toNanos(window) + slotNanos - 1) / slotNanos) + 1;
+        this.buckets = new AtomicLongArray(slots * BUCKETS);
+        this.meta = new AtomicLongArray(slots * META_SIZE);
+        for (int i = 0; i < slots; i++) {
+            meta.set(i * META_SIZE + META_EPOCH, Long.MIN_VALUE);
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        return (magnitude - SUB_BITS + 1) * SUB_COUNT + (int) ((value >>> (magnitude - SUB_BITS)) & (SUB_COUNT - 1));
+    }
+
+    /**
+     * @return highest value that is counted in the given bucket
+     */
+    static long bucketUpperBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int magnitude = index / SUB_COUNT + SUB_BITS - 1;
+        int shift = magnitude - SUB_BITS;
+        return ((long) (SUB_COUNT + index % SUB_COUNT) << shift) + (1L << shift) - 1;
+    }
+
+    /**
+     * Record a value. Must only be called from a single thread.
+     *
+     * @param value negative values are counted as 0, too large values are clamped
+     * @param now   {@link System#nanoTime()} at the time of the measurement
+     */
+    public void record(long value, long now) {
+        value = Math.max(0, Math.min(MAX_VALUE, value));
+        long epoch = Math.floorDiv(now, slotNanos);
+        int slot = (int) Math.floorMod(epoch, (long) slots);
+        int metaBase = slot * META_SIZE;
+        int bucketBase = slot * BUCKETS;
+
+        if (meta.get(metaBase + META_EPOCH) != epoch) {
+            // Slot was last used a full rotation ago, start over
+            meta.set(metaBase + META_EPOCH, Long.MIN_VALUE);
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.lazySet(bucketBase + i, 0);
+            }
+            meta.lazySet(metaBase + META_COUNT, 0);
+            meta.lazySet(metaBase + META_SUM, 0);
+            meta.lazySet(metaBase + META_MAX, 0);
+            meta.set(metaBase + META_EPOCH, epoch);
+        }
+
+        int index = bucketBase + bucketIndex(value);
+        buckets.lazySet(index, buckets.get(index) + 1);
+        meta.lazySet(metaBase + META_COUNT, meta.get(metaBase + META_COUNT) + 1);
+        meta.lazySet(metaBase + META_SUM, meta.get(metaBase + META_SUM) + value);
+        if (value > meta.get(metaBase + META_MAX)) {
+            meta.lazySet(metaBase + META_MAX, value);
+        }
+    }
+
+    /**
+     * Aggregate all values recorded within the given window up to now.
+     *
+     * @param window length of the window, rounded up to whole slots and capped to the longest supported window
+     */
+    public Snapshot snapshot(long window, TimeUnit unit) {
+        long now = System.nanoTime();
+        long currentEpoch = Math.floorDiv(now, slotNanos);
+        long windowSlots = Math.min(slots - 1, (unit.toNanos(window) + slotNanos - 1) / slotNanos);
+
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        long sum = 0;
+        long max = 0;
+        for (int slot = 0; slot < slots; slot++) {
+            int metaBase = slot * META_SIZE;
+            long epoch = meta.get(metaBase + META_EPOCH);
+            if (epoch > currentEpoch || epoch < currentEpoch - windowSlots) {
+                continue;
+            }
+
+            count += meta.get(metaBase + META_COUNT);
+            sum += meta.get(metaBase + META_SUM);
+            max = Math.max(max, meta.get(metaBase + META_MAX));
+            int bucketBase = slot * BUCKETS;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += buckets.get(bucketBase + i);
+            }
+        }
+        return new Snapshot(counts, count, sum, max);
+    }
+
+    /**
+     * Immutable aggregate of a {@link RollingHistogram} window. All values are in the unit they were recorded in.
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * Number of recorded values.
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Sum of all recorded values.
+         */
+        public long getTotal() {
+            return total;
+        }
+
+        /**
+         * Largest recorded value, 0 if there are none.
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Average of all recorded values, 0 if there are none.
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * Value that the given percentage of recorded values are less than or equal to, within the precision of the
+         * histogram. Never larger than {@link #getMax()}.
+         *
+         * @param percentile between 0 and 100, e.g. 99 for the 99th percentile
+         * @return 0 if there are no values
+         */
+        public long getPercentile(double percentile) {
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(max, bucketUpperBound(i));
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package me.agentoak.mcsdnotifier;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Bukkit/Spigot API lacks tick events, so work around by running a task timer every tick. The task runs somewhere in
+ * the middle of the tick among all other scheduled tasks, so tick start is only approximated and the tick duration is
+ * not known.
+ */
+final class SchedulerTickSource implements TickSource {
+    private final Plugin plugin;
+
+    SchedulerTickSource(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void start(TickListener listener) {
+        plugin.getServer().getScheduler().runTaskTimer(plugin, () -> listener.onTickStart(System.nanoTime()), 1L, 1L);
+    }
+
+    @Override
+    public boolean reportsTickDuration() {
+        return false;
+    }
+}
@@ -0,0 +1,173 @@
+package me.agentoak.mcsdnotifier;
+
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.event.server.PluginEnableEvent;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts of online players, enabled plugins, loaded worlds, loaded chunks and entities, kept up to date from events.
+ * <p>
+ * Asking the server for these counts copies its plugin array and world list, and counting chunks or entities even
+ * walks every world. Here, the server is walked once when the plugin is enabled, and every event only adds to or
+ * subtracts from a {@link LongAdder}. Reading a count never touches server collections and is safe from any thread,
+ * also with Folia firing events on several region threads at once.
+ * <p>
+ * Entities are counted with Paper's {@code EntityAddToWorldEvent} and {@code EntityRemoveFromWorldEvent}, Bukkit has
+ * no event for every entity that is removed. On other servers, the entity count is not available.
+ *
+ * @see MCSDNotifierPlugin#getServerCounters()
+ */
+public final class ServerCounters implements Listener {
+    private static final String ENTITY_ADD_EVENT = "com.destroystokyo.paper.event.entity.EntityAddToWorldEvent";
+    private static final String ENTITY_REMOVE_EVENT =
+        "com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent";
+
+    private final Plugin plugin;
+    private final LongAdder players = new LongAdder();
+    private final LongAdder plugins = new LongAdder();
+    private final LongAdder worlds = new LongAdder();
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder entities = new LongAdder();
+    private volatile boolean chunksCounted;
+    private volatile boolean entitiesCounted;
+
+    ServerCounters(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * Take the initial counts and start counting. Must be called on the main thread, while our plugin is enabled.
+     */
+    void start() {
+        Server server = plugin.getServer();
+        PluginManager pluginManager = server.getPluginManager();
+        pluginManager.registerEvents(this, plugin);
+        boolean entityEvents = registerEntityEvents(pluginManager);
+
+        players.add(server.getOnlinePlayers().size());
+        for (Plugin other : pluginManager.getPlugins()) {
+            if (other.isEnabled()) {
+                plugins.increment();
+            }
+        }
+        chunksCounted = true;
+        entitiesCounted = entityEvents;
+        for (World world : server.getWorlds()) {
+            worlds.increment();
+            try {
+                chunks.add(world.getLoadedChunks().length);
+                if (entityEvents) {
+                    entities.add(world.getEntities().size());
+                }
+            } catch (UnsupportedOperationException e) {
+                // Folia does not allow walking a whole world from one thread
+                chunksCounted = false;
+                entitiesCounted = false;
+            }
+        }
+    }
+
+    private boolean registerEntityEvents(PluginManager pluginManager) {
+        if (!ReflectionUtils.classExists(ENTITY_ADD_EVENT) || !ReflectionUtils.classExists(ENTITY_REMOVE_EVENT)) {
+            return false;
+        }
+        pluginManager.registerEvent(eventClass(ENTITY_ADD_EVENT), this, EventPriority.MONITOR,
+            (l, event) -> entities.increment(), plugin);
+        pluginManager.registerEvent(eventClass(ENTITY_REMOVE_EVENT), this, EventPriority.MONITOR,
+            (l, event) -> entities.decrement(), plugin);
+        return true;
+    }
+
+    private static Class<? extends Event> eventClass(String name) {
+        try {
+            return Class.forName(name).asSubclass(Event.class);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("Missing Paper event " + name, e);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        players.increment();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        players.decrement();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginEnable(PluginEnableEvent event) {
+        // Our own plugin was already enabled when we took the initial count
+        if (event.getPlugin() != plugin) {
+            plugins.increment();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        plugins.decrement();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        worlds.increment();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        worlds.decrement();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        chunks.increment();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        chunks.decrement();
+    }
+
+    public long getOnlinePlayers() {
+        return players.sum();
+    }
+
+    public long getEnabledPlugins() {
+        return plugins.sum();
+    }
+
+    public long getLoadedWorlds() {
+        return worlds.sum();
+    }
+
+    /**
+     * @return -1 if the chunks could not be counted when the plugin was enabled (on Folia)
+     */
+    public long getLoadedChunks() {
+        return chunksCounted ? chunks.sum() : -1;
+    }
+
+    /**
+     * @return -1 if the server does not have Paper's entity events, or the entities could not be counted when the
+     * plugin was enabled (on Folia)
+     */
+    public long getEntities() {
+        return entitiesCounted ? entities.sum() : -1;
+    }
+}
@@ -0,0 +1,46 @@
+package me.agentoak.mcsdnotifier;
+
+import java.util.Optional;
+
+/**
+ * Reacts to the lifecycle events {@link NotifyListener} detects, i.e. the first tick, status updates and the server
+ * being taken down. Implemented by the plugin, which owns the monitors and profilers involved. All methods are called
+ * on the main thread.
+ */
+interface ServerLifecycle {
+    /**
+     * The server ticked for the first time, so it is fully started.
+     *
+     * @param tickTime {@link System#nanoTime()} of the first tick
+     */
+    void startupFinished(long tickTime);
+
+    /**
+     * Build the status and have it sent to the service manager, together with the parts of all status segments.
+     */
+    void updateStatus(NotifySender sender);
+
+    /**
+     * @return status of the {@link StatusProvider}, empty if there is none or it failed
+     * @see MCSDNotifierPlugin#buildStatus()
+     */
+    Optional<String> buildStatus();
+
+    /**
+     * A plugin is about to be disabled.
+     *
+     * @param now {@link System#nanoTime()} of the {@code PluginDisableEvent}
+     */
+    void pluginDisabling(String name, long now);
+
+    /**
+     * The server is being stopped or reloaded and will not tick anymore, so stop all threads that watch the main
+     * thread.
+     */
+    void takedown();
+
+    /**
+     * The server is stopping, after {@link #takedown()}. Called on the thread that stops the server.
+     */
+    void stopping();
+}
@@ -0,0 +1,301 @@
+package me.agentoak.mcsdnotifier;
+
+import me.agentoak.mcsdnotifier.system.SDNotify;
+import org.bukkit.World;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Times the phases of a server stop, i.e. disabling each plugin and saving each world, shows the current phase in
+ * {@code systemctl status} while the server stops and writes a report to {@code plugins/MCSDNotifier/shutdown/}.
+ * <p>
+ * Plugins are timed from their {@code PluginDisableEvent}, which is fired right before a plugin is disabled, to the
+ * next one. Once our own plugin is disabled, Bukkit does not deliver events to us anymore, and the server only saves
+ * the worlds after all plugins are disabled. So the profiler thread watches the region files of every world instead,
+ * and a world's phase lasts from the first to the last check that saw its region files change (see
+ * {@link RegionFileScanner}).
+ * <p>
+ * The report is rewritten by the profiler thread whenever a phase ends, so a stop killed after {@code TimeoutStopSec=}
+ * still leaves a report up to the phase it got stuck in. The final report is written by a shutdown hook once the server
+ * thread is done. When the stop was caused by a signal, shutdown hooks are already running and the profiler thread
+ * writes it instead, if the JVM does not exit first. The server thread never scans or writes files.
+ */
+final class ShutdownProfiler extends BackgroundTask {
+    /**
+     * In ms, time between status updates and region file checks.
+     */
+    private static final long POLL_INTERVAL = 500L;
+    /**
+     * In ms, how long the shutdown hook waits for the server thread to finish stopping.
+     */
+    private static final long HOOK_TIMEOUT = 60_000L;
+
+    private final MCSDNotifierPlugin plugin;
+    private final SDNotify sdNotify;
+    private final Thread serverThread;
+    private final Thread shutdownHook;
+    private final File reportFile;
+    private final int pluginCount;
+    private final long startTime;
+    private final PhaseTimeline timeline = new PhaseTimeline();
+    private final RegionFileScanner regionScanner = new RegionFileScanner();
+    private final Map<String, File> worldFolders = new LinkedHashMap<>();
+    private final Map<String, Long> worldSignatures = new HashMap<>();
+
+    private volatile String status;
+
+    // All fields below are guarded by this
+    private long lastMark;
+    private String currentPlugin;
+    private int disabledPlugins;
+    /**
+     * {@link System#nanoTime()} when our own plugin was disabled, 0 while plugins are still observed.
+     */
+    private long pluginsUnobservedTime;
+    private String currentWorld;
+    private long currentWorldStart;
+    private long currentWorldEnd;
+    private boolean finished;
+    /**
+     * {@link System#nanoTime()} when the stop was finished, only valid if {@link #finished}.
+     */
+    private long finishTime;
+    /**
+     * Whether a phase ended since the report was last written.
+     */
+    private boolean reportPending = true;
+
+    /**
+     * Must be created on the thread that stops the server, before our own plugin is disabled, and started right away.
+     * The profiler thread then loads everything it needs in its first pass, before our plugin class loader is closed.
+     */
+    ShutdownProfiler(MCSDNotifierPlugin plugin, SDNotify sdNotify) {
+        super(plugin.getName() + " Shutdown Profiler");
+        this.plugin = plugin;
+        this.sdNotify = sdNotify;
+        this.serverThread = Thread.currentThread();
+        this.shutdownHook = new Thread(this::finishOnExit, plugin.getName() + " Shutdown Report");
+        this.reportFile = new File(new File(plugin.getDataFolder(), "shutdown"),
+            "shutdown-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".txt");
+        this.pluginCount = plugin.getServer().getPluginManager().getPlugins().length;
+        this.startTime = System.nanoTime();
+        this.lastMark = startTime;
+        this.status = "Stopping";
+        thread.setPriority(Thread.MIN_PRIORITY);
+
+        for (World world : plugin.getServer().getWorlds()) {
+            worldFolders.put(world.getName(), world.getWorldFolder());
+        }
+    }
+
+    @Override
+    void start() {
+        try {
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Stop was caused by a signal, the profiler thread writes the final report
+        }
+        super.start();
+    }
+
+    /**
+     * A plugin is about to be disabled. Must be called on the server thread.
+     *
+     * @param now {@link System#nanoTime()} of the {@code PluginDisableEvent}
+     */
+    synchronized void pluginDisabling(String name, long now) {
+        if (finished) {
+            return;
+        }
+        endPlugin(now);
+        currentPlugin = name;
+        disabledPlugins++;
+        status = "Stopping: disabling plugin " + name + " (" + disabledPlugins + "/" + pluginCount + ")";
+    }
+
+    /**
+     * Our plugin was disabled, we don't see any more events from now on. Must be called on the server thread.
+     */
+    synchronized void ownPluginDisabled(long now) {
+        if (finished || pluginsUnobservedTime != 0) {
+            return;
+        }
+        endPlugin(now);
+        pluginsUnobservedTime = now;
+        status = "Stopping: disabling remaining plugins";
+        reportPending = true;
+        LockSupport.unpark(thread);
+    }
+
+    private void endPlugin(long now) {
+        if (currentPlugin != null) {
+            timeline.add("plugin", currentPlugin, now - lastMark);
+            currentPlugin = null;
+        }
+        lastMark = now;
+    }
+
+    @Override
+    public void run() {
+        // Take the first signatures and write the initial report
+        scanWorlds();
+        writePendingReport();
+
+        String lastStatus = null;
+        long lastPoll = System.nanoTime();
+        boolean done = false;
+        while (isRunning() && !done) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(POLL_INTERVAL));
+            // Scanning takes a while on large worlds, don't hold up the server thread in pluginDisabling meanwhile
+            String changedWorld = scanWorlds();
+            long now = System.nanoTime();
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                // Before that, plugins may save worlds while they are disabled, which must not count as world saves
+                if (pluginsUnobservedTime != 0 && changedWorld != null) {
+                    trackWorld(changedWorld, lastPoll, now);
+                }
+                lastPoll = now;
+
+                String current = status;
+                if (!current.equals(lastStatus)) {
+                    sdNotify.status(current);
+                    lastStatus = current;
+                }
+                if (!serverThread.isAlive()) {
+                    finish(now);
+                    done = true;
+                }
+            }
+            writePendingReport();
+        }
+    }
+
+    /**
+     * Only called by the profiler thread.
+     *
+     * @return name of a world whose region files changed since the last scan, {@code null} if there is none
+     */
+    private String scanWorlds() {
+        String changed = null;
+        for (Map.Entry<String, File> world : worldFolders.entrySet()) {
+            long signature;
+            try {
+                signature = regionScanner.scan(world.getValue());
+            } catch (IOException | RuntimeException e) {
+                plugin.getLogger().log(Level.FINE, "Could not scan world folder " + world.getValue(), e);
+                continue;
+            }
+
+            Long previous = worldSignatures.put(world.getKey(), signature);
+            if (previous != null && previous != signature) {
+                changed = world.getKey();
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param lastPoll {@link System#nanoTime()} of the previous check, the earliest the change may have started
+     * @param now      {@link System#nanoTime()} of this check
+     */
+    private void trackWorld(String world, long lastPoll, long now) {
+        if (!world.equals(currentWorld)) {
+            if (currentWorld == null) {
+                timeline.add("server", "until worlds save", Math.max(0, lastPoll - lastMark));
+            } else {
+                endWorld();
+            }
+            currentWorld = world;
+            currentWorldStart = Math.max(lastPoll, lastMark);
+            status = "Stopping: saving world " + world;
+        }
+        currentWorldEnd = now;
+    }
+
+    private void endWorld() {
+        timeline.add("world", currentWorld, currentWorldEnd - currentWorldStart);
+        lastMark = currentWorldEnd;
+        reportPending = true;
+    }
+
+    private void finishOnExit() {
+        // With a signal, the server's own shutdown hook makes the server thread stop the server in parallel to this hook
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(HOOK_TIMEOUT);
+        while (serverThread.isAlive() && !isExiting(serverThread) && deadline - System.nanoTime() > 0) {
+            try {
+                serverThread.join(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        synchronized (this) {
+            finish(System.nanoTime());
+        }
+        writePendingReport();
+        stop();
+    }
+
+    /**
+     * @return whether the thread called {@link System#exit(int)} and waits for the shutdown hooks
+     */
+    private static boolean isExiting(Thread thread) {
+        for (StackTraceElement element : thread.getStackTrace()) {
+            if ("java.lang.Shutdown".equals(element.getClassName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void finish(long now) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        finishTime = now;
+        if (pluginsUnobservedTime == 0) {
+            endPlugin(now);
+        }
+        if (currentWorld != null) {
+            endWorld();
+        }
+        timeline.add("server", currentWorld == null ? "until exit" : "after saving worlds", now - lastMark);
+        reportPending = true;
+    }
+
+    /**
+     * Write the report if a phase ended since it was last written. Only called by the profiler thread and the shutdown
+     * hook, without holding the lock on this, so the server thread is never held up by the file system.
+     */
+    private void writePendingReport() {
+        // Keeps an older report from overwriting a newer one when the profiler thread and the hook both write
+        synchronized (reportFile) {
+            String report;
+            synchronized (this) {
+                if (!reportPending) {
+                    return;
+                }
+                reportPending = false;
+                report = timeline.formatReport(finished ? "Server shutdown" : "Server shutdown (in progress)",
+                    (finished ? finishTime : System.nanoTime()) - startTime);
+            }
+            try {
+                PhaseTimeline.write(reportFile, report);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not write shutdown report", e);
+            }
+        }
+    }
+}
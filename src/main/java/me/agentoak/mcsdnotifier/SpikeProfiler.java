@@ -0,0 +1,146 @@
+package me.agentoak.mcsdnotifier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Sampling profiler for lag spikes. When the main thread has not ticked for longer than a threshold, samples the
+ * main thread's stack every few ms until the next tick, and writes the samples in folded stack format (as used by
+ * {@code flamegraph.pl} and most other flame graph tools) to {@code plugins/MCSDNotifier/spikes/}.
+ * <p>
+ * The profiler thread runs at minimum priority and only checks the heartbeat about once per threshold while ticks are
+ * fast. Samples are aggregated in memory with bounded size and duration, very long spikes are left to
+ * {@link HangMonitor}.
+ */
+final class SpikeProfiler extends BackgroundTask {
+    /**
+     * Maximum number of samples per spike.
+     */
+    private static final int MAX_SAMPLES = 10_000;
+    /**
+     * Maximum number of distinct stacks per spike, further stacks are counted as truncated.
+     */
+    private static final int MAX_STACKS = 1_000;
+    private static final String TRUNCATED_STACK = "[truncated]";
+    /**
+     * In ms, minimum time between two profiles, so a struggling server does not fill the disk.
+     */
+    private static final long COOLDOWN = 10_000L;
+
+    private final MCSDNotifierPlugin plugin;
+    private final NotifySender sender;
+    private final Thread mainThread;
+    private final long thresholdNanos;
+    private final long intervalNanos;
+    private final File spikeFolder;
+
+    private final Map<String, Integer> stacks = new HashMap<>();
+    private final StringBuilder stackBuilder = new StringBuilder();
+
+    /**
+     * @param mainThread the server thread, whose heartbeat is published to {@code sender}
+     * @param threshold  in ms, time without a tick after which to start sampling
+     * @param interval   in ms, time between samples
+     */
+    SpikeProfiler(MCSDNotifierPlugin plugin, NotifySender sender, Thread mainThread, long threshold, long interval) {
+        super(plugin.getName() + " Spike Profiler");
+        this.plugin = plugin;
+        this.sender = sender;
+        this.mainThread = mainThread;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(threshold);
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, interval));
+        this.spikeFolder = new File(plugin.getDataFolder(), "spikes");
+
+        thread.setPriority(Thread.MIN_PRIORITY);
+    }
+
+    @Override
+    public void run() {
+        long profiledTick = 0;
+        long nextProfile = System.nanoTime();
+        while (isRunning()) {
+            long lastTick = sender.getLastTick();
+            long now = System.nanoTime();
+            if (lastTick == 0 || lastTick == profiledTick) {
+                LockSupport.parkNanos(this, thresholdNanos);
+            } else if (now - lastTick < thresholdNanos) {
+                LockSupport.parkNanos(this, lastTick + thresholdNanos - now);
+            } else if (now - nextProfile < 0) {
+                // Skip this spike, but don't check it again
+                profiledTick = lastTick;
+            } else {
+                profiledTick = lastTick;
+                Date start = new Date();
+                int samples = sample(lastTick);
+                long endTick = sender.getLastTick();
+                long duration = (endTick != lastTick ? endTick : System.nanoTime()) - lastTick;
+                nextProfile = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COOLDOWN);
+
+                try {
+                    write(start, TimeUnit.NANOSECONDS.toMillis(duration), samples);
+                } catch (IOException | RuntimeException e) {
+                    plugin.getLogger().log(Level.WARNING, "Could not write lag spike profile", e);
+                }
+                stacks.clear();
+            }
+        }
+    }
+
+    /**
+     * Sample the main thread until the heartbeat advances.
+     *
+     * @return number of samples taken
+     */
+    private int sample(long lastTick) {
+        int samples = 0;
+        while (isRunning() && sender.getLastTick() == lastTick && samples < MAX_SAMPLES) {
+            StackTraceElement[] stack = mainThread.getStackTrace();
+            // Folded stacks are ordered from root to leaf
+            stackBuilder.setLength(0);
+            stackBuilder.append(mainThread.getName());
+            for (int i = stack.length - 1; i >= 0; i--) {
+                stackBuilder.append(';').append(stack[i].getClassName()).append('.').append(stack[i].getMethodName());
+            }
+
+            String folded = stackBuilder.toString();
+            if (stacks.size() >= MAX_STACKS && !stacks.containsKey(folded)) {
+                folded = TRUNCATED_STACK;
+            }
+            stacks.merge(folded, 1, Integer::sum);
+            samples++;
+
+            LockSupport.parkNanos(this, intervalNanos);
+        }
+        return samples;
+    }
+
+    private void write(Date start, long durationMillis, int samples) throws IOException {
+        if (!spikeFolder.isDirectory()) {
+            Files.createDirectories(spikeFolder.toPath());
+        }
+        File file = new File(spikeFolder, "spike-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(start) + "-" +
+                                              durationMillis + "ms.folded");
+        plugin.getLogger().info("Tick took at least " + durationMillis + " ms, wrote " + samples +
+                                    " stack samples to " + file);
+
+        try (Writer writer = new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Integer> entry : stacks.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write(' ');
+                writer.write(Integer.toString(entry.getValue()));
+                writer.write('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package me.agentoak.mcsdnotifier;
+
+import me.agentoak.mcsdnotifier.system.SDNotify;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginEnableEvent;
+import org.bukkit.event.world.WorldInitEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
+
+/**
+ * Times the phases of a server startup, i.e. enabling each plugin and loading each world, shows the current phase in
+ * {@code systemctl status} while the server starts and writes a report once it is ready.
+ * <p>
+ * Bukkit only fires events after a plugin was enabled or a world was loaded, so a plugin's phase is the time since the
+ * previous phase ended. A world's phase starts at its {@link WorldInitEvent} at the earliest. The main thread only
+ * records timestamps, status updates are sent and the report is written by the profiler thread. Reports go to
+ * {@code plugins/MCSDNotifier/startup/}, together with {@code history.csv} that gets a line per startup so regressions
+ * can be spotted over time.
+ */
+final class StartupProfiler extends BackgroundTask implements Listener {
+    /**
+     * In ms, minimum time between status updates, plugins may enable much faster than this.
+     */
+    private static final long STATUS_INTERVAL = 250L;
+    /**
+     * Number of slowest phases to log.
+     */
+    private static final int LOG_PHASES = 3;
+    private static final String HISTORY_HEADER = "date,total_ms,server_ms,plugins_ms,worlds_ms\n";
+
+    private final MCSDNotifierPlugin plugin;
+    private final SDNotify sdNotify;
+    private final File reportFolder;
+    private final PhaseTimeline timeline = new PhaseTimeline();
+    private final Map<String, Long> worldInitTimes = new HashMap<>();
+    private final long startTime;
+    private final int pluginCount;
+
+    private long lastMark;
+    private int enabledPlugins;
+    private volatile String status = "Starting";
+    private long finishTime;
+    /**
+     * Guarded by {@code this}, so no status update is sent after {@link #finish(long)} returned.
+     */
+    private boolean finished;
+
+    /**
+     * Must be created before the server loads worlds or enables plugins other than ours, i.e. in
+     * {@link MCSDNotifierPlugin#onLoad()}.
+     */
+    StartupProfiler(MCSDNotifierPlugin plugin, SDNotify sdNotify) {
+        super(plugin.getName() + " Startup Profiler");
+        this.plugin = plugin;
+        this.sdNotify = sdNotify;
+        this.reportFolder = new File(plugin.getDataFolder(), "startup");
+        this.pluginCount = plugin.getServer().getPluginManager().getPlugins().length;
+        thread.setPriority(Thread.MIN_PRIORITY);
+
+        // Everything before our plugin is loaded counts as the JVM and server starting up
+        lastMark = System.nanoTime();
+        startTime = lastMark - TimeUnit.MILLISECONDS.toNanos(ManagementFactory.getRuntimeMXBean().getUptime());
+        timeline.add("server", "until plugins load", lastMark - startTime);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginEnable(PluginEnableEvent event) {
+        long now = System.nanoTime();
+        timeline.add("plugin", event.getPlugin().getName(), now - lastMark);
+        lastMark = now;
+        enabledPlugins++;
+        status = "Starting: enabled " + enabledPlugins + "/" + pluginCount + " plugins, last " +
+                     event.getPlugin().getName();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldInit(WorldInitEvent event) {
+        worldInitTimes.put(event.getWorld().getName(), System.nanoTime());
+        status = "Starting: loading world " + event.getWorld().getName();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        long now = System.nanoTime();
+        // Worlds may be initialized together and loaded one after another, don't count the same time twice
+        Long initTime = worldInitTimes.remove(event.getWorld().getName());
+        long start = initTime != null && initTime - lastMark > 0 ? initTime : lastMark;
+        timeline.add("world", event.getWorld().getName(), now - start);
+        lastMark = now;
+        status = "Starting: loaded world " + event.getWorld().getName();
+    }
+
+    /**
+     * Stop timing and sending status updates, and write the report in the background. Must be called on the main
+     * thread, before the status of the running server is sent.
+     *
+     * @param tickTime {@link System#nanoTime()} of the first tick
+     */
+    void finish(long tickTime) {
+        HandlerList.unregisterAll(this);
+        timeline.add("server", "until first tick", tickTime - lastMark);
+        synchronized (this) {
+            finishTime = tickTime;
+            finished = true;
+        }
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        String lastStatus = null;
+        while (isRunning()) {
+            synchronized (this) {
+                if (finished) {
+                    // Timeline is complete and visible to us since finish() released the lock
+                    report();
+                    return;
+                }
+                String current = status;
+                if (!current.equals(lastStatus)) {
+                    sdNotify.status(current);
+                    lastStatus = current;
+                }
+            }
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(STATUS_INTERVAL));
+        }
+    }
+
+    private void report() {
+        long total = finishTime - startTime;
+        String slowest = timeline.getSlowest(LOG_PHASES).stream().map(PhaseTimeline.Phase::toString)
+                                 .collect(Collectors.joining(", "));
+        String date = new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date());
+        File file = new File(reportFolder, "startup-" + date + ".txt");
+        try {
+            timeline.writeReport(file, "Server startup", total);
+            appendHistory(date, total);
+            plugin.getLogger().info("Server started in " + PhaseTimeline.formatSeconds(total) + ", slowest: " +
+                                        slowest + ". Full report in " + file);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not write startup report", e);
+        }
+    }
+
+    private void appendHistory(String date, long total) throws IOException {
+        Map<String, Long> totals = timeline.getTotals();
+        List<Long> columns = Arrays.asList(total, totals.get("server"), totals.get("plugin"),
+            totals.get("world"));
+        StringBuilder line = new StringBuilder(date);
+        for (Long nanos : columns) {
+            line.append(',').append(nanos == null ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+        line.append('\n');
+
+        File history = new File(reportFolder, "history.csv");
+        if (!history.isFile()) {
+            line.insert(0, HISTORY_HEADER);
+        }
+        Files.write(history.toPath(), line.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+    }
+}
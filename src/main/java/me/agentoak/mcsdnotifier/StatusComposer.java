@@ -0,0 +1,431 @@
+package me.agentoak.mcsdnotifier;
+
+import org.bukkit.Server;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.ServiceEvent;
+import org.bukkit.event.server.ServiceRegisterEvent;
+import org.bukkit.event.server.ServiceUnregisterEvent;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredServiceProvider;
+import org.bukkit.plugin.ServicesManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+
+/**
+ * Composes the status from the {@link StatusProvider} and all {@link StatusSegment}s.
+ * <p>
+ * The provider is called on the main thread as before, since it may use Bukkit API that requires it. Each status
+ * update also takes a {@link StatusSnapshot} there, which the composer thread evaluates the segments against, so
+ * segments never delay a tick. The provider's part is sent right away, together with the segments' parts of the
+ * previous evaluation, which are replaced once the current evaluation is done.
+ * <p>
+ * Each segment runs on a worker thread while the composer thread waits for it for the segment's time budget at most,
+ * so a segment that blocks cannot hold up the other segments. A segment that exceeds its budget or throws
+ * {@link #MAX_FAILURES} times in a row is skipped for {@link #COOLDOWN} ms. A segment that is still running when the
+ * next update comes around is skipped right away, and its worker is abandoned until the segment returns.
+ * <p>
+ * The provider has the same budget and circuit breaker. A call on the main thread cannot be abandoned, so a provider
+ * over budget still delays that tick, but it is skipped after {@link #MAX_FAILURES} slow calls in a row and the last
+ * status is kept meanwhile.
+ * <p>
+ * Looking up services is not free, so the provider and the segments are cached and only looked up again after a
+ * {@code StatusProvider} or {@code StatusSegment} service was registered or unregistered.
+ */
+final class StatusComposer extends BackgroundTask implements Listener {
+    private static final int MAX_FAILURES = 3;
+    /**
+     * In ms, how long a failing segment is skipped.
+     */
+    private static final long COOLDOWN = 5L * 60L * 1_000L;
+    private static final String SEPARATOR = ", ";
+
+    private final Plugin plugin;
+    private final NotifySender sender;
+    private final ServerCounters counters;
+    private final ServicesManager servicesManager;
+    private final long budgetNanos;
+    /**
+     * Bound {@code Server#getTPS()}, which is Paper-specific API. {@code null} if unavailable.
+     */
+    private final DoubleArraySupplier tpsSupplier;
+    private final List<Segment> builtInSegments = new ArrayList<>();
+    /**
+     * Runs the segments. Creates a new worker whenever all others are busy, i.e. stuck in a segment.
+     */
+    private final ExecutorService workers;
+
+    private final AtomicBoolean providerStale = new AtomicBoolean(true);
+    private final AtomicBoolean segmentsStale = new AtomicBoolean(true);
+    private final AtomicReference<StatusSnapshot> pendingSnapshot = new AtomicReference<>();
+    private volatile StatusProvider provider;
+    /**
+     * Circuit breaker of {@link #provider}, replaced when the provider changes. Only used by the main thread.
+     */
+    private Breaker providerBreaker;
+    private StatusProvider providerBreakerFor;
+    private boolean tpsSupported;
+
+    // Only used by the composer thread
+    private final Map<StatusSegment, Segment> segmentsByService = new IdentityHashMap<>();
+    private List<Segment> segments = Collections.emptyList();
+
+    // Guarded by this
+    private String base;
+    private String suffix;
+
+    /**
+     * @param budget in ms, time a segment may take to build its part
+     */
+    StatusComposer(Plugin plugin, NotifySender sender, ServerCounters counters, long budget) {
+        super(plugin.getName() + " Status Composer");
+        this.plugin = plugin;
+        this.sender = sender;
+        this.counters = counters;
+        this.servicesManager = plugin.getServer().getServicesManager();
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budget);
+        this.tpsSupplier = ReflectionUtils.bindGetter(plugin.getServer(), Server.class, "getTPS",
+            DoubleArraySupplier.class).orElse(null);
+        this.tpsSupported = tpsSupplier != null;
+        String workerName = plugin.getName() + " Status Segment";
+        this.workers = Executors.newCachedThreadPool(task -> {
+            Thread worker = new Thread(task, workerName);
+            worker.setDaemon(true);
+            return worker;
+        });
+    }
+
+    @Override
+    void stop() {
+        super.stop();
+        // Interrupts segments that are still running, e.g. abandoned ones
+        workers.shutdownNow();
+    }
+
+    /**
+     * Add a segment of our own, which is appended after the segments registered as services. Must be called before
+     * {@link #start()}.
+     */
+    void addBuiltInSegment(String name, StatusSegment segment) {
+        builtInSegments.add(new Segment(name, segment));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onServiceRegister(ServiceRegisterEvent event) {
+        invalidate(event);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onServiceUnregister(ServiceUnregisterEvent event) {
+        invalidate(event);
+    }
+
+    private void invalidate(ServiceEvent event) {
+        Class<?> service = event.getProvider().getService();
+        if (service == StatusProvider.class) {
+            providerStale.set(true);
+        } else if (service == StatusSegment.class) {
+            segmentsStale.set(true);
+        }
+    }
+
+    /**
+     * @return the {@link StatusProvider} service with the highest priority, {@code null} if there is none
+     */
+    StatusProvider getProvider() {
+        if (providerStale.getAndSet(false)) {
+            provider = servicesManager.load(StatusProvider.class);
+        }
+        return provider;
+    }
+
+    /**
+     * Call the {@link StatusProvider} within its budget. Must be called on the main thread.
+     *
+     * @return empty if there is no provider, it threw an exception or it is skipped after failing repeatedly
+     * @see MCSDNotifierPlugin#buildStatus()
+     */
+    Optional<String> buildStatus() {
+        StatusProvider current = getProvider();
+        if (current == null) {
+            return Optional.empty();
+        }
+        if (current != providerBreakerFor) {
+            providerBreaker = new Breaker("StatusProvider " + current.getClass().getName());
+            providerBreakerFor = current;
+        }
+        long start = System.nanoTime();
+        if (providerBreaker.isDisabled(start)) {
+            return Optional.empty();
+        }
+
+        String status;
+        try {
+            status = current.status();
+        } catch (RuntimeException e) {
+            // Failsafe in case a custom StatusProvider misbehaves (which would make us not send notifications!)
+            providerBreaker.fail(System.nanoTime(), "threw an exception", e);
+            return Optional.empty();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (elapsed > budgetNanos) {
+            // Already paid for, so still use it
+            providerBreaker.fail(start + elapsed, "took " + TimeUnit.NANOSECONDS.toMillis(elapsed) +
+                                                  " ms on the main thread, longer than " +
+                                                  TimeUnit.NANOSECONDS.toMillis(budgetNanos) + " ms", null);
+        } else {
+            providerBreaker.succeed();
+        }
+        return Optional.of(status);
+    }
+
+    /**
+     * Send the provider's status together with the segments' parts, and have the segments evaluated for the next
+     * update. Must be called on the main thread.
+     *
+     * @param base status of the {@link StatusProvider}, {@code null} to keep the current status
+     */
+    void update(String base) {
+        long now = System.nanoTime();
+        if (base != null) {
+            synchronized (this) {
+                this.base = base;
+                publish();
+            }
+        }
+
+        double[] tps = null;
+        if (tpsSupported) {
+            try {
+                tps = tpsSupplier.getAsDoubleArray();
+            } catch (UnsupportedOperationException e) {
+                // Folia has the method, but no global TPS
+                tpsSupported = false;
+            }
+        }
+        pendingSnapshot.set(new StatusSnapshot(now, (int) counters.getOnlinePlayers(),
+            plugin.getServer().getMaxPlayers(), tps));
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void run() {
+        while (isRunning()) {
+            StatusSnapshot snapshot = pendingSnapshot.getAndSet(null);
+            if (snapshot == null) {
+                LockSupport.park(this);
+                continue;
+            }
+            if (segmentsStale.getAndSet(false)) {
+                resolveSegments();
+            }
+
+            String current = evaluate(snapshot);
+            synchronized (this) {
+                if (current != suffix) {
+                    suffix = current;
+                    publish();
+                }
+            }
+        }
+    }
+
+    /**
+     * Look up the registered segments, keeping the state of segments that are still registered.
+     */
+    private void resolveSegments() {
+        // ServicesManager is synchronized, so it may be queried from this thread
+        List<Segment> resolved = new ArrayList<>();
+        Map<StatusSegment, Segment> previous = new IdentityHashMap<>(segmentsByService);
+        segmentsByService.clear();
+        for (RegisteredServiceProvider<StatusSegment> registration :
+            servicesManager.getRegistrations(StatusSegment.class)) {
+            StatusSegment service = registration.getProvider();
+            Segment segment = previous.get(service);
+            if (segment == null) {
+                segment = new Segment(registration.getPlugin().getName() + " " + service.getClass().getName(),
+                    service);
+            }
+            segmentsByService.put(service, segment);
+            resolved.add(segment);
+        }
+        resolved.addAll(builtInSegments);
+        segments = resolved;
+    }
+
+    /**
+     * @return the parts of all segments separated by commas, the same instance as before if no part changed,
+     * {@code null} if there are no parts
+     */
+    private String evaluate(StatusSnapshot snapshot) {
+        boolean changed = false;
+        for (Segment segment : segments) {
+            String part = segment.isDisabled(snapshot.getTime()) ? null : segment.build(snapshot);
+            if (part != null && part.isEmpty()) {
+                part = null;
+            }
+            // Built-in segments return the same instance while their part did not change
+            if (part != segment.part && (part == null || !part.equals(segment.part))) {
+                changed = true;
+            }
+            segment.part = part;
+        }
+        if (!changed) {
+            return suffix();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (Segment segment : segments) {
+            if (segment.part != null) {
+                if (sb.length() > 0) {
+                    sb.append(SEPARATOR);
+                }
+                sb.append(segment.part);
+            }
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    private synchronized String suffix() {
+        return suffix;
+    }
+
+    private void publish() {
+        if (base != null) {
+            sender.setStatus(suffix == null ? base : base + SEPARATOR + suffix);
+        }
+    }
+
+    /**
+     * Skips a misbehaving provider or segment for {@link #COOLDOWN} after {@link #MAX_FAILURES} failures in a row.
+     */
+    private class Breaker {
+        final String name;
+        /**
+         * {@link System#nanoTime()} until skipped, only valid if {@link #disabled}.
+         */
+        private long disabledUntil;
+        private boolean disabled;
+        private int failures;
+
+        Breaker(String name) {
+            this.name = name;
+        }
+
+        synchronized boolean isDisabled(long now) {
+            if (disabled && now - disabledUntil >= 0) {
+                disabled = false;
+                failures = 0;
+            }
+            return disabled;
+        }
+
+        synchronized void succeed() {
+            failures = 0;
+        }
+
+        synchronized void fail(long now, String reason, Throwable thrown) {
+            if (++failures >= MAX_FAILURES) {
+                disable(now, reason, thrown);
+            } else {
+                plugin.getLogger().log(Level.FINE, name + " " + reason, thrown);
+            }
+        }
+
+        /**
+         * Skip for {@link #COOLDOWN}. May be called from any thread.
+         */
+        synchronized void disable(long now, String reason, Throwable thrown) {
+            if (disabled) {
+                return;
+            }
+            disabledUntil = now + TimeUnit.MILLISECONDS.toNanos(COOLDOWN);
+            disabled = true;
+            plugin.getLogger().log(Level.WARNING, name + " " + reason + ", skipping it for " +
+                                                      TimeUnit.MILLISECONDS.toMinutes(COOLDOWN) + " minutes", thrown);
+        }
+    }
+
+    /**
+     * A segment together with its circuit breaker.
+     */
+    private final class Segment extends Breaker {
+        private final StatusSegment segment;
+        /**
+         * Whether a worker is running the segment, possibly after the composer thread stopped waiting for it.
+         */
+        private volatile boolean running;
+
+        // Only used by the composer thread
+        private String part;
+        /**
+         * {@link System#nanoTime()} when the segment started its last evaluation.
+         */
+        private long startTime;
+
+        Segment(String name, StatusSegment segment) {
+            super("StatusSegment " + name);
+            this.segment = segment;
+        }
+
+        String build(StatusSnapshot snapshot) {
+            long start = System.nanoTime();
+            if (running) {
+                disable(start, "is still running after " + TimeUnit.NANOSECONDS.toMillis(start - startTime) + " ms",
+                    null);
+                return null;
+            }
+
+            startTime = start;
+            running = true;
+            Future<String> result;
+            try {
+                result = workers.submit(() -> {
+                    try {
+                        return segment.build(snapshot);
+                    } finally {
+                        running = false;
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Stopping
+                running = false;
+                return null;
+            }
+
+            try {
+                String part = result.get(budgetNanos, TimeUnit.NANOSECONDS);
+                succeed();
+                return part;
+            } catch (TimeoutException e) {
+                /*
+                 * Abandon the worker, the segment is skipped until it returns. Not cancelled, a task cancelled before
+                 * it started would never reset running.
+                 */
+                fail(System.nanoTime(), "took longer than " + TimeUnit.NANOSECONDS.toMillis(budgetNanos) + " ms", null);
+            } catch (ExecutionException e) {
+                fail(System.nanoTime(), "threw an exception", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        }
+    }
+}
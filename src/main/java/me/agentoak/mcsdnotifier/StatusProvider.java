@@ -6,6 +6,11 @@ package me.agentoak.mcsdnotifier;
  * To have MCSDNotifier use this {@code StatusProvider}, just register it in the
  * {@link org.bukkit.plugin.ServicesManager} obtained by calling {@link org.bukkit.Server#getServicesManager()} with a
  * priority higher than {@link org.bukkit.plugin.ServicePriority#Lowest}.
+ * <p>
+ * The provider is called on the main thread, so it may use any Bukkit API, but it delays the tick it is called in. A
+ * call cannot be interrupted, so it has no hard deadline. If it takes longer than {@code status-segment-budget} or
+ * throws 3 times in a row, it is skipped for 5 minutes and the last status is kept meanwhile. Put anything slow into a
+ * {@link StatusSegment}, which is built on another thread.
  */
 @FunctionalInterface
 public interface StatusProvider {
@@ -0,0 +1,23 @@
+package me.agentoak.mcsdnotifier;
+
+/**
+ * Service that contributes a part of the status string, e.g. {@code "queue: 3 waiting"}. The parts of all registered
+ * segments are appended to the status of the {@link StatusProvider}, separated by commas, highest priority first.
+ * <p>
+ * Unlike {@link StatusProvider}, segments are called on a worker thread with a {@link StatusSnapshot} taken on the main
+ * thread, so a slow segment never delays a tick or a watchdog notification. Segments must be thread-safe and must not
+ * call Bukkit API that requires the main thread. A segment that takes longer than its time budget or throws
+ * repeatedly is skipped for a while.
+ * <p>
+ * To contribute a segment, register it in the {@link org.bukkit.plugin.ServicesManager} obtained by calling
+ * {@link org.bukkit.Server#getServicesManager()}. Unlike {@code StatusProvider}, all registered segments are used.
+ */
+@FunctionalInterface
+public interface StatusSegment {
+    /**
+     * Build this segment's part of the status. Called with each new snapshot, i.e. about once per status interval.
+     *
+     * @return a single-line free-form string, {@code null} or empty to leave this segment out
+     */
+    String build(StatusSnapshot snapshot);
+}
@@ -0,0 +1,45 @@
+package me.agentoak.mcsdnotifier;
+
+/**
+ * Cheap snapshot of the server state, taken on the main thread each time the status is updated, for
+ * {@link StatusSegment}s that are evaluated on another thread.
+ */
+public final class StatusSnapshot {
+    private static final double[] NO_TPS = new double[0];
+
+    private final long time;
+    private final int onlinePlayers;
+    private final int maxPlayers;
+    private final double[] tps;
+
+    StatusSnapshot(long time, int onlinePlayers, int maxPlayers, double[] tps) {
+        this.time = time;
+        this.onlinePlayers = onlinePlayers;
+        this.maxPlayers = maxPlayers;
+        this.tps = tps == null ? NO_TPS : tps;
+    }
+
+    /**
+     * {@link System#nanoTime()} when the snapshot was taken.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public int getOnlinePlayers() {
+        return onlinePlayers;
+    }
+
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    /**
+     * TPS averages of the last 1, 5 and 15 minutes.
+     *
+     * @return empty if the server does not provide TPS averages (only Paper does, not Folia)
+     */
+    public double[] getTPS() {
+        return tps.clone();
+    }
+}
@@ -6,32 +6,85 @@ import org.bukkit.Server;
  * {@link StatusProvider} implementation that contains server name, version, player count and TPS averages.
  * <p>
  * Requires {@link Server} with a {@code #getTPS()} method, which is available in Paper API.
+ * <p>
+ * The status string is only rebuilt when the player count or one of the displayed (rounded) values changed. Further
+ * parts like tick durations or GC pauses are added by the plugin's {@link StatusSegment}s, which work with any status
+ * provider.
  *
  * @see #isSupported()
  */
 public class TPSStatusProvider implements StatusProvider {
     private final Server server;
+    private final DoubleArraySupplier tpsSupplier;
+
+    private int lastPlayers = -1;
+    private int lastMaxPlayers;
+    /**
+     * TPS averages in hundredths, i.e. as they are displayed.
+     */
+    private long[] roundedTPS = new long[0];
+    private String status;
 
     public TPSStatusProvider(Server server) {
-        if (!isSupported()) {
-            throw new IllegalStateException("Server is missing Server#getTPS() method");
-        }
         this.server = server;
+        this.tpsSupplier = ReflectionUtils.bindGetter(server, Server.class, "getTPS", DoubleArraySupplier.class)
+                               .orElseThrow(() -> new IllegalStateException("Server is missing Server#getTPS() method"));
     }
 
     @Override
     public String status() {
-        return String.format("Running %s %s with %d/%d players, TPS avg: %s", server.getName(),
-            server.getVersion(), server.getOnlinePlayers().size(), server.getMaxPlayers(), buildTPSString());
+        int players = server.getOnlinePlayers().size();
+        int maxPlayers = server.getMaxPlayers();
+        boolean changed = updateTPS(tpsSupplier.getAsDoubleArray());
+
+        if (status == null || changed || players != lastPlayers || maxPlayers != lastMaxPlayers) {
+            status = String.format("Running %s %s with %d/%d players, TPS avg: %s", server.getName(),
+                server.getVersion(), players, maxPlayers, buildTPSString());
+            lastPlayers = players;
+            lastMaxPlayers = maxPlayers;
+        }
+        return status;
     }
 
+    /**
+     * Round TPS averages to the displayed precision and remember them.
+     *
+     * @return whether the rounded values differ from the previous call
+     */
+    private boolean updateTPS(double[] tps) {
+        boolean changed = false;
+        if (roundedTPS.length != tps.length) {
+            roundedTPS = new long[tps.length];
+            changed = true;
+        }
+        for (int i = 0; i < tps.length; i++) {
+            long rounded = Math.round(tps[i] * 100);
+            if (roundedTPS[i] != rounded) {
+                roundedTPS[i] = rounded;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Format the current TPS averages with two decimals, separated by spaces.
+     * <p>
+     * {@link #status()} only calls this when it rebuilds the status, i.e. when the player count or one of the
+     * displayed TPS values changed, so an override cannot show values that change independently of these. The decimal
+     * separator is always a dot rather than that of the default locale.
+     */
     protected String buildTPSString() {
-        double[] tps = ReflectionUtils.methodGetter(server, "getTPS");
-        StringBuilder sb = new StringBuilder(tps.length * 6);
-        for (double t : tps) {
-            sb.append(String.format(" %.2f", t));
+        updateTPS(tpsSupplier.getAsDoubleArray());
+        StringBuilder sb = new StringBuilder(roundedTPS.length * 6);
+        for (long t : roundedTPS) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            long fraction = t % 100;
+            sb.append(t / 100).append('.').append(fraction < 10 ? "0" : "").append(fraction);
         }
-        return sb.substring(1);
+        return sb.toString();
     }
 
     /**
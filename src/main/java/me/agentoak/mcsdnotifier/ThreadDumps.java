@@ -0,0 +1,57 @@
+package me.agentoak.mcsdnotifier;
+
+import java.lang.management.LockInfo;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+
+final class ThreadDumps {
+    private ThreadDumps() {
+    }
+
+    /**
+     * Format a single thread like {@code jstack} does, i.e. with all stack frames.
+     */
+    public static void appendThread(StringBuilder sb, Thread thread, StackTraceElement[] stack) {
+        sb.append('"').append(thread.getName()).append("\" id=").append(thread.getId()).append(" state=")
+            .append(thread.getState()).append('\n');
+        for (StackTraceElement frame : stack) {
+            sb.append("    at ").append(frame).append('\n');
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * Format a thread with lock information. Unlike {@link ThreadInfo#toString()}, this includes all stack frames.
+     */
+    public static void appendThread(StringBuilder sb, ThreadInfo info) {
+        sb.append('"').append(info.getThreadName()).append("\" id=").append(info.getThreadId()).append(" state=")
+            .append(info.getThreadState());
+        if (info.getLockName() != null) {
+            sb.append(" on ").append(info.getLockName());
+        }
+        if (info.getLockOwnerName() != null) {
+            sb.append(" owned by \"").append(info.getLockOwnerName()).append("\" id=").append(info.getLockOwnerId());
+        }
+        sb.append('\n');
+
+        StackTraceElement[] stack = info.getStackTrace();
+        MonitorInfo[] monitors = info.getLockedMonitors();
+        for (int i = 0; i < stack.length; i++) {
+            sb.append("    at ").append(stack[i]).append('\n');
+            for (MonitorInfo monitor : monitors) {
+                if (monitor.getLockedStackDepth() == i) {
+                    sb.append("    - locked ").append(monitor).append('\n');
+                }
+            }
+        }
+
+        LockInfo[] synchronizers = info.getLockedSynchronizers();
+        if (synchronizers.length > 0) {
+            sb.append("    Locked synchronizers:\n");
+            for (LockInfo synchronizer : synchronizers) {
+                sb.append("    - ").append(synchronizer).append('\n');
+            }
+        }
+        sb.append('\n');
+    }
+}
@@ -0,0 +1,21 @@
+package me.agentoak.mcsdnotifier;
+
+/**
+ * Receives ticks from a {@link TickSource}, always on the main thread.
+ */
+interface TickListener {
+    /**
+     * Called at the start of every tick.
+     *
+     * @param tickTime {@link System#nanoTime()} at the start of the tick
+     */
+    void onTickStart(long tickTime);
+
+    /**
+     * Called at the end of every tick, only if {@link TickSource#reportsTickDuration()}.
+     *
+     * @param endTime      {@link System#nanoTime()} at the end of the tick
+     * @param tickDuration in µs, how long the server was busy with the tick as measured by the server
+     */
+    void onTickEnd(long endTime, long tickDuration);
+}
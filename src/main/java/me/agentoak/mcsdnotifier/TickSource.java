@@ -0,0 +1,30 @@
+package me.agentoak.mcsdnotifier;
+
+import org.bukkit.plugin.Plugin;
+
+/**
+ * Calls a {@link TickListener} on the main thread on every server tick.
+ *
+ * @see #create(Plugin)
+ */
+interface TickSource {
+    /**
+     * Start calling the listener. Must be called on the main thread. Everything is unregistered when the plugin is
+     * disabled.
+     */
+    void start(TickListener listener);
+
+    /**
+     * @return whether {@link TickListener#onTickEnd(long, long)} is called with the server's own tick duration
+     */
+    boolean reportsTickDuration();
+
+    /**
+     * Pick the best tick source for this server: Paper's tick events if available, a scheduler task otherwise.
+     */
+    static TickSource create(Plugin plugin) {
+        return PaperTickSource.isSupported() ?
+            new PaperTickSource(plugin) :
+            new SchedulerTickSource(plugin);
+    }
+}
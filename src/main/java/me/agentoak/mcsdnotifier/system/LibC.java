@@ -1,10 +1,45 @@
 package me.agentoak.mcsdnotifier.system;
 
+import com.sun.jna.LastErrorException;
 import com.sun.jna.Library;
 import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
 import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
 
 public interface LibC extends Library {
+    int AF_UNIX = 1;
+    int SOCK_STREAM = 1;
+    int SOCK_DGRAM = 2;
+    int SOCK_CLOEXEC = 02000000;
+    int MSG_NOSIGNAL = 0x4000;
+    int SOL_SOCKET = 1;
+    int SCM_RIGHTS = 1;
+    int O_RDONLY = 0;
+    int O_WRONLY = 1;
+    int O_RDWR = 2;
+    int O_NONBLOCK = 04000;
+    int O_CLOEXEC = 02000000;
+    short POLLIN = 0x1;
+    short POLLPRI = 0x2;
+    short POLLERR = 0x8;
+    short POLLHUP = 0x10;
+    /**
+     * {@code sizeof(struct pollfd)}: {@code int fd; short events; short revents;}
+     */
+    int POLLFD_SIZE = 8;
+
+    int ENOENT = 2;
+    int EINTR = 4;
+    int EAGAIN = 11;
+    int EOPNOTSUPP = 95;
+    int ECONNREFUSED = 111;
+
     /**
      * @see Native#loadLibrary(String, Class)
      */
@@ -16,4 +51,90 @@ public interface LibC extends Library {
      * @see <a href="https://man7.org/linux/man-pages/man2/getpid.2.html">getpid(2)</a>
      */
     int getpid();
+
+    /**
+     * @see <a href="https://man7.org/linux/man-pages/man2/socket.2.html">socket(2)</a>
+     */
+    int socket(int domain, int type, int protocol) throws LastErrorException;
+
+    /**
+     * @param addr a {@code struct sockaddr} serialized in native byte order
+     * @see <a href="https://man7.org/linux/man-pages/man2/connect.2.html">connect(2)</a>
+     */
+    int connect(int sockfd, byte[] addr, int addrlen) throws LastErrorException;
+
+    /**
+     * @param buf direct buffer, sent starting at index 0
+     * @see <a href="https://man7.org/linux/man-pages/man2/send.2.html">send(2)</a>
+     */
+    NativeLong send(int sockfd, ByteBuffer buf, NativeLong len, int flags) throws LastErrorException;
+
+    /**
+     * @see <a href="https://man7.org/linux/man-pages/man2/sendmsg.2.html">sendmsg(2)</a>
+     */
+    NativeLong sendmsg(int sockfd, Msghdr msg, int flags) throws LastErrorException;
+
+    /**
+     * @see <a href="https://man7.org/linux/man-pages/man2/open.2.html">open(2)</a>
+     */
+    int open(String pathname, int flags) throws LastErrorException;
+
+    /**
+     * @see <a href="https://man7.org/linux/man-pages/man2/read.2.html">read(2)</a>
+     */
+    NativeLong read(int fd, byte[] buf, NativeLong count) throws LastErrorException;
+
+    /**
+     * @see <a href="https://man7.org/linux/man-pages/man2/write.2.html">write(2)</a>
+     */
+    NativeLong write(int fd, byte[] buf, NativeLong count) throws LastErrorException;
+
+    /**
+     * @param pipefd receives the read end at index 0 and the write end at index 1
+     * @see <a href="https://man7.org/linux/man-pages/man2/pipe.2.html">pipe2(2)</a>
+     */
+    int pipe2(int[] pipefd, int flags) throws LastErrorException;
+
+    /**
+     * @param fds array of {@code nfds} {@code struct pollfd}, each {@link #POLLFD_SIZE} bytes
+     * @see <a href="https://man7.org/linux/man-pages/man2/poll.2.html">poll(2)</a>
+     */
+    int poll(Pointer fds, NativeLong nfds, int timeout) throws LastErrorException;
+
+    /**
+     * @see <a href="https://man7.org/linux/man-pages/man2/close.2.html">close(2)</a>
+     */
+    int close(int fd) throws LastErrorException;
+
+    /**
+     * {@code struct msghdr}
+     */
+    class Msghdr extends Structure {
+        public Pointer msg_name;
+        public int msg_namelen;
+        public Pointer msg_iov;
+        public NativeLong msg_iovlen;
+        public Pointer msg_control;
+        public NativeLong msg_controllen;
+        public int msg_flags;
+
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("msg_name", "msg_namelen", "msg_iov", "msg_iovlen", "msg_control", "msg_controllen",
+                "msg_flags");
+        }
+    }
+
+    /**
+     * {@code struct iovec}
+     */
+    class Iovec extends Structure {
+        public Pointer iov_base;
+        public NativeLong iov_len;
+
+        @Override
+        protected List<String> getFieldOrder() {
+            return Arrays.asList("iov_base", "iov_len");
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package me.agentoak.mcsdnotifier.system;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Direct mapped subset of {@link LibC} for hot paths. Unlike interface mapping, direct mapping does not box arguments
+ * or allocate argument arrays, so calls do not allocate at all.
+ * <p>
+ * {@code size_t} is mapped to {@code long}, so this class must only be used where {@code Native.LONG_SIZE == 8}.
+ *
+ * @see <a href="https://github.com/java-native-access/jna/blob/master/www/DirectMapping.md">JNA Direct Mapping</a>
+ */
+final class LibCDirect {
+    /**
+     * Registered when this class is initialized, i.e. on the first call to {@link #isSupported()}.
+     */
+    private static final boolean SUPPORTED = register();
+
+    private LibCDirect() {
+    }
+
+    private static boolean register() {
+        if (Native.LONG_SIZE != 8) {
+            return false;
+        }
+        // A failure here must not fail initializing this class, callers fall back to the interface-mapped LibC
+        try {
+            Native.register(LibCDirect.class, Platform.C_LIBRARY_NAME);
+            return true;
+        } catch (LinkageError | RuntimeException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether the native methods could be registered, and this platform's {@code size_t} matches the {@code long}
+     * mapping used here. The native methods must not be called otherwise.
+     */
+    static boolean isSupported() {
+        return SUPPORTED;
+    }
+
+    /**
+     * @param buf direct buffer, sent starting at index 0
+     * @see LibC#send(int, ByteBuffer, com.sun.jna.NativeLong, int)
+     */
+    static native long send(int sockfd, ByteBuffer buf, long len, int flags) throws LastErrorException;
+}
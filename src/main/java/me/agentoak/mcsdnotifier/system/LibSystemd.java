@@ -2,7 +2,8 @@ package me.agentoak.mcsdnotifier.system;
 
 import com.sun.jna.Library;
 import com.sun.jna.Native;
-import com.sun.jna.ptr.LongByReference;
+
+import java.nio.ByteBuffer;
 
 public interface LibSystemd extends Library {
     String LIBRARY_NAME = "systemd";
@@ -15,12 +16,15 @@ public interface LibSystemd extends Library {
     }
 
     /**
+     * @param state direct buffer holding a NUL-terminated string starting at index 0
      * @see <a href="https://www.freedesktop.org/software/systemd/man/latest/sd_notify.html">sd_notify(3)</a>
      */
-    int sd_notify(int unset_environment, String state);
+    int sd_notify(int unset_environment, ByteBuffer state);
 
     /**
-     * @see <a href="https://www.freedesktop.org/software/systemd/man/latest/sd_watchdog_enabled.html">sd_watchdog_enabled(3)</a>
+     * @param pid   0 for the calling process
+     * @param state direct buffer holding a NUL-terminated string starting at index 0
+     * @see <a href="https://www.freedesktop.org/software/systemd/man/latest/sd_notify.html">sd_notify(3)</a>
      */
-    int sd_watchdog_enabled(int unset_environment, LongByReference watchdog_usec);
+    int sd_pid_notify_with_fds(int pid, int unset_environment, ByteBuffer state, int[] fds, int n_fds);
 }
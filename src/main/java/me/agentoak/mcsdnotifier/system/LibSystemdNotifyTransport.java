@@ -0,0 +1,44 @@
+package me.agentoak.mcsdnotifier.system;
+
+import com.sun.jna.Native;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link NotifyTransport} that calls {@code sd_notify(3)} of libsystemd, which opens a new socket for every call.
+ * Used as a fallback if {@link SocketNotifyTransport} cannot handle the notify socket.
+ */
+public class LibSystemdNotifyTransport implements NotifyTransport {
+    protected final LibSystemd libsystemd;
+
+    /**
+     * @throws SDNotifyException if native library could not be loaded
+     * @see Native#loadLibrary(String, Class)
+     */
+    public LibSystemdNotifyTransport() throws SDNotifyException {
+        try {
+            libsystemd = LibSystemd.load();
+        } catch (UnsatisfiedLinkError e) {
+            throw new SDNotifyException("Could not load systemd library. Is libsystemd installed?", e);
+        }
+    }
+
+    @Override
+    public int send(ByteBuffer message) {
+        return libsystemd.sd_notify(0, message);
+    }
+
+    @Override
+    public int send(ByteBuffer message, int[] fds) {
+        return libsystemd.sd_pid_notify_with_fds(0, 0, message, fds, fds.length);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public String toString() {
+        return "libsystemd sd_notify()";
+    }
+}
@@ -0,0 +1,108 @@
+package me.agentoak.mcsdnotifier.system;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * File descriptors passed to this process by the service manager, i.e. socket activation or descriptors stored with
+ * {@link SDNotify#storeFds(String, int...)} by a previous run of the service.
+ * <p>
+ * Implements {@code sd_listen_fds_with_names(3)} in plain Java code, so libsystemd does not need to be loaded for it.
+ * Unlike {@code sd_listen_fds(3)}, this does not set {@code FD_CLOEXEC}; Java closes inherited descriptors in child
+ * processes anyway.
+ *
+ * @see <a href="https://www.freedesktop.org/software/systemd/man/latest/sd_listen_fds.html">sd_listen_fds(3)</a>
+ */
+public final class ListenFds {
+    /**
+     * {@code SD_LISTEN_FDS_START}, the first passed descriptor.
+     */
+    public static final int LISTEN_FDS_START = 3;
+    /**
+     * Name of descriptors that were passed without a name.
+     */
+    public static final String UNKNOWN = "unknown";
+
+    /**
+     * No descriptors were passed.
+     */
+    public static final ListenFds EMPTY = new ListenFds(new String[0]);
+
+    private final String[] names;
+
+    private ListenFds(String[] names) {
+        this.names = names;
+    }
+
+    /**
+     * Read the descriptors passed to this process from the environment.
+     *
+     * @param pid pid of this process, descriptors passed to another process are ignored
+     * @throws SDNotifyException if the environment variables are invalid
+     */
+    public static ListenFds fromEnvironment(int pid) throws SDNotifyException {
+        return parse(System.getenv("LISTEN_FDS"), System.getenv("LISTEN_PID"), System.getenv("LISTEN_FDNAMES"), pid);
+    }
+
+    static ListenFds parse(String fdsVar, String pidVar, String namesVar, int pid) throws SDNotifyException {
+        if (fdsVar == null || pidVar == null) {
+            return EMPTY;
+        }
+
+        try {
+            if (Integer.parseInt(pidVar) != pid) {
+                // Meant for another process
+                return EMPTY;
+            }
+        } catch (NumberFormatException e) {
+            throw new SDNotifyException("Invalid LISTEN_PID: " + pidVar, e);
+        }
+
+        int count;
+        try {
+            count = Integer.parseInt(fdsVar);
+        } catch (NumberFormatException e) {
+            throw new SDNotifyException("Invalid LISTEN_FDS: " + fdsVar, e);
+        }
+        if (count < 0 || count > Integer.MAX_VALUE - LISTEN_FDS_START) {
+            throw new SDNotifyException("Invalid LISTEN_FDS: " + fdsVar);
+        }
+
+        String[] names = new String[count];
+        Arrays.fill(names, UNKNOWN);
+        if (namesVar != null) {
+            String[] given = namesVar.split(":", -1);
+            if (given.length != count) {
+                throw new SDNotifyException("LISTEN_FDNAMES does not match LISTEN_FDS: " + namesVar);
+            }
+            System.arraycopy(given, 0, names, 0, count);
+        }
+        return new ListenFds(names);
+    }
+
+    /**
+     * Number of passed descriptors.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * Names of all passed descriptors, in order. Descriptor {@code i} of the list is {@code LISTEN_FDS_START + i}.
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(Arrays.asList(names));
+    }
+
+    /**
+     * All passed descriptors with the given name, in the order they were passed.
+     */
+    public int[] getFds(String name) {
+        return IntStream.range(0, names.length)
+                   .filter(i -> names[i].equals(name))
+                   .map(i -> LISTEN_FDS_START + i)
+                   .toArray();
+    }
+}
@@ -0,0 +1,414 @@
+package me.agentoak.mcsdnotifier.system;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Memory;
+import com.sun.jna.NativeLong;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Memory pressure notifications for our cgroup, i.e. the kernel signalling that processes of the service spend a
+ * significant share of time stalled waiting for memory (pressure stall information, PSI).
+ * <p>
+ * Implements the protocol of {@code sd_event_add_memory_pressure(3)} in plain Java code and {@link LibC}: systemd 254+
+ * passes the file to watch in {@code $MEMORY_PRESSURE_WATCH} and the trigger to write into it in
+ * {@code $MEMORY_PRESSURE_WRITE}. The watched file is usually the cgroup's {@code memory.pressure}, which signals with
+ * {@code POLLPRI}, but may also be a FIFO or an {@code AF_UNIX} stream socket, which signal by becoming readable. Without
+ * the environment variables, our own cgroup's {@code memory.pressure} is watched with the systemd default trigger.
+ * <p>
+ * {@link #await()} blocks in {@code poll(2)} on the watched file and a pipe that {@link #wakeup()} writes to, so the
+ * waiting thread never spins and can still be woken up to stop.
+ *
+ * @see <a href="https://www.freedesktop.org/software/systemd/man/latest/sd_event_add_memory_pressure.html">
+ *     sd_event_add_memory_pressure(3)</a>
+ * @see <a href="https://docs.kernel.org/accounting/psi.html">PSI - Pressure Stall Information</a>
+ */
+public final class MemoryPressure {
+    /**
+     * systemd's default: signal when tasks stalled for 200 ms within 2 s. The kernel expects the NUL terminator, which
+     * systemd also includes in {@code $MEMORY_PRESSURE_WRITE}.
+     */
+    static final String DEFAULT_TRIGGER = "some 200000 2000000\0";
+    private static final String CGROUP_ROOT = "/sys/fs/cgroup";
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFIFO = 0010000;
+    private static final int S_IFSOCK = 0140000;
+    private static final NativeLong TWO = new NativeLong(2);
+
+    private final LibC libc;
+    private final String path;
+    private final byte[] trigger;
+    private final Memory pollFds = new Memory(2L * LibC.POLLFD_SIZE);
+    private final byte[] drainBuffer = new byte[64];
+    private final int[] wakeupPipe = {-1, -1};
+
+    private int fd = -1;
+    private short events;
+    private boolean pressureFile;
+
+    MemoryPressure(LibC libc, String path, byte[] trigger) {
+        this.libc = libc;
+        this.path = path;
+        this.trigger = trigger;
+    }
+
+    /**
+     * Find the memory pressure file to watch from the environment.
+     *
+     * @return empty if memory pressure watching is disabled or there is no pressure file for our cgroup
+     * @throws SDNotifyException if the environment variables are invalid
+     */
+    public static Optional<MemoryPressure> fromEnvironment() throws SDNotifyException {
+        return create(LibC.load(), System.getenv("MEMORY_PRESSURE_WATCH"), System.getenv("MEMORY_PRESSURE_WRITE"),
+            Paths.get("/proc/self/cgroup"));
+    }
+
+    static Optional<MemoryPressure> create(LibC libc, String watch, String write, Path procCgroup)
+        throws SDNotifyException {
+        if ("/dev/null".equals(watch)) {
+            // Explicitly disabled with MemoryPressureWatch=off
+            return Optional.empty();
+        }
+
+        byte[] trigger;
+        try {
+            trigger = write == null ? DEFAULT_TRIGGER.getBytes(StandardCharsets.US_ASCII) :
+                          Base64.getDecoder().decode(write);
+        } catch (IllegalArgumentException e) {
+            throw new SDNotifyException("Invalid MEMORY_PRESSURE_WRITE: " + write, e);
+        }
+
+        if (watch == null) {
+            Optional<Path> cgroup = findCgroup(procCgroup);
+            if (!cgroup.isPresent() || !Files.exists(cgroup.get().resolve("memory.pressure"))) {
+                return Optional.empty();
+            }
+            watch = cgroup.get().resolve("memory.pressure").toString();
+        } else if (watch.isEmpty() || watch.charAt(0) != '/') {
+            throw new SDNotifyException("Invalid MEMORY_PRESSURE_WATCH: " + watch);
+        }
+        return Optional.of(new MemoryPressure(libc, watch, trigger));
+    }
+
+    /**
+     * Find the cgroup v2 folder of this process from {@code /proc/self/cgroup}.
+     *
+     * @return empty if the system does not use cgroup v2, not even in hybrid mode
+     */
+    public static Optional<Path> findCgroup(Path procCgroup) {
+        // In hybrid mode, /sys/fs/cgroup holds the v1 hierarchies and v2 is mounted below it
+        Path root = Paths.get(CGROUP_ROOT);
+        if (!Files.exists(root.resolve("cgroup.controllers"))) {
+            root = root.resolve("unified");
+            if (!Files.exists(root.resolve("cgroup.controllers"))) {
+                return Optional.empty();
+            }
+        }
+
+        try {
+            for (String line : Files.readAllLines(procCgroup, StandardCharsets.UTF_8)) {
+                // cgroup v2 has a single hierarchy with ID 0 and no controllers: 0::/system.slice/minecraft.service
+                if (line.startsWith("0::/")) {
+                    return Optional.of(root.resolve(line.substring(4)));
+                }
+            }
+        } catch (IOException e) {
+            // Not Linux or /proc not mounted
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Open the watched file and register the trigger. Must be called before {@link #await()}.
+     *
+     * @throws SDNotifyException if the file could not be opened or the trigger was rejected, e.g. because the kernel
+     *                           does not support PSI or we lack permission to write the trigger
+     */
+    public synchronized void open() throws SDNotifyException {
+        int mode;
+        try {
+            mode = (Integer) Files.getAttribute(Paths.get(path), "unix:mode");
+        } catch (IOException | UnsupportedOperationException e) {
+            throw new SDNotifyException("Could not stat memory pressure file " + path, e);
+        }
+
+        try {
+            libc.pipe2(wakeupPipe, LibC.O_NONBLOCK | LibC.O_CLOEXEC);
+            if ((mode & S_IFMT) == S_IFSOCK) {
+                fd = libc.socket(LibC.AF_UNIX, LibC.SOCK_STREAM | LibC.SOCK_CLOEXEC, 0);
+                byte[] address = SocketNotifyTransport.buildAddress(path);
+                libc.connect(fd, address, address.length);
+                writeTrigger();
+                events = LibC.POLLIN;
+            } else if ((mode & S_IFMT) == S_IFIFO) {
+                // Opened for writing as well, so the FIFO never signals POLLHUP when the writer goes away
+                fd = libc.open(path, LibC.O_RDWR | LibC.O_NONBLOCK | LibC.O_CLOEXEC);
+                events = LibC.POLLIN;
+            } else {
+                fd = libc.open(path, LibC.O_RDWR | LibC.O_NONBLOCK | LibC.O_CLOEXEC);
+                writeTrigger();
+                events = LibC.POLLPRI;
+                pressureFile = true;
+            }
+        } catch (LastErrorException e) {
+            close();
+            throw new SDNotifyException("Could not watch memory pressure file " + path + ": errno=" +
+                                            e.getErrorCode(), e);
+        }
+
+        pollFds.setInt(0, fd);
+        pollFds.setShort(4, events);
+        pollFds.setInt(LibC.POLLFD_SIZE, wakeupPipe[0]);
+        pollFds.setShort(LibC.POLLFD_SIZE + 4, LibC.POLLIN);
+    }
+
+    private void writeTrigger() {
+        if (trigger.length > 0) {
+            libc.write(fd, trigger, new NativeLong(trigger.length));
+        }
+    }
+
+    /**
+     * Block until memory pressure is signalled or {@link #wakeup()} is called. Only one thread may wait at a time.
+     *
+     * @return true on memory pressure, false if woken up
+     * @throws SDNotifyException if the watch broke, e.g. because the cgroup was removed or the socket was closed
+     */
+    public boolean await() throws SDNotifyException {
+        while (true) {
+            pollFds.setShort(6, (short) 0);
+            pollFds.setShort(LibC.POLLFD_SIZE + 6, (short) 0);
+            try {
+                libc.poll(pollFds, TWO, -1);
+            } catch (LastErrorException e) {
+                if (e.getErrorCode() == LibC.EINTR) {
+                    continue;
+                }
+                throw new SDNotifyException("Could not poll memory pressure file " + path + ": errno=" +
+                                                e.getErrorCode(), e);
+            }
+
+            if (pollFds.getShort(LibC.POLLFD_SIZE + 6) != 0) {
+                // Not drained, so every later call returns right away as well until the watching thread stops
+                return false;
+            }
+            short revents = pollFds.getShort(6);
+            if ((revents & (LibC.POLLERR | LibC.POLLHUP)) != 0) {
+                throw new SDNotifyException("Memory pressure file " + path + " is not usable anymore");
+            }
+            if ((revents & events) != 0) {
+                if (events == LibC.POLLIN) {
+                    drain();
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Discard whatever was written to the FIFO or socket, it only signals pressure by being readable.
+     */
+    private void drain() throws SDNotifyException {
+        try {
+            while (libc.read(fd, drainBuffer, new NativeLong(drainBuffer.length)).longValue() > 0) {
+                // Keep reading until it would block
+            }
+        } catch (LastErrorException e) {
+            if (e.getErrorCode() == LibC.EAGAIN) {
+                return;
+            }
+            throw new SDNotifyException("Could not read memory pressure file " + path + ": errno=" + e.getErrorCode(),
+                e);
+        }
+        // Read returned 0, so the other side closed the socket
+        throw new SDNotifyException("Memory pressure socket " + path + " was closed");
+    }
+
+    /**
+     * Make the current and all further {@link #await()} calls return false. May be called from any thread, also after
+     * {@link #close()}, which it is synchronized with so it never writes to a closed descriptor that was reused.
+     */
+    public synchronized void wakeup() {
+        int writeEnd = wakeupPipe[1];
+        if (writeEnd >= 0) {
+            try {
+                libc.write(writeEnd, new byte[1], new NativeLong(1));
+            } catch (LastErrorException ignored) {
+                // Pipe is full, which wakes up the waiting thread just as well
+            }
+        }
+    }
+
+    /**
+     * Close the watched file. Must not be called while a thread waits in {@link #await()}.
+     */
+    public synchronized void close() {
+        for (int i = 0; i < wakeupPipe.length; i++) {
+            closeQuietly(wakeupPipe[i]);
+            wakeupPipe[i] = -1;
+        }
+        closeQuietly(fd);
+        fd = -1;
+    }
+
+    private void closeQuietly(int descriptor) {
+        if (descriptor >= 0) {
+            try {
+                libc.close(descriptor);
+            } catch (LastErrorException ignored) {
+            }
+        }
+    }
+
+    /**
+     * The watched file, e.g. {@code /sys/fs/cgroup/system.slice/minecraft.service/memory.pressure}.
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Read the current pressure stall averages.
+     *
+     * @return empty if the watched file is not a PSI file (e.g. a FIFO or socket) or could not be read
+     */
+    public Optional<Stats> readStats() {
+        if (!pressureFile) {
+            return Optional.empty();
+        }
+        try {
+            return parseStats(Files.readAllLines(Paths.get(path), StandardCharsets.US_ASCII));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    static Optional<Stats> parseStats(List<String> lines) {
+        Stall some = null;
+        Stall full = null;
+        for (String line : lines) {
+            if (line.startsWith("some ")) {
+                some = Stall.parse(line);
+            } else if (line.startsWith("full ")) {
+                full = Stall.parse(line);
+            }
+        }
+        return some == null ? Optional.empty() : Optional.of(new Stats(some, full == null ? Stall.NONE : full));
+    }
+
+    /**
+     * Pressure stall averages of a cgroup, as read from its {@code memory.pressure}.
+     */
+    public static final class Stats {
+        private final Stall some;
+        private final Stall full;
+
+        private Stats(Stall some, Stall full) {
+            this.some = some;
+            this.full = full;
+        }
+
+        /**
+         * Share of time at least one task was stalled waiting for memory.
+         */
+        public Stall getSome() {
+            return some;
+        }
+
+        /**
+         * Share of time all non-idle tasks were stalled waiting for memory at once, i.e. no progress was made.
+         */
+        public Stall getFull() {
+            return full;
+        }
+    }
+
+    /**
+     * One line of a PSI file, e.g. {@code some avg10=0.00 avg60=0.00 avg300=0.00 total=0}.
+     */
+    public static final class Stall {
+        private static final Stall NONE = new Stall(0, 0, 0, 0);
+
+        private final double avg10;
+        private final double avg60;
+        private final double avg300;
+        private final long total;
+
+        private Stall(double avg10, double avg60, double avg300, long total) {
+            this.avg10 = avg10;
+            this.avg60 = avg60;
+            this.avg300 = avg300;
+            this.total = total;
+        }
+
+        private static Stall parse(String line) {
+            double avg10 = 0;
+            double avg60 = 0;
+            double avg300 = 0;
+            long total = 0;
+            for (String field : line.split(" ")) {
+                int separator = field.indexOf('=');
+                if (separator < 0) {
+                    continue;
+                }
+                String value = field.substring(separator + 1);
+                try {
+                    switch (field.substring(0, separator)) {
+                        case "avg10":
+                            avg10 = Double.parseDouble(value);
+                            break;
+                        case "avg60":
+                            avg60 = Double.parseDouble(value);
+                            break;
+                        case "avg300":
+                            avg300 = Double.parseDouble(value);
+                            break;
+                        case "total":
+                            total = Long.parseLong(value);
+                            break;
+                        default:
+                            break;
+                    }
+                } catch (NumberFormatException ignored) {
+                    // Leave unknown formats at 0
+                }
+            }
+            return new Stall(avg10, avg60, avg300, total);
+        }
+
+        /**
+         * In percent, share of stalled time over the last 10 seconds.
+         */
+        public double getAvg10() {
+            return avg10;
+        }
+
+        /**
+         * In percent, share of stalled time over the last 60 seconds.
+         */
+        public double getAvg60() {
+            return avg60;
+        }
+
+        /**
+         * In percent, share of stalled time over the last 300 seconds.
+         */
+        public double getAvg300() {
+            return avg300;
+        }
+
+        /**
+         * In µs, total stalled time since the cgroup was created.
+         */
+        public long getTotal() {
+            return total;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package me.agentoak.mcsdnotifier.system;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects {@link NotifyField}s to be sent together in one message with
+ * {@link SDNotify#send(int, String, NotifyBatch)}.
+ * <p>
+ * Each key is sent at most once. Numeric fields like {@code EXTEND_TIMEOUT_USEC} are sent first, so long text values
+ * cannot push them out of the message, then text fields, each in the order they were first added. Fields with the
+ * same key replace each other, except
+ * that the longest {@code EXTEND_TIMEOUT_USEC} wins, so every plugin that extended the timeout gets at least the time
+ * it asked for. The last {@code STATUS} is kept apart, as it replaces the status the batch would be sent with.
+ * <p>
+ * Reusable and not thread-safe, each instance should only be used by one thread at a time.
+ */
+public final class NotifyBatch {
+    private final List<NotifyField> fields = new ArrayList<>();
+    private NotifyField status;
+
+    public void add(NotifyField field) {
+        if (field.isStatus()) {
+            status = field;
+            return;
+        }
+
+        for (int i = 0; i < fields.size(); i++) {
+            NotifyField earlier = fields.get(i);
+            if (earlier.getKey().equals(field.getKey())) {
+                if (!field.isExtendTimeout() || field.getNumber() > earlier.getNumber()) {
+                    fields.set(i, field);
+                }
+                return;
+            }
+        }
+        fields.add(field);
+    }
+
+    /**
+     * @return the value of the last {@code STATUS} added, {@code null} if none was added
+     */
+    public String getStatus() {
+        return status == null ? null : status.getValue();
+    }
+
+    public boolean isEmpty() {
+        return status == null && fields.isEmpty();
+    }
+
+    public void clear() {
+        fields.clear();
+        status = null;
+    }
+
+    /**
+     * Append all fields except the status, numeric fields first. Fields that do not fit into the message are left out.
+     *
+     * @return the {@code EXTEND_TIMEOUT_USEC} appended, -1 if there was none or it did not fit
+     */
+    long appendTo(NotifyMessage message) {
+        long extendTimeout = -1;
+        for (NotifyField field : fields) {
+            if (!field.isText()) {
+                int length = message.length();
+                field.appendTo(message);
+                if (field.isExtendTimeout() && message.length() != length) {
+                    extendTimeout = field.getNumber();
+                }
+            }
+        }
+        for (NotifyField field : fields) {
+            if (field.isText()) {
+                field.appendTo(message);
+            }
+        }
+        return extendTimeout;
+    }
+}
@@ -0,0 +1,148 @@
+package me.agentoak.mcsdnotifier.system;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A single {@code KEY=value} assignment of a {@code sd_notify(3)} message, e.g. {@code EXTEND_TIMEOUT_USEC=...}.
+ * Immutable and thread-safe.
+ * <p>
+ * Assignments that change the service lifecycle ({@code READY}, {@code RELOADING}, {@code STOPPING}, {@code MAINPID}),
+ * the watchdog or the file descriptor store are reserved, as only the notifying plugin may send them. {@code STATUS}
+ * and {@code EXTEND_TIMEOUT_USEC} can only be created with {@link #status(String)} and
+ * {@link #extendTimeout(long, TimeUnit)}, as they are combined differently from other fields.
+ *
+ * @see <a href="https://www.freedesktop.org/software/systemd/man/latest/sd_notify.html">sd_notify(3)</a>
+ */
+public final class NotifyField {
+    static final String STATUS = "STATUS";
+    static final String EXTEND_TIMEOUT_USEC = "EXTEND_TIMEOUT_USEC";
+
+    private static final Set<String> RESERVED = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+        "READY", "RELOADING", "STOPPING", "MAINPID", "MONOTONIC_USEC", "NOTIFYACCESS", "WATCHDOG", "WATCHDOG_USEC",
+        "FDSTORE", "FDSTOREREMOVE", "FDNAME", "FDPOLL", "BARRIER", STATUS, EXTEND_TIMEOUT_USEC)));
+
+    private final String key;
+    /**
+     * Key including the trailing {@code =}, encoded once so appending does not allocate.
+     */
+    private final byte[] keyBytes;
+    private final String value;
+    private final long number;
+
+    private NotifyField(String key, String value, long number) {
+        this.key = key;
+        this.keyBytes = NotifyMessage.ascii(key + "=");
+        this.value = value;
+        this.number = number;
+    }
+
+    /**
+     * A free-form status string, shown by the service manager until the next status update.
+     */
+    public static NotifyField status(String status) {
+        return text(STATUS, status);
+    }
+
+    /**
+     * Extend the startup, runtime or shutdown timeout, whichever corresponds to the current state. Cannot shorten the
+     * configured timeouts.
+     *
+     * @param timeout time until the next notification, rounded down to µs
+     */
+    public static NotifyField extendTimeout(long timeout, TimeUnit unit) {
+        return number(EXTEND_TIMEOUT_USEC, unit.toMicros(timeout));
+    }
+
+    /**
+     * An {@code errno}-style error code describing why the service failed.
+     */
+    public static NotifyField errno(int errno) {
+        return number("ERRNO", errno);
+    }
+
+    /**
+     * A D-Bus error name describing why the service failed, e.g. {@code org.freedesktop.DBus.Error.TimedOut}.
+     */
+    public static NotifyField busError(String error) {
+        return of("BUSERROR", error);
+    }
+
+    /**
+     * Any other text assignment. Assignments that are not defined by {@code sd_notify(3)} should start with
+     * {@code X_}.
+     *
+     * @param key   upper case letters, digits and underscores
+     * @param value a single line, newlines are replaced by spaces when sending
+     * @throws IllegalArgumentException if the key is invalid or reserved
+     */
+    public static NotifyField of(String key, String value) {
+        checkKey(key);
+        return text(key, value);
+    }
+
+    private static NotifyField text(String key, String value) {
+        // Fail here rather than on the sender thread
+        if (value == null) {
+            throw new IllegalArgumentException("Missing value of notify field " + key);
+        }
+        return new NotifyField(key, value, 0);
+    }
+
+    private static NotifyField number(String key, long number) {
+        return new NotifyField(key, null, number);
+    }
+
+    private static void checkKey(String key) {
+        boolean valid = !key.isEmpty();
+        for (int i = 0; i < key.length() && valid; i++) {
+            char c = key.charAt(i);
+            valid = c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("Invalid notify field key: " + key);
+        } else if (RESERVED.contains(key)) {
+            throw new IllegalArgumentException("Notify field " + key + " is reserved");
+        }
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getValue() {
+        return value == null ? Long.toString(number) : value;
+    }
+
+    boolean isStatus() {
+        return key.equals(STATUS);
+    }
+
+    boolean isExtendTimeout() {
+        return key.equals(EXTEND_TIMEOUT_USEC);
+    }
+
+    boolean isText() {
+        return value != null;
+    }
+
+    long getNumber() {
+        return number;
+    }
+
+    void appendTo(NotifyMessage message) {
+        if (value == null) {
+            message.append(keyBytes, number);
+        } else {
+            message.append(keyBytes, value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return key + "=" + getValue();
+    }
+}
@@ -0,0 +1,188 @@
+package me.agentoak.mcsdnotifier.system;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable encoder for {@code sd_notify(3)} messages. Writes {@code KEY=value\n} assignments into a direct buffer that
+ * can be handed to a {@link NotifyTransport} as is, so building a message allocates nothing.
+ * <p>
+ * Not thread-safe, each instance should only be used by one thread at a time.
+ */
+public final class NotifyMessage {
+    /**
+     * Maximum message size the service manager accepts ({@code PIPE_BUF}). Longer values are truncated.
+     */
+    public static final int MAX_SIZE = 4096;
+
+    static final byte[] READY = ascii("READY=1");
+    static final byte[] RELOADING = ascii("RELOADING=1");
+    static final byte[] STOPPING = ascii("STOPPING=1");
+    static final byte[] WATCHDOG = ascii("WATCHDOG=1");
+    static final byte[] EXTEND_TIMEOUT_USEC = ascii("EXTEND_TIMEOUT_USEC=");
+    static final byte[] NOTIFYACCESS_MAIN = ascii("NOTIFYACCESS=main");
+    static final byte[] MAINPID = ascii("MAINPID=");
+    static final byte[] STATUS = ascii("STATUS=");
+    static final byte[] FDSTORE = ascii("FDSTORE=1");
+    static final byte[] FDSTOREREMOVE = ascii("FDSTOREREMOVE=1");
+    static final byte[] FDNAME = ascii("FDNAME=");
+
+    private static final byte NEWLINE = '\n';
+
+    // One extra byte so there is always room for the NUL terminator
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_SIZE + 1);
+    private final byte[] digits = new byte[20];
+
+    static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Discard the current message and start a new one.
+     */
+    public NotifyMessage clear() {
+        buffer.clear();
+        return this;
+    }
+
+    /**
+     * @return the number of bytes appended since the last {@link #clear()}, to tell whether an assignment fit
+     */
+    public int length() {
+        return buffer.position();
+    }
+
+    /**
+     * Append a complete {@code KEY=value} assignment, e.g. {@code WATCHDOG=1}. Does nothing if it does not fit.
+     */
+    public NotifyMessage append(byte[] assignment) {
+        if (buffer.position() + assignment.length + 1 <= MAX_SIZE) {
+            buffer.put(assignment).put(NEWLINE);
+        }
+        return this;
+    }
+
+    /**
+     * Append an assignment with a string value. The value is encoded as UTF-8 and truncated if the message would
+     * become too long, or nothing is appended if not even the key fits. Newlines in the value are replaced by spaces,
+     * so it cannot inject other assignments, and so are NUL characters, as the service manager ignores messages that
+     * contain them.
+     *
+     * @param key a key including the trailing {@code =}
+     */
+    public NotifyMessage append(byte[] key, CharSequence value) {
+        int start = buffer.position();
+        if (start + key.length + 1 > MAX_SIZE) {
+            return this;
+        }
+        buffer.put(key);
+
+        // Leave room for the trailing newline
+        int limit = MAX_SIZE - 1;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\0') {
+                c = ' ';
+            }
+
+            int codePoint = c;
+            if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, value.charAt(++i));
+            } else if (Character.isSurrogate(c)) {
+                codePoint = '?';
+            }
+
+            if (!putCodePoint(codePoint, limit)) {
+                break;
+            }
+        }
+
+        buffer.put(NEWLINE);
+        return this;
+    }
+
+    /**
+     * Append an assignment with a decimal integer value. Does nothing if it does not fit.
+     *
+     * @param key a key including the trailing {@code =}
+     */
+    public NotifyMessage append(byte[] key, long value) {
+        int count = 0;
+        // Work with negative numbers so Long.MIN_VALUE does not overflow
+        long remaining = value < 0 ? value : -value;
+        do {
+            digits[count++] = (byte) ('0' - remaining % 10);
+            remaining /= 10;
+        } while (remaining != 0);
+
+        if (buffer.position() + key.length + count + (value < 0 ? 1 : 0) + 1 > MAX_SIZE) {
+            return this;
+        }
+        buffer.put(key);
+        if (value < 0) {
+            buffer.put((byte) '-');
+        }
+        while (count > 0) {
+            buffer.put(digits[--count]);
+        }
+        buffer.put(NEWLINE);
+        return this;
+    }
+
+    private boolean putCodePoint(int codePoint, int limit) {
+        int position = buffer.position();
+        if (codePoint < 0x80) {
+            if (position + 1 > limit) {
+                return false;
+            }
+            buffer.put((byte) codePoint);
+        } else if (codePoint < 0x800) {
+            if (position + 2 > limit) {
+                return false;
+            }
+            buffer.put((byte) (0xC0 | codePoint >> 6))
+                .put((byte) (0x80 | codePoint & 0x3F));
+        } else if (codePoint < 0x10000) {
+            if (position + 3 > limit) {
+                return false;
+            }
+            buffer.put((byte) (0xE0 | codePoint >> 12))
+                .put((byte) (0x80 | codePoint >> 6 & 0x3F))
+                .put((byte) (0x80 | codePoint & 0x3F));
+        } else {
+            if (position + 4 > limit) {
+                return false;
+            }
+            buffer.put((byte) (0xF0 | codePoint >> 18))
+                .put((byte) (0x80 | codePoint >> 12 & 0x3F))
+                .put((byte) (0x80 | codePoint >> 6 & 0x3F))
+                .put((byte) (0x80 | codePoint & 0x3F));
+        }
+        return true;
+    }
+
+    /**
+     * Finish the message for sending. The returned buffer holds the message from index 0 up to its limit and is
+     * followed by a NUL byte, as required by {@link NotifyTransport#send(ByteBuffer)}. Call {@link #clear()} before
+     * appending again.
+     */
+    public ByteBuffer finish() {
+        int length = buffer.position();
+        buffer.put(length, (byte) 0);
+        buffer.position(0).limit(length);
+        return buffer;
+    }
+
+    /**
+     * Decode the current message, for logging and debugging. Allocates.
+     */
+    @Override
+    public String toString() {
+        ByteBuffer copy = buffer.duplicate();
+        if (copy.position() != 0) {
+            copy.flip();
+        }
+        return StandardCharsets.UTF_8.decode(copy).toString();
+    }
+}
@@ -0,0 +1,27 @@
+package me.agentoak.mcsdnotifier.system;
+
+/**
+ * Is told about every notification {@link SDNotify} sent, e.g. to record them. Called while {@code SDNotify} holds its
+ * lock, so it must be fast and must not send notifications itself.
+ *
+ * @see SDNotify#setObserver(NotifyObserver)
+ */
+@FunctionalInterface
+public interface NotifyObserver {
+    int MAINPID = 1;
+    int READY = 1 << 1;
+    int RELOADING = 1 << 2;
+    int STOPPING = 1 << 3;
+    int WATCHDOG = 1 << 4;
+    int STATUS = 1 << 5;
+    int EXTEND_TIMEOUT_USEC = 1 << 6;
+    int FDSTORE = 1 << 7;
+    int FDSTOREREMOVE = 1 << 8;
+
+    /**
+     * @param assignments the variables that were sent, a combination of the constants of this interface
+     * @param value       the number sent with {@code MAINPID=} or {@code EXTEND_TIMEOUT_USEC=}, 0 if neither was sent
+     * @param result      return value of {@link NotifyTransport#send(java.nio.ByteBuffer)}
+     */
+    void sent(int assignments, long value, int result);
+}
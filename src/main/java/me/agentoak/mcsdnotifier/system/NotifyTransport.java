@@ -0,0 +1,41 @@
+package me.agentoak.mcsdnotifier.system;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Delivers {@code sd_notify(3)} state strings to the service manager.
+ *
+ * @see SocketNotifyTransport
+ * @see LibSystemdNotifyTransport
+ */
+public interface NotifyTransport extends AutoCloseable {
+    /**
+     * Send a newline-separated list of variable assignments to the service manager.
+     * <p>
+     * The message must be in a direct buffer, starting at index 0 and ending at the buffer's limit. The byte at the
+     * limit must be a NUL byte, so the buffer can also be passed as a C string. {@link NotifyMessage#finish()} returns
+     * buffers in this format.
+     * <p>
+     * Has the same return value semantics as {@code sd_notify(3)}, so errors can be ignored just like there.
+     *
+     * @return positive if the message was sent, 0 if there is no notify socket, negative errno on failure
+     * @see <a href="https://www.freedesktop.org/software/systemd/man/latest/sd_notify.html">sd_notify(3)</a>
+     */
+    int send(ByteBuffer message);
+
+    /**
+     * Like {@link #send(ByteBuffer)}, but also pass file descriptors to the service manager, e.g. for
+     * {@code FDSTORE=1}. The descriptors stay open in this process.
+     *
+     * @return same as {@link #send(ByteBuffer)}, {@code -EOPNOTSUPP} if this transport cannot pass file descriptors
+     */
+    default int send(ByteBuffer message, int[] fds) {
+        return fds.length == 0 ? send(message) : -LibC.EOPNOTSUPP;
+    }
+
+    /**
+     * Release resources held by this transport. Further calls to {@link #send(ByteBuffer)} will fail.
+     */
+    @Override
+    void close();
+}
@@ -1,54 +1,111 @@
 package me.agentoak.mcsdnotifier.system;
 
 import com.sun.jna.Native;
-import com.sun.jna.ptr.LongByReference;
 
+import java.nio.ByteBuffer;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 
 /**
  * More Java-like wrapper for the {@code sd-daemon} API of libsystemd. Handles building the state string for
  * {@code sd_notify(3)}.
+ * <p>
+ * Messages are encoded into a reused {@link NotifyMessage}, so sending a notification does not allocate. All sending
+ * methods are synchronized and can be called from any thread.
  *
  * @see <a href="https://www.freedesktop.org/software/systemd/man/latest/sd-daemon.html">sd-daemon(3)</a>
- * @see LibSystemd#sd_notify(int, String)
+ * @see NotifyTransport#send(ByteBuffer)
  */
 public class SDNotify {
     protected final int pid;
-    protected final LibSystemd libsystemd;
+    protected final NotifyTransport transport;
 
     protected final long watchdogUsec;
 
+    private final NotifyMessage message = new NotifyMessage();
+    private volatile NotifyObserver observer;
+
     /**
-     * @throws SDNotifyException if native library could not be loaded or {@code sd_watchdog_enabled(3)} call failed
+     * Set up notifications to the service manager given by the environment. Prefers a {@link SocketNotifyTransport}
+     * and falls back to {@link LibSystemdNotifyTransport} if the notify socket cannot be handled without libsystemd.
+     *
+     * @throws SDNotifyException if native library could not be loaded or {@code $WATCHDOG_USEC} is invalid
      * @see Native#loadLibrary(String, Class)
-     * @see LibSystemd#sd_watchdog_enabled(int, LongByReference)
      */
     public SDNotify() throws SDNotifyException {
+        LibC libc;
         try {
-            pid = LibC.load().getpid();
+            libc = LibC.load();
+            pid = libc.getpid();
         } catch (UnsatisfiedLinkError e) {
             throw new SDNotifyException("Could not load libc to determine pid", e);
         }
 
-        try {
-            libsystemd = LibSystemd.load();
-        } catch (UnsatisfiedLinkError e) {
-            throw new SDNotifyException("Could not load systemd library. Is libsystemd installed?", e);
+        transport = openTransport(libc, System.getenv("NOTIFY_SOCKET"));
+        watchdogUsec = parseWatchdogUsec(System.getenv("WATCHDOG_USEC"), System.getenv("WATCHDOG_PID"), pid);
+    }
+
+    /**
+     * Use the given transport instead of the one given by the environment, e.g. to send notifications to a local
+     * socket.
+     *
+     * @param pid          pid to send as MAINPID
+     * @param transport    where to send notifications to
+     * @param watchdogUsec watchdog interval in µs, or 0 if watchdog is disabled
+     */
+    public SDNotify(int pid, NotifyTransport transport, long watchdogUsec) {
+        this.pid = pid;
+        this.transport = transport;
+        this.watchdogUsec = watchdogUsec;
+    }
+
+    private static NotifyTransport openTransport(LibC libc, String notifySocket) throws SDNotifyException {
+        if (notifySocket != null && !notifySocket.isEmpty()) {
+            try {
+                return new SocketNotifyTransport(libc, notifySocket);
+            } catch (SDNotifyException | UnsatisfiedLinkError ignored) {
+                // Let libsystemd deal with it, it may know address types we don't
+            }
+        }
+        return new LibSystemdNotifyTransport();
+    }
+
+    /**
+     * Implements {@code sd_watchdog_enabled(3)} in plain Java code, so libsystemd does not need to be loaded for it.
+     *
+     * @return watchdog interval in µs, or 0 if watchdog is disabled or meant for another process
+     * @throws SDNotifyException if the environment variables are invalid
+     * @see <a href="https://www.freedesktop.org/software/systemd/man/latest/sd_watchdog_enabled.html">sd_watchdog_enabled(3)</a>
+     */
+    static long parseWatchdogUsec(String usecVar, String pidVar, int pid) throws SDNotifyException {
+        if (usecVar == null) {
+            return 0;
         }
 
-        LongByReference usec = new LongByReference();
-        int retval = libsystemd.sd_watchdog_enabled(0, usec);
-        if (retval < 0) {
-            // We could translate errno with strerror but that would require even more error handling
-            throw new SDNotifyException("sd_watchdog_enabled() failed: errno=" + -retval);
-        } else if (retval == 0) {
-            // Watchdog is disabled (usec is not valid)
-            watchdogUsec = 0;
-        } else {
+        long usec;
+        try {
             // usec type is uint64_t but dealing with unsigned types is annoying so clamp to signed maximum value
-            watchdogUsec = usec.getValue() < 0 ? Long.MAX_VALUE : usec.getValue();
+            usec = Long.parseUnsignedLong(usecVar);
+            usec = usec < 0 ? Long.MAX_VALUE : usec;
+        } catch (NumberFormatException e) {
+            throw new SDNotifyException("Invalid WATCHDOG_USEC: " + usecVar, e);
+        }
+        if (usec == 0) {
+            throw new SDNotifyException("Invalid WATCHDOG_USEC: " + usecVar);
         }
+
+        if (pidVar != null) {
+            try {
+                if (Integer.parseInt(pidVar) != pid) {
+                    // Watchdog is meant for another process
+                    return 0;
+                }
+            } catch (NumberFormatException e) {
+                throw new SDNotifyException("Invalid WATCHDOG_PID: " + pidVar, e);
+            }
+        }
+
+        return usec;
     }
 
     /**
@@ -88,6 +145,28 @@ public class SDNotify {
         return watchdogUsec;
     }
 
+    /**
+     * Transport used to deliver notifications to the service manager.
+     */
+    public NotifyTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @param observer to tell about every notification sent from now on, {@code null} to stop telling
+     */
+    public void setObserver(NotifyObserver observer) {
+        this.observer = observer;
+    }
+
+    private int observe(int assignments, long value, int result) {
+        NotifyObserver current = observer;
+        if (current != null) {
+            current.sent(assignments, value, result);
+        }
+        return result;
+    }
+
     /**
      * Sends our pid as MAINPID, so the service manager can keep track of the main process in case we were forked off
      * from a container process like {@code screen(1)}, and sets NOTIFYACCESS=main to lock down notify socket access to
@@ -97,9 +176,13 @@ public class SDNotify {
      *
      * @param status a single-line free-form status string, {@code null} to send a generic default text
      */
-    public void init(String status) {
-        libsystemd.sd_notify(0, String.format("MAINPID=%d\nNOTIFYACCESS=main\nSTATUS=%s", pid,
-            status == null ? "Loading" : status));
+    public synchronized void init(String status) {
+        int result = transport.send(message.clear()
+                                        .append(NotifyMessage.MAINPID, pid)
+                                        .append(NotifyMessage.NOTIFYACCESS_MAIN)
+                                        .append(NotifyMessage.STATUS, status == null ? "Loading" : status)
+                                        .finish());
+        observe(NotifyObserver.MAINPID | NotifyObserver.STATUS, pid, result);
     }
 
     /**
@@ -109,8 +192,12 @@ public class SDNotify {
      *
      * @param status a single-line free-form status string, {@code null} to send a generic default text
      */
-    public void ready(String status) {
-        libsystemd.sd_notify(0, String.format("READY=1\nSTATUS=%s", status == null ? "Running" : status));
+    public synchronized void ready(String status) {
+        int result = transport.send(message.clear()
+                                        .append(NotifyMessage.READY)
+                                        .append(NotifyMessage.STATUS, status == null ? "Running" : status)
+                                        .finish());
+        observe(NotifyObserver.READY | NotifyObserver.STATUS, 0, result);
     }
 
     /**
@@ -122,8 +209,139 @@ public class SDNotify {
      * @param status a single-line free-form status string, {@code null} to send a generic default text
      * @see #getWatchdogUsec()
      */
-    public void watchdog(String status) {
-        libsystemd.sd_notify(0, String.format("WATCHDOG=1\nSTATUS=%s", status == null ? "Running" : status));
+    public synchronized void watchdog(String status) {
+        int result = transport.send(message.clear()
+                                        .append(NotifyMessage.WATCHDOG)
+                                        .append(NotifyMessage.STATUS, status == null ? "Running" : status)
+                                        .finish());
+        observe(NotifyObserver.WATCHDOG | NotifyObserver.STATUS, 0, result);
+    }
+
+    /**
+     * Tells the service manager to update the watchdog timestamp, without changing the status.
+     *
+     * @see #watchdog(String)
+     */
+    public synchronized void watchdog() {
+        int result = transport.send(message.clear()
+                                        .append(NotifyMessage.WATCHDOG)
+                                        .finish());
+        observe(NotifyObserver.WATCHDOG, 0, result);
+    }
+
+    /**
+     * Tells the service manager to extend the startup, runtime or shutdown timeout, whichever corresponds to the current
+     * state. The service must send another notification within the given time, otherwise the regular timeout handling
+     * applies. Cannot shorten the configured timeouts.
+     *
+     * @param usec in µs, time until the next notification
+     */
+    public synchronized void extendTimeout(long usec) {
+        int result = transport.send(message.clear()
+                                        .append(NotifyMessage.EXTEND_TIMEOUT_USEC, usec)
+                                        .finish());
+        observe(NotifyObserver.EXTEND_TIMEOUT_USEC, usec, result);
+    }
+
+    /**
+     * Pass file descriptors to the service manager to keep them open while the service restarts. After a restart,
+     * the service manager passes them to the new process, see {@link ListenFds}. Requires
+     * {@code FileDescriptorStoreMax=} to be set in the service unit; the same descriptor is only stored once.
+     *
+     * @param name identifies the descriptors in {@code $LISTEN_FDNAMES}, up to 255 printable ASCII characters except
+     *             {@code :}
+     * @return whether the descriptors were sent
+     * @throws IllegalArgumentException if the name is invalid
+     */
+    public synchronized boolean storeFds(String name, int... fds) {
+        checkFdName(name);
+        int result = transport.send(message.clear()
+                                        .append(NotifyMessage.FDSTORE)
+                                        .append(NotifyMessage.FDNAME, name)
+                                        .finish(), fds);
+        return observe(NotifyObserver.FDSTORE, 0, result) > 0;
+    }
+
+    /**
+     * Remove all descriptors with the given name from the service manager's file descriptor store, and close them
+     * there.
+     *
+     * @throws IllegalArgumentException if the name is invalid
+     * @see #storeFds(String, int...)
+     */
+    public synchronized void removeFds(String name) {
+        checkFdName(name);
+        int result = transport.send(message.clear()
+                                        .append(NotifyMessage.FDSTOREREMOVE)
+                                        .append(NotifyMessage.FDNAME, name)
+                                        .finish());
+        observe(NotifyObserver.FDSTOREREMOVE, 0, result);
+    }
+
+    private static void checkFdName(String name) {
+        boolean valid = !name.isEmpty() && name.length() <= 255;
+        for (int i = 0; i < name.length() && valid; i++) {
+            char c = name.charAt(i);
+            valid = c >= ' ' && c < 127 && c != ':';
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("Invalid file descriptor name: " + name);
+        }
+    }
+
+    /**
+     * Passes a free-form string back to the service manager that describes the service state, without any other
+     * notification.
+     *
+     * @param status a single-line free-form status string
+     */
+    public synchronized void status(String status) {
+        int result = transport.send(message.clear()
+                                        .append(NotifyMessage.STATUS, status)
+                                        .finish());
+        observe(NotifyObserver.STATUS, 0, result);
+    }
+
+    /**
+     * Sends {@code READY=1} and/or {@code WATCHDOG=1}, a status and the fields of the batch in a single message, so
+     * several notifications only cost one send. A status in the batch replaces the given status.
+     * <p>
+     * The status is appended last and truncated to fit into {@link NotifyMessage#MAX_SIZE}, so it cannot push out the
+     * fields of the batch. The observer is only told about assignments that fit into the message.
+     *
+     * @param assignments {@link NotifyObserver#READY} and/or {@link NotifyObserver#WATCHDOG}, 0 for neither
+     * @param status      a single-line free-form status string, {@code null} to keep the current status
+     * @throws IllegalArgumentException if other assignments are given
+     */
+    public synchronized void send(int assignments, String status, NotifyBatch batch) {
+        if ((assignments & ~(NotifyObserver.READY | NotifyObserver.WATCHDOG)) != 0) {
+            throw new IllegalArgumentException("Only READY and WATCHDOG can be sent with a batch");
+        }
+
+        message.clear();
+        if ((assignments & NotifyObserver.READY) != 0) {
+            message.append(NotifyMessage.READY);
+        }
+        if ((assignments & NotifyObserver.WATCHDOG) != 0) {
+            message.append(NotifyMessage.WATCHDOG);
+        }
+        long extendTimeout = batch.appendTo(message);
+        if (extendTimeout >= 0) {
+            assignments |= NotifyObserver.EXTEND_TIMEOUT_USEC;
+        }
+        if (batch.getStatus() != null) {
+            status = batch.getStatus();
+        }
+        if (status != null) {
+            int length = message.length();
+            message.append(NotifyMessage.STATUS, status);
+            if (message.length() != length) {
+                assignments |= NotifyObserver.STATUS;
+            }
+        }
+
+        int result = transport.send(message.finish());
+        observe(assignments, Math.max(0, extendTimeout), result);
     }
 
     /**
@@ -134,8 +352,12 @@ public class SDNotify {
      *
      * @param status a single-line free-form status string, {@code null} to send a generic default text
      */
-    public void reloading(String status) {
-        libsystemd.sd_notify(0, String.format("RELOADING=1\nSTATUS=%s", status == null ? "Reloading" : status));
+    public synchronized void reloading(String status) {
+        int result = transport.send(message.clear()
+                                        .append(NotifyMessage.RELOADING)
+                                        .append(NotifyMessage.STATUS, status == null ? "Reloading" : status)
+                                        .finish());
+        observe(NotifyObserver.RELOADING | NotifyObserver.STATUS, 0, result);
     }
 
     /**
@@ -145,7 +367,11 @@ public class SDNotify {
      *
      * @param status a single-line free-form status string, {@code null} to send a generic default text
      */
-    public void stopping(String status) {
-        libsystemd.sd_notify(0, String.format("STOPPING=1\nSTATUS=%s", status == null ? "Stopping" : status));
+    public synchronized void stopping(String status) {
+        int result = transport.send(message.clear()
+                                        .append(NotifyMessage.STOPPING)
+                                        .append(NotifyMessage.STATUS, status == null ? "Stopping" : status)
+                                        .finish());
+        observe(NotifyObserver.STOPPING | NotifyObserver.STATUS, 0, result);
     }
 }
@@ -0,0 +1,217 @@
+package me.agentoak.mcsdnotifier.system;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link NotifyTransport} that speaks the {@code sd_notify(3)} datagram protocol itself. Unlike libsystemd, which
+ * parses {@code $NOTIFY_SOCKET} and opens a new socket on every call, this keeps one connected {@code AF_UNIX}
+ * datagram socket open for the lifetime of the transport.
+ * <p>
+ * Java's {@code DatagramChannel} does not support {@code AF_UNIX} (not even with Java 16+
+ * {@code UnixDomainSocketAddress}, which is stream-only), so the socket is managed through {@link LibC}. On 64-bit
+ * platforms sending goes through {@link LibCDirect} and does not allocate. File descriptors are passed with
+ * {@code sendmsg(2)} and {@code SCM_RIGHTS}.
+ * <p>
+ * If the service manager re-creates its socket (e.g. on {@code daemon-reexec}), the transport reconnects. While the
+ * socket is gone, sends fail and reconnecting is retried at most every {@link #RECONNECT_INTERVAL} ns.
+ *
+ * @see <a href="https://www.freedesktop.org/software/systemd/man/latest/sd_notify.html#Notes">sd_notify(3) Notes</a>
+ */
+public class SocketNotifyTransport implements NotifyTransport {
+    /**
+     * {@code sizeof(sockaddr_un.sun_path)} on Linux.
+     */
+    private static final int SUN_PATH_LENGTH = 108;
+    /**
+     * {@code offsetof(struct sockaddr_un, sun_path)} on Linux, i.e. {@code sizeof(sa_family_t)}.
+     */
+    private static final int SUN_PATH_OFFSET = 2;
+    /**
+     * {@code sizeof(struct cmsghdr)} without padding: {@code size_t cmsg_len; int cmsg_level; int cmsg_type;}
+     */
+    private static final int CMSGHDR_SIZE = NativeLong.SIZE + 4 + 4;
+    private static final int[] NO_FDS = new int[0];
+    /**
+     * In ns, how long to wait after a failed connect before trying again.
+     */
+    static final long RECONNECT_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    protected final LibC libc;
+    protected final String socketName;
+    private final byte[] address;
+    private final boolean direct;
+    private final NativeLong length = new NativeLong();
+
+    private int fd = -1;
+    private boolean closed;
+    /**
+     * {@link System#nanoTime()} of the last connect attempt.
+     */
+    private long lastConnect;
+
+    /**
+     * @param libc        loaded C library
+     * @param notifySocket value of {@code $NOTIFY_SOCKET}: an absolute path, or an abstract socket name prefixed with
+     *                     {@code @}
+     * @throws SDNotifyException if the address is not supported or the socket could not be opened
+     */
+    public SocketNotifyTransport(LibC libc, String notifySocket) throws SDNotifyException {
+        this.libc = libc;
+        this.socketName = notifySocket;
+        this.address = buildAddress(notifySocket);
+        this.direct = LibCDirect.isSupported();
+
+        try {
+            connect();
+        } catch (LastErrorException e) {
+            throw new SDNotifyException("Could not connect to notify socket " + notifySocket + ": errno=" +
+                                            e.getErrorCode(), e);
+        }
+    }
+
+    /**
+     * Serialize a {@code struct sockaddr_un} for the given {@code $NOTIFY_SOCKET} value, trimmed to the actual address
+     * length like libsystemd does.
+     */
+    static byte[] buildAddress(String notifySocket) throws SDNotifyException {
+        if (notifySocket == null || notifySocket.isEmpty()) {
+            throw new SDNotifyException("Notify socket address is empty");
+        }
+
+        boolean abstractSocket = notifySocket.charAt(0) == '@';
+        if (!abstractSocket && notifySocket.charAt(0) != '/') {
+            // e.g. vsock: addresses, leave these to libsystemd
+            throw new SDNotifyException("Unsupported notify socket address: " + notifySocket);
+        }
+
+        byte[] path = notifySocket.getBytes(StandardCharsets.UTF_8);
+        // Path sockets need a NUL terminator, abstract sockets replace the @ with a NUL byte. Both end up the same size
+        if (path.length + (abstractSocket ? 0 : 1) > SUN_PATH_LENGTH) {
+            throw new SDNotifyException("Notify socket address too long: " + notifySocket);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(SUN_PATH_OFFSET + path.length + (abstractSocket ? 0 : 1))
+                                .order(ByteOrder.nativeOrder());
+        buffer.putShort((short) LibC.AF_UNIX);
+        if (abstractSocket) {
+            buffer.put((byte) 0).put(path, 1, path.length - 1);
+        } else {
+            buffer.put(path).put((byte) 0);
+        }
+        return buffer.array();
+    }
+
+    private void connect() {
+        lastConnect = System.nanoTime();
+        int newFd = libc.socket(LibC.AF_UNIX, LibC.SOCK_DGRAM | LibC.SOCK_CLOEXEC, 0);
+        try {
+            libc.connect(newFd, address, address.length);
+        } catch (LastErrorException e) {
+            libc.close(newFd);
+            throw e;
+        }
+        fd = newFd;
+    }
+
+    @Override
+    public int send(ByteBuffer message) {
+        return send(message, NO_FDS);
+    }
+
+    @Override
+    public synchronized int send(ByteBuffer message, int[] fds) {
+        if (fd >= 0) {
+            try {
+                return sendOnce(message, fds);
+            } catch (LastErrorException e) {
+                if (e.getErrorCode() != LibC.ECONNREFUSED) {
+                    return -e.getErrorCode();
+                }
+            }
+
+            // Service manager may have re-created its socket (e.g. on daemon-reexec), so reconnect
+            closeSocket();
+        } else if (closed || System.nanoTime() - lastConnect < RECONNECT_INTERVAL) {
+            return -LibC.ENOENT;
+        }
+
+        // Retried on later sends if the socket is not back yet
+        try {
+            connect();
+            return sendOnce(message, fds);
+        } catch (LastErrorException e) {
+            return -e.getErrorCode();
+        }
+    }
+
+    private int sendOnce(ByteBuffer message, int[] fds) {
+        if (fds.length > 0) {
+            sendWithFds(message, fds);
+        } else if (direct) {
+            LibCDirect.send(fd, message, message.limit(), LibC.MSG_NOSIGNAL);
+        } else {
+            length.setValue(message.limit());
+            libc.send(fd, message, length, LibC.MSG_NOSIGNAL);
+        }
+        return 1;
+    }
+
+    private void sendWithFds(ByteBuffer message, int[] fds) {
+        LibC.Iovec iovec = new LibC.Iovec();
+        iovec.iov_base = Native.getDirectBufferPointer(message);
+        iovec.iov_len = new NativeLong(message.limit());
+        iovec.write();
+
+        // One SCM_RIGHTS control message with all descriptors, laid out like CMSG_SPACE/CMSG_LEN/CMSG_DATA do
+        int dataOffset = cmsgAlign(CMSGHDR_SIZE);
+        Memory control = new Memory(dataOffset + cmsgAlign(fds.length * 4));
+        control.clear();
+        control.setNativeLong(0, new NativeLong(dataOffset + fds.length * 4));
+        control.setInt(NativeLong.SIZE, LibC.SOL_SOCKET);
+        control.setInt(NativeLong.SIZE + 4, LibC.SCM_RIGHTS);
+        control.write(dataOffset, fds, 0, fds.length);
+
+        LibC.Msghdr msghdr = new LibC.Msghdr();
+        msghdr.msg_iov = iovec.getPointer();
+        msghdr.msg_iovlen = new NativeLong(1);
+        msghdr.msg_control = control;
+        msghdr.msg_controllen = new NativeLong(control.size());
+        libc.sendmsg(fd, msghdr, LibC.MSG_NOSIGNAL);
+    }
+
+    /**
+     * {@code CMSG_ALIGN}, i.e. round up to a multiple of {@code sizeof(size_t)}.
+     */
+    private static int cmsgAlign(int length) {
+        return (length + NativeLong.SIZE - 1) & -NativeLong.SIZE;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        closeSocket();
+    }
+
+    private void closeSocket() {
+        if (fd >= 0) {
+            try {
+                libc.close(fd);
+            } catch (LastErrorException ignored) {
+            }
+            fd = -1;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "notify socket " + socketName;
+    }
+}
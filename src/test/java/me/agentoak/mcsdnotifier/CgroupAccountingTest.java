@@ -0,0 +1,103 @@
+package me.agentoak.mcsdnotifier;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Parses {@code cpu.stat} and friends as written by the kernel, and samples them from a folder standing in for the
+ * cgroup.
+ */
+class CgroupAccountingTest {
+    private static final String CPU_STAT = "usage_usec 8000000\n" +
+                                               "user_usec 6000000\n" +
+                                               "system_usec 2000000\n" +
+                                               "core_sched.force_idle_usec 0\n" +
+                                               "nr_periods 400\n" +
+                                               "nr_throttled 20\n" +
+                                               "throttled_usec 900000\n" +
+                                               "nr_bursts 0\n" +
+                                               "burst_usec 0\n";
+
+    @TempDir
+    Path cgroup;
+
+    @Test
+    void parsesCpuStat() {
+        ByteBuffer buffer = buffer(CPU_STAT);
+        assertEquals(8000000, CgroupAccounting.parseField(buffer, key("usage_usec")));
+        assertEquals(400, CgroupAccounting.parseField(buffer, key("nr_periods")));
+        assertEquals(20, CgroupAccounting.parseField(buffer, key("nr_throttled")));
+        // Last line, without the trailing newline
+        assertEquals(0, CgroupAccounting.parseField(buffer(CPU_STAT.trim()), key("burst_usec")));
+    }
+
+    @Test
+    void keyMustMatchWholeName() {
+        ByteBuffer buffer = buffer(CPU_STAT);
+        // Prefix of user_usec and suffix of usage_usec, system_usec, ...
+        assertEquals(-1, CgroupAccounting.parseField(buffer, key("user")));
+        assertEquals(-1, CgroupAccounting.parseField(buffer, key("usec")));
+        // Without the cpu controller, there are no period lines
+        assertEquals(-1, CgroupAccounting.parseField(buffer("usage_usec 1\nuser_usec 1\n"), key("nr_periods")));
+        assertEquals(-1, CgroupAccounting.parseField(buffer(""), key("usage_usec")));
+    }
+
+    @Test
+    void parsesMemoryFiles() {
+        ByteBuffer events = buffer("low 0\nhigh 3\nmax 2\noom 1\noom_kill 1\noom_group_kill 0\n");
+        assertEquals(3, CgroupAccounting.parseField(events, key("high")));
+        assertEquals(2, CgroupAccounting.parseField(events, key("max")));
+        assertEquals(1, CgroupAccounting.parseField(events, key("oom_kill")));
+        assertEquals(4294967296L, CgroupAccounting.parseNumber(buffer("4294967296\n"), 0));
+        assertEquals(-1, CgroupAccounting.parseNumber(buffer("max\n"), 0));
+    }
+
+    @Test
+    void samplesRatesSinceLastSample() throws IOException {
+        write("cpu.stat", CPU_STAT);
+        write("memory.current", "1073741824\n");
+        write("memory.max", "max\n");
+        write("memory.events", "low 0\nhigh 3\nmax 0\noom 0\noom_kill 0\n");
+        CgroupAccounting accounting = new CgroupAccounting(StubServer.createPlugin(StubServer.create(),
+            cgroup.toFile()), cgroup);
+        assertEquals(-1, accounting.getStats().getCpuUsage(), 0);
+
+        // 2 CPUs busy and throttled in a quarter of the periods over the next 5 seconds
+        write("cpu.stat", CPU_STAT.replace("usage_usec 8000000", "usage_usec 18000000")
+                                  .replace("nr_periods 400", "nr_periods 450")
+                                  .replace("nr_throttled 20", "nr_throttled 32"));
+        write("memory.events", "low 0\nhigh 5\nmax 1\noom 0\noom_kill 0\n");
+        accounting.sample(System.nanoTime() + TimeUnit.SECONDS.toNanos(5));
+
+        CgroupStats stats = accounting.getStats();
+        assertEquals(2, stats.getCpuUsage(), 0.01);
+        assertEquals(0.24, stats.getThrottledRatio(), 0.001);
+        assertEquals(2.4, stats.getThrottledPeriods(), 0.01);
+        assertEquals(1073741824, stats.getMemoryUsed());
+        assertEquals(-1, stats.getMemoryLimit());
+        assertEquals(2, stats.getMemoryHighEvents());
+        assertEquals(1, stats.getMemoryMaxEvents());
+        assertEquals(0, stats.getOomKills());
+    }
+
+    private void write(String file, String content) throws IOException {
+        Files.write(cgroup.resolve(file), content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static ByteBuffer buffer(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] key(String name) {
+        return name.getBytes(StandardCharsets.US_ASCII);
+    }
+}
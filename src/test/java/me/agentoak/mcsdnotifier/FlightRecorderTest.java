@@ -0,0 +1,158 @@
+package me.agentoak.mcsdnotifier;
+
+import me.agentoak.mcsdnotifier.system.NotifyObserver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Writes records with {@link FlightRecorder} and reads them back with {@link FlightRecorder#decode(File, long)}.
+ */
+class FlightRecorderTest {
+    /**
+     * Room for the minimum of 64 records.
+     */
+    private static final long SIZE = 64 + 64 * 40;
+    /**
+     * Length of the {@code yyyy-MM-dd HH:mm:ss.SSS } timestamp in front of every line.
+     */
+    private static final int TIMESTAMP_LENGTH = 24;
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @TempDir
+    File folder;
+
+    @Test
+    void decodesLifecycleRecords() throws IOException {
+        FlightRecorder recorder = FlightRecorder.open(folder, SIZE, 4242);
+        recorder.sent(NotifyObserver.MAINPID | NotifyObserver.STATUS, 4242, 1);
+        recorder.startupFinished(System.nanoTime());
+        recorder.sent(NotifyObserver.EXTEND_TIMEOUT_USEC, 30_000_000, 1);
+        recorder.sent(NotifyObserver.WATCHDOG, 0, -111);
+        recorder.sent(NotifyObserver.WATCHDOG, 0, 0);
+        recorder.takedownDetected(false);
+        recorder.takedownDetected(true);
+        recorder.pluginDisabling("SomeVeryLongPluginName", System.nanoTime());
+        recorder.pluginDisabling("Äb", System.nanoTime());
+
+        assertEquals(Arrays.asList(
+            "recorder opened by pid 4242",
+            "sent MAINPID=4242 STATUS",
+            "first tick, startup finished",
+            "sent EXTEND_TIMEOUT_USEC=30000000",
+            "sent WATCHDOG (failed: errno 111)",
+            "sent WATCHDOG (no notify socket)",
+            "detected stop",
+            "detected reload",
+            "disabling plugin SomeVeryLongPlug...",
+            "disabling plugin ?b"
+        ), decode(60));
+    }
+
+    @Test
+    void summarizesNormalTicks() throws IOException {
+        FlightRecorder recorder = FlightRecorder.open(folder, SIZE, 1);
+        long time = System.nanoTime();
+        time = ticks(recorder, time, 20, 20_000);
+        time = ticks(recorder, time, 1, 180_000);
+        // Main thread stalled between ticks
+        ticks(recorder, time + TimeUnit.MILLISECONDS.toNanos(400), 10, 30_000);
+
+        assertEquals(Arrays.asList(
+            "recorder opened by pid 1",
+            "20 ticks, longest 20.0 ms",
+            "slow tick took 180.0 ms",
+            "tick started 580.0 ms after the previous one",
+            "10 ticks, longest 30.0 ms"
+        ), decode(60));
+    }
+
+    @Test
+    void decodesOnlyRecentSeconds() throws IOException {
+        FlightRecorder recorder = FlightRecorder.open(folder, SIZE, 1);
+        long time = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        recorder.pluginDisabling("Early", time);
+        recorder.pluginDisabling("Late", time + TimeUnit.SECONDS.toNanos(5));
+
+        assertEquals(Arrays.asList("disabling plugin Early", "disabling plugin Late"), decode(5));
+        assertEquals(Arrays.asList("disabling plugin Late"), decode(4));
+    }
+
+    @Test
+    void keepsNewestRecordsWhenFull() throws IOException {
+        FlightRecorder recorder = FlightRecorder.open(folder, SIZE, 1);
+        long time = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            recorder.pluginDisabling("P" + i, time + i);
+        }
+
+        List<String> lines = decode(60);
+        assertEquals(64, lines.size());
+        assertEquals("disabling plugin P136", lines.get(0));
+        assertEquals("disabling plugin P199", lines.get(63));
+    }
+
+    @Test
+    void keepsFileOfPreviousRun() throws IOException {
+        FlightRecorder.open(folder, SIZE, 1).pluginDisabling("BeforeReload", System.nanoTime());
+        // Same JVM and pid, i.e. a reload: the recording starts over in the same file
+        FlightRecorder.open(folder, SIZE, 1).pluginDisabling("AfterReload", System.nanoTime());
+        assertFalse(new File(folder, FlightRecorder.PREVIOUS_FILE_NAME).exists());
+        assertEquals(Arrays.asList("recorder opened by pid 1", "disabling plugin AfterReload"), decode(60));
+
+        // Different pid, i.e. a restart: the old recording is kept
+        FlightRecorder.open(folder, SIZE, 2);
+        File previous = new File(folder, FlightRecorder.PREVIOUS_FILE_NAME);
+        assertTrue(previous.isFile());
+        assertEquals(Arrays.asList("recorder opened by pid 1", "disabling plugin AfterReload"),
+            strip(FlightRecorder.decode(previous, 60)));
+        assertEquals(Arrays.asList("recorder opened by pid 2"), decode(60));
+    }
+
+    @Test
+    void rejectsOtherFiles() throws IOException {
+        File file = new File(folder, "other.bin");
+        Files.write(file.toPath(), new byte[128]);
+        assertThrows(IOException.class, () -> FlightRecorder.decode(file, 60));
+    }
+
+    /**
+     * Record ticks of the given duration, starting one {@link #TICK} apart.
+     *
+     * @param duration in µs
+     * @return start of the next tick
+     */
+    private static long ticks(FlightRecorder recorder, long start, int count, long duration) {
+        long time = start;
+        for (int i = 0; i < count; i++) {
+            recorder.tickStart(time);
+            recorder.tickEnd(time + TimeUnit.MICROSECONDS.toNanos(duration), duration);
+            time += Math.max(TICK, TimeUnit.MICROSECONDS.toNanos(duration));
+        }
+        return time;
+    }
+
+    private List<String> decode(long seconds) throws IOException {
+        return strip(FlightRecorder.decode(new File(folder, FlightRecorder.FILE_NAME), seconds));
+    }
+
+    private static List<String> strip(List<String> lines) {
+        List<String> texts = new ArrayList<>();
+        for (String line : lines) {
+            texts.add(line.substring(TIMESTAMP_LENGTH));
+        }
+        return texts;
+    }
+}
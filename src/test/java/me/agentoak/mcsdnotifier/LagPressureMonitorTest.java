@@ -0,0 +1,182 @@
+package me.agentoak.mcsdnotifier;
+
+import org.bukkit.event.Event;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Feeds simulated ticks into {@link LagPressureMonitor} and checks when the pressure rises and falls, with a watchdog
+ * interval of 10 seconds.
+ */
+class LagPressureMonitorTest {
+    private static final long WATCHDOG_INTERVAL = 10_000L;
+    private static final long TICK = 50L;
+
+    @TempDir
+    File dataFolder;
+
+    private final List<Event> events = new ArrayList<>();
+    /**
+     * {@link System#nanoTime()} of the next tick. Starts now, so ticks never look like they are still running.
+     */
+    private long time = System.nanoTime();
+
+    @Test
+    void risesRightAway() {
+        LagPressureMonitor monitor = newMonitor(true, WATCHDOG_INTERVAL);
+        ticks(monitor, 30, 10);
+        assertEquals(LagPressure.NORMAL, monitor.getPressure());
+        assertTrue(events.isEmpty(), "unexpected events " + changes());
+
+        // Budget usage of 160% passes the elevated and then the critical threshold within a few seconds
+        ticks(monitor, 80, 5);
+        assertEquals(LagPressure.CRITICAL, monitor.getPressure());
+        assertEquals(Arrays.asList("NORMAL->ELEVATED", "ELEVATED->CRITICAL"), changes());
+    }
+
+    @Test
+    void fallsOneLevelPerHold() {
+        LagPressureMonitor monitor = newMonitor(true, WATCHDOG_INTERVAL);
+        ticks(monitor, 80, 5);
+        events.clear();
+
+        // Below the critical exit threshold after about half a second, then held for 5 seconds
+        ticks(monitor, 30, 4);
+        assertEquals(LagPressure.CRITICAL, monitor.getPressure());
+        ticks(monitor, 30, 2);
+        assertEquals(LagPressure.ELEVATED, monitor.getPressure());
+        // The next level needs its own hold
+        ticks(monitor, 30, 4);
+        assertEquals(LagPressure.ELEVATED, monitor.getPressure());
+        ticks(monitor, 30, 2);
+        assertEquals(LagPressure.NORMAL, monitor.getPressure());
+        assertEquals(Arrays.asList("CRITICAL->ELEVATED", "ELEVATED->NORMAL"), changes());
+    }
+
+    @Test
+    void staysBetweenExitAndEntryThresholds() {
+        LagPressureMonitor monitor = newMonitor(true, WATCHDOG_INTERVAL);
+        // 82% of the budget, above the exit threshold of elevated but below its entry threshold
+        ticks(monitor, 41, 30);
+        assertEquals(LagPressure.NORMAL, monitor.getPressure());
+
+        ticks(monitor, 48, 5);
+        assertEquals(LagPressure.ELEVATED, monitor.getPressure());
+        ticks(monitor, 41, 30);
+        assertEquals(LagPressure.ELEVATED, monitor.getPressure());
+        assertEquals(Arrays.asList("NORMAL->ELEVATED"), changes());
+    }
+
+    @Test
+    void calmPeriodRestartsWhenTicksGetSlower() {
+        LagPressureMonitor monitor = newMonitor(true, WATCHDOG_INTERVAL);
+        ticks(monitor, 48, 5);
+        events.clear();
+
+        ticks(monitor, 30, 4);
+        // Back above the exit threshold, so the 4 calm seconds do not count
+        ticks(monitor, 45, 1);
+        ticks(monitor, 30, 4);
+        assertEquals(LagPressure.ELEVATED, monitor.getPressure());
+        ticks(monitor, 30, 2);
+        assertEquals(LagPressure.NORMAL, monitor.getPressure());
+        assertEquals(Arrays.asList("ELEVATED->NORMAL"), changes());
+    }
+
+    @Test
+    void stallRaisesByWatchdogMargin() {
+        LagPressureMonitor monitor = newMonitor(true, WATCHDOG_INTERVAL);
+        ticks(monitor, 30, 1);
+        // Main thread stalled between ticks, e.g. by a GC pause: 30% of the watchdog interval is elevated, 60%
+        // critical, even though the tick durations look fine
+        stall(3_000);
+        ticks(monitor, 30, 0);
+        assertEquals(LagPressure.ELEVATED, monitor.getPressure());
+        stall(6_000);
+        ticks(monitor, 30, 0);
+        assertEquals(LagPressure.CRITICAL, monitor.getPressure());
+        assertEquals(Arrays.asList("NORMAL->ELEVATED", "ELEVATED->CRITICAL"), changes());
+    }
+
+    @Test
+    void runningTickCountsWithoutEvent() {
+        LagPressureMonitor monitor = newMonitor(true, WATCHDOG_INTERVAL);
+        monitor.tickStarted(System.nanoTime() - TimeUnit.SECONDS.toNanos(6));
+        assertEquals(LagPressure.CRITICAL, monitor.getPressure());
+        assertTrue(events.isEmpty(), "unexpected events " + changes());
+    }
+
+    @Test
+    void withoutWatchdogOnlyBudgetCounts() {
+        LagPressureMonitor monitor = newMonitor(true, 0);
+        ticks(monitor, 30, 1);
+        stall(6_000);
+        ticks(monitor, 30, 0);
+        monitor.tickStarted(System.nanoTime() - TimeUnit.SECONDS.toNanos(6));
+        assertEquals(LagPressure.NORMAL, monitor.getPressure());
+        assertTrue(events.isEmpty(), "unexpected events " + changes());
+    }
+
+    @Test
+    void intervalsOnlyRiseOnceBehind() {
+        LagPressureMonitor monitor = newMonitor(false, WATCHDOG_INTERVAL);
+        // Without tick durations, a server keeping up shows intervals right at the budget
+        ticks(monitor, 45, 30);
+        assertEquals(LagPressure.NORMAL, monitor.getPressure());
+        // 18 TPS
+        ticks(monitor, 56, 5);
+        assertEquals(LagPressure.ELEVATED, monitor.getPressure());
+        ticks(monitor, 45, 8);
+        assertEquals(LagPressure.NORMAL, monitor.getPressure());
+        assertEquals(Arrays.asList("NORMAL->ELEVATED", "ELEVATED->NORMAL"), changes());
+    }
+
+    private LagPressureMonitor newMonitor(boolean tickDurations, long watchdogInterval) {
+        return new LagPressureMonitor(StubServer.createPlugin(StubServer.create(null, events), dataFolder),
+            new NotifyIntervals(watchdogInterval, TICK, TICK), tickDurations);
+    }
+
+    /**
+     * Simulate ticks that take the given time, one every {@link #TICK} ms or right after the previous one if they
+     * take longer.
+     *
+     * @param duration in ms
+     * @param seconds  how long to tick, at least one tick
+     */
+    private void ticks(LagPressureMonitor monitor, long duration, long seconds) {
+        long interval = TimeUnit.MILLISECONDS.toNanos(Math.max(TICK, duration));
+        long end = time + TimeUnit.SECONDS.toNanos(seconds);
+        do {
+            monitor.tickStarted(time);
+            monitor.tickEnded(time + TimeUnit.MILLISECONDS.toNanos(duration), TimeUnit.MILLISECONDS.toMicros(duration));
+            time += interval;
+        } while (time - end < 0);
+    }
+
+    /**
+     * Delay the next tick, with the main thread busy outside of ticks.
+     *
+     * @param duration in ms
+     */
+    private void stall(long duration) {
+        time += TimeUnit.MILLISECONDS.toNanos(duration);
+    }
+
+    private List<String> changes() {
+        List<String> changes = new ArrayList<>();
+        for (Event event : events) {
+            LagPressureEvent change = (LagPressureEvent) event;
+            changes.add(change.getPrevious() + "->" + change.getPressure());
+        }
+        return changes;
+    }
+}
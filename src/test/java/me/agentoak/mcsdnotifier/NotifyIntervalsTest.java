@@ -0,0 +1,49 @@
+package me.agentoak.mcsdnotifier;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks how {@link NotifyIntervals} derives the notify interval from the watchdog interval.
+ */
+class NotifyIntervalsTest {
+    @Test
+    void withoutWatchdogNotifiesEveryTenSeconds() {
+        NotifyIntervals intervals = NotifyIntervals.forWatchdog(0);
+        assertEquals(0, intervals.getWatchdogInterval());
+        assertEquals(10_000, intervals.getNotifyInterval());
+        assertTrue(intervals.isWatchdogAchievable());
+    }
+
+    @Test
+    void notifiesAtHalfTheWatchdogInterval() {
+        NotifyIntervals intervals = NotifyIntervals.forWatchdog(4_000_000);
+        assertEquals(4_000, intervals.getWatchdogInterval());
+        assertEquals(2_000, intervals.getNotifyInterval());
+        assertTrue(intervals.isWatchdogAchievable());
+    }
+
+    @Test
+    void notifyIntervalIsClamped() {
+        assertEquals(10_000, NotifyIntervals.forWatchdog(60_000_000).getNotifyInterval());
+        NotifyIntervals fast = NotifyIntervals.forWatchdog(60_000);
+        assertEquals(60, fast.getWatchdogInterval());
+        assertEquals(NotifyIntervals.TICK_INTERVAL, fast.getNotifyInterval());
+        assertFalse(fast.isWatchdogAchievable());
+        // Below 1 ms is rounded up instead of disabling the watchdog
+        assertEquals(1, NotifyIntervals.forWatchdog(500).getWatchdogInterval());
+    }
+
+    @Test
+    void statusIntervalIsAtLeastOneTick() {
+        NotifyIntervals intervals = NotifyIntervals.forWatchdog(4_000_000);
+        assertEquals(0, intervals.getStatusInterval());
+        assertEquals(NotifyIntervals.TICK_INTERVAL, intervals.withStatusInterval(0).getStatusInterval());
+        NotifyIntervals withStatus = intervals.withStatusInterval(5_000);
+        assertEquals(5_000, withStatus.getStatusInterval());
+        assertEquals(2_000, withStatus.getNotifyInterval());
+    }
+}
@@ -0,0 +1,233 @@
+package me.agentoak.mcsdnotifier;
+
+import com.sun.jna.Platform;
+import me.agentoak.mcsdnotifier.system.FakeServiceManager;
+import me.agentoak.mcsdnotifier.system.LibC;
+import me.agentoak.mcsdnotifier.system.NotifyField;
+import me.agentoak.mcsdnotifier.system.NotifyTransport;
+import me.agentoak.mcsdnotifier.system.SDNotify;
+import me.agentoak.mcsdnotifier.system.SocketNotifyTransport;
+import org.bukkit.plugin.Plugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs the notify path of the plugin (init, ticks with {@link NotifyListener} and {@link NotifySender}, stop) against
+ * a {@link FakeServiceManager} under simulated heavy tick load.
+ * <p>
+ * The plugin's {@code onLoad}/{@code onEnable} need a running server, so this wires up the same components they would,
+ * with a fixed status instead of the plugin's {@link ServerLifecycle}.
+ * <p>
+ * Asserts wall clock latencies under busy-wait load, which are unreliable on shared CI machines, so it only runs with
+ * the benchmark profile.
+ */
+@Tag("load")
+class NotifyLoadTest {
+    private static final long WATCHDOG_INTERVAL = 2_000L;
+    private static final long NOTIFY_INTERVAL = WATCHDOG_INTERVAL / 2;
+    private static final long TICK_INTERVAL = 50L;
+    /**
+     * In ms, how long ticks run under load. Long enough for a few lag spikes.
+     */
+    private static final long LOAD_DURATION = 10_000L;
+    /**
+     * In ms, longest simulated lag spike. Must stay below the watchdog interval minus the notify interval.
+     */
+    private static final long MAX_SPIKE = 800L;
+    /**
+     * In µs, how late the 99th percentile of messages may arrive after being sent.
+     */
+    private static final long MAX_LATENCY_P99 = 5_000L;
+    /**
+     * In ms, slack for scheduling on top of the notify interval and the longest spike.
+     */
+    private static final long PING_SLACK = 200L;
+    private static final int SUBMITTERS = 4;
+    private static final int SUBMISSIONS = 1_000;
+
+    @TempDir
+    File dataFolder;
+
+    private LibC libc;
+    private FakeServiceManager manager;
+    private NotifyTransport transport;
+    private SDNotify sdNotify;
+    private NotifySender sender;
+    private NotifyListener listener;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        assumeTrue(Platform.isLinux(), "Notify sockets are only supported on Linux");
+        libc = LibC.load();
+        manager = new FakeServiceManager("@mcsdnotifier-load-test-" + System.nanoTime(),
+            TimeUnit.MILLISECONDS.toMicros(WATCHDOG_INTERVAL)).start();
+
+        Plugin plugin = StubServer.createPlugin(StubServer.create(), dataFolder);
+        NotifyIntervals intervals = new NotifyIntervals(WATCHDOG_INTERVAL, NOTIFY_INTERVAL, NOTIFY_INTERVAL);
+
+        transport = manager.wrap(new SocketNotifyTransport(libc, manager.getAddress()));
+        sdNotify = new SDNotify(libc.getpid(), transport, TimeUnit.MILLISECONDS.toMicros(WATCHDOG_INTERVAL));
+        sdNotify.init(null);
+
+        sender = new NotifySender(plugin, sdNotify, intervals);
+        listener = new NotifyListener(plugin, new RunningLifecycle(), intervals, sdNotify, sender,
+            new RollingHistogram(2, 300, TimeUnit.SECONDS), new RollingHistogram(2, 300, TimeUnit.SECONDS), null, null);
+        sender.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) {
+            sender.stop();
+            transport.close();
+            manager.close();
+        }
+    }
+
+    @Test
+    void pingsArriveInTimeUnderLoad() {
+        runTicks(LOAD_DURATION);
+
+        assertTrue(manager.getErrors().isEmpty(), "protocol errors: " + manager.getErrors());
+        assertEquals(libc.getpid(), manager.getMainPid());
+        assertTrue(manager.isReady(), "READY=1 not received");
+        assertTrue(manager.getStatus() != null && manager.getStatus().startsWith("Running"),
+            "unexpected status: " + manager.getStatus());
+        assertEquals(0, manager.getWatchdogExpiredAt(), "watchdog expired under load");
+
+        RollingHistogram.Snapshot latency = manager.getLatency();
+        assertTrue(latency.getPercentile(99) <= MAX_LATENCY_P99,
+            "latency p99 " + latency.getPercentile(99) + " µs > " + MAX_LATENCY_P99 + " µs");
+        RollingHistogram.Snapshot intervals = manager.getPingIntervals();
+        assertTrue(intervals.getMax() <= TimeUnit.MILLISECONDS.toMicros(NOTIFY_INTERVAL + MAX_SPIKE + PING_SLACK),
+            "ping arrived " + intervals.getMax() / 1000 + " ms after the previous one");
+    }
+
+    @Test
+    void hungMainThreadStarvesWatchdog() {
+        runTicks(NOTIFY_INTERVAL);
+        assertTrue(manager.isReady(), "READY=1 not received");
+
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(WATCHDOG_INTERVAL + NOTIFY_INTERVAL + PING_SLACK));
+        assertNotEquals(0, manager.getWatchdogExpiredAt());
+    }
+
+    @Test
+    void submittedFieldsAreBatched() throws InterruptedException {
+        runTicks(TICK_INTERVAL * 4);
+        long messagesBefore = manager.getMessageCount();
+
+        // Fields other plugins submit from any thread must be merged into few messages
+        List<Thread> submitters = new ArrayList<>();
+        for (int i = 1; i <= SUBMITTERS; i++) {
+            long timeout = i;
+            Thread submitter = new Thread(() -> {
+                for (int j = 0; j < SUBMISSIONS; j++) {
+                    sender.submit(NotifyField.extendTimeout(timeout, TimeUnit.SECONDS));
+                    sender.submit(NotifyField.of("X_LOAD_TEST", Integer.toString(j)));
+                }
+            });
+            submitters.add(submitter);
+            submitter.start();
+        }
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+
+        assertTrue(manager.await(() -> manager.getExtendTimeoutUsec() > 0),
+            "submitted EXTEND_TIMEOUT_USEC not received");
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(PING_SLACK));
+        long messages = manager.getMessageCount() - messagesBefore;
+        assertTrue(messages > 0 && messages < SUBMITTERS * SUBMISSIONS,
+            "submitted fields were not batched: " + messages + " messages");
+        assertTrue(manager.getErrors().isEmpty(), "protocol errors: " + manager.getErrors());
+    }
+
+    @Test
+    void stopSendsStopping() {
+        runTicks(TICK_INTERVAL * 4);
+        sender.stop();
+        sdNotify.stopping(null);
+
+        assertTrue(manager.await(manager::isStopping), "STOPPING=1 not received");
+        assertTrue(manager.getErrors().isEmpty(), "protocol errors: " + manager.getErrors());
+    }
+
+    /**
+     * Heavy load: most ticks use 20-49 ms, some overrun, and every few seconds there is a lag spike.
+     */
+    private void runTicks(long duration) {
+        Random random = new Random(1);
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(duration);
+        while (System.nanoTime() < end) {
+            long tickStart = System.nanoTime();
+            listener.onTickStart(tickStart);
+
+            long work = 20 + random.nextInt(30);
+            int roll = random.nextInt(1000);
+            if (roll < 5) {
+                work = 200 + random.nextInt((int) (MAX_SPIKE - 200));
+            } else if (roll < 100) {
+                work = 50 + random.nextInt(100);
+            }
+            busyWait(tickStart + TimeUnit.MILLISECONDS.toNanos(work));
+            long tickEnd = System.nanoTime();
+            listener.onTickEnd(tickEnd, TimeUnit.NANOSECONDS.toMicros(tickEnd - tickStart));
+            LockSupport.parkNanos(tickStart + TimeUnit.MILLISECONDS.toNanos(TICK_INTERVAL) - System.nanoTime());
+        }
+    }
+
+    /**
+     * Sends a fixed status, like the plugin would with the basic {@link StatusProvider} once started.
+     */
+    private static final class RunningLifecycle implements ServerLifecycle {
+        @Override
+        public void startupFinished(long tickTime) {
+        }
+
+        @Override
+        public void updateStatus(NotifySender sender) {
+            sender.setStatus(buildStatus().get());
+        }
+
+        @Override
+        public Optional<String> buildStatus() {
+            return Optional.of("Running");
+        }
+
+        @Override
+        public void pluginDisabling(String name, long now) {
+        }
+
+        @Override
+        public void takedown() {
+        }
+
+        @Override
+        public void stopping() {
+        }
+    }
+
+    private static void busyWait(long until) {
+        // Simulates tick work that keeps the main thread busy, so it must not sleep
+        while (System.nanoTime() < until) {
+            Thread.yield();
+        }
+    }
+}
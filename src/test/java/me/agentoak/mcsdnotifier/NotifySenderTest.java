@@ -0,0 +1,63 @@
+package me.agentoak.mcsdnotifier;
+
+import me.agentoak.mcsdnotifier.system.NotifyField;
+import me.agentoak.mcsdnotifier.system.NullTransport;
+import me.agentoak.mcsdnotifier.system.SDNotify;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Checks the bound on fields other plugins {@link NotifySender#submit(NotifyField) submit}.
+ */
+class NotifySenderTest {
+    private static final int MAX_SUBMITTED = 1024;
+    private static final int SUBMITTERS = 8;
+
+    @TempDir
+    File dataFolder;
+
+    @Test
+    void submittedFieldsAreBounded() throws InterruptedException {
+        // Not started, so nothing drains the queue
+        NotifySender sender = newSender();
+        AtomicInteger accepted = new AtomicInteger();
+        List<Thread> submitters = new ArrayList<>();
+        for (int i = 0; i < SUBMITTERS; i++) {
+            Thread submitter = new Thread(() -> {
+                for (int j = 0; j < MAX_SUBMITTED; j++) {
+                    if (sender.submit(NotifyField.of("X_TEST", Integer.toString(j)))) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+            submitters.add(submitter);
+            submitter.start();
+        }
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+
+        assertEquals(MAX_SUBMITTED, accepted.get());
+        assertFalse(sender.submit(NotifyField.of("X_TEST", "full")));
+    }
+
+    @Test
+    void stoppedSenderRejectsFields() {
+        NotifySender sender = newSender();
+        sender.stop();
+        assertFalse(sender.submit(NotifyField.of("X_TEST", "stopped")));
+    }
+
+    private NotifySender newSender() {
+        return new NotifySender(StubServer.createPlugin(StubServer.create(), dataFolder),
+            new SDNotify(1234, new NullTransport(), 0), new NotifyIntervals(0, 10_000, 10_000));
+    }
+}
@@ -0,0 +1,134 @@
+package me.agentoak.mcsdnotifier;
+
+import com.sun.jna.Platform;
+import me.agentoak.mcsdnotifier.system.FakeServiceManager;
+import me.agentoak.mcsdnotifier.system.LibC;
+import me.agentoak.mcsdnotifier.system.NotifyTransport;
+import me.agentoak.mcsdnotifier.system.SDNotify;
+import me.agentoak.mcsdnotifier.system.SocketNotifyTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks that {@link ProgressMonitor} extends the timeout only while it is active and sees chunk loads or region file
+ * writes, against a {@link FakeServiceManager}.
+ */
+class ProgressMonitorTest {
+    /**
+     * In ms, shortest timeout, so the monitor checks once a second.
+     */
+    private static final long TIMEOUT = 1_000L;
+    /**
+     * In ms, how long to wait for an extension. A few checks of the monitor.
+     */
+    private static final long WAIT = 3_500L;
+    private static final long PROGRESS_INTERVAL = 100L;
+
+    @TempDir
+    File worldContainer;
+
+    private FakeServiceManager manager;
+    private NotifyTransport transport;
+    private ProgressMonitor monitor;
+    private File regionFile;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        assumeTrue(Platform.isLinux(), "Notify sockets are only supported on Linux");
+        LibC libc = LibC.load();
+        manager = new FakeServiceManager("@mcsdnotifier-progress-test-" + System.nanoTime(), 0).start();
+        transport = new SocketNotifyTransport(libc, manager.getAddress());
+        SDNotify sdNotify = new SDNotify(libc.getpid(), transport, 0);
+
+        File world = new File(worldContainer, "world");
+        File region = new File(world, "region");
+        assertTrue(region.mkdirs());
+        Files.write(new File(world, "level.dat").toPath(), new byte[]{0});
+        regionFile = new File(region, "r.0.0.mca");
+        Files.write(regionFile.toPath(), new byte[4096]);
+
+        monitor = new ProgressMonitor(StubServer.createPlugin(StubServer.create(worldContainer, null), worldContainer),
+            sdNotify, TIMEOUT);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) {
+            monitor.stop();
+            transport.close();
+            manager.close();
+        }
+    }
+
+    @Test
+    void chunkLoadsExtendTimeout() {
+        monitor.start();
+        assertTrue(progressUntilExtended(() -> monitor.onChunkLoad(null)), "EXTEND_TIMEOUT_USEC not received");
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(TIMEOUT), manager.getExtendTimeoutUsec());
+        assertTrue(manager.getErrors().isEmpty(), "protocol errors: " + manager.getErrors());
+    }
+
+    @Test
+    void regionWritesExtendTimeout() {
+        monitor.start();
+        assertTrue(progressUntilExtended(this::writeRegion), "EXTEND_TIMEOUT_USEC not received");
+    }
+
+    @Test
+    void noProgressDoesNotExtend() {
+        monitor.start();
+        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(WAIT));
+        assertEquals(0, manager.getMessageCount());
+    }
+
+    @Test
+    void pausedMonitorDoesNotExtend() {
+        monitor.setActive(false);
+        monitor.start();
+        assertFalse(progressUntilExtended(() -> monitor.onChunkLoad(null)), "extended while paused");
+        assertEquals(0, manager.getMessageCount());
+
+        monitor.setActive(true);
+        assertTrue(progressUntilExtended(() -> monitor.onChunkLoad(null)), "EXTEND_TIMEOUT_USEC not received");
+    }
+
+    /**
+     * Make progress every {@link #PROGRESS_INTERVAL} until the timeout was extended or {@link #WAIT} passed.
+     *
+     * @return whether the timeout was extended
+     */
+    private boolean progressUntilExtended(Runnable progress) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(WAIT);
+        while (manager.getExtendTimeoutUsec() == 0) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            progress.run();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(PROGRESS_INTERVAL));
+        }
+        return true;
+    }
+
+    private void writeRegion() {
+        try {
+            Files.write(regionFile.toPath(), new byte[4096], StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
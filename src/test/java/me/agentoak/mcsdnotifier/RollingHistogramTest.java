@@ -0,0 +1,125 @@
+package me.agentoak.mcsdnotifier;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the log-linear bucket boundaries, clamping and the rolling window of {@link RollingHistogram}.
+ */
+class RollingHistogramTest {
+    private static final long MAX_VALUE = (1L << 27) - 1;
+    /**
+     * Long slots, so the tests do not cross into the next slot while running.
+     */
+    private static final long SLOT_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    void bucketsAreExactBelowEight() {
+        for (int value = 0; value < 8; value++) {
+            assertEquals(value, RollingHistogram.bucketIndex(value));
+            assertEquals(value, RollingHistogram.bucketUpperBound(value));
+        }
+        assertEquals(8, RollingHistogram.bucketIndex(8));
+    }
+
+    @Test
+    void bucketsAreContiguous() {
+        for (int index = 0; index < RollingHistogram.BUCKETS; index++) {
+            long upper = RollingHistogram.bucketUpperBound(index);
+            assertEquals(index, RollingHistogram.bucketIndex(upper), "upper bound of bucket " + index);
+            if (index + 1 < RollingHistogram.BUCKETS) {
+                assertEquals(index + 1, RollingHistogram.bucketIndex(upper + 1), "value after bucket " + index);
+            }
+        }
+        assertEquals(MAX_VALUE, RollingHistogram.bucketUpperBound(RollingHistogram.BUCKETS - 1));
+    }
+
+    @Test
+    void bucketsSplitPowersOfTwoIntoEight() {
+        // 1024..2047 is split into buckets of 128
+        assertEquals(RollingHistogram.bucketIndex(1024), RollingHistogram.bucketIndex(1151));
+        assertEquals(RollingHistogram.bucketIndex(1024) + 1, RollingHistogram.bucketIndex(1152));
+        assertEquals(RollingHistogram.bucketIndex(1024) + 7, RollingHistogram.bucketIndex(2047));
+        assertEquals(2047, RollingHistogram.bucketUpperBound(RollingHistogram.bucketIndex(2047)));
+    }
+
+    @Test
+    void valuesOutOfRangeAreClamped() {
+        RollingHistogram histogram = new RollingHistogram(1, 3, TimeUnit.MINUTES);
+        long now = System.nanoTime();
+        histogram.record(Long.MAX_VALUE, now);
+        histogram.record(-5, now);
+
+        RollingHistogram.Snapshot snapshot = histogram.snapshot(1, TimeUnit.MINUTES);
+        assertEquals(2, snapshot.getCount());
+        assertEquals(MAX_VALUE, snapshot.getMax());
+        assertEquals(MAX_VALUE, snapshot.getTotal());
+        assertEquals(0, snapshot.getPercentile(50));
+        assertEquals(MAX_VALUE, snapshot.getPercentile(100));
+    }
+
+    @Test
+    void percentilesStayWithinBucketPrecision() {
+        RollingHistogram histogram = new RollingHistogram(1, 3, TimeUnit.MINUTES);
+        long now = System.nanoTime();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value, now);
+        }
+
+        RollingHistogram.Snapshot snapshot = histogram.snapshot(1, TimeUnit.MINUTES);
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500.5, snapshot.getMean(), 0);
+        assertEquals(1000, snapshot.getMax());
+        for (int percentile : new int[]{1, 50, 90, 99}) {
+            long exact = percentile * 10L;
+            long reported = snapshot.getPercentile(percentile);
+            assertTrue(reported >= exact && reported <= exact * 1.125,
+                "p" + percentile + " " + reported + " not within 12.5% above " + exact);
+        }
+        assertEquals(1000, snapshot.getPercentile(100));
+    }
+
+    @Test
+    void emptySnapshotIsZero() {
+        RollingHistogram.Snapshot snapshot = new RollingHistogram(1, 3, TimeUnit.MINUTES).snapshot(3, TimeUnit.MINUTES);
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getMean(), 0);
+        assertEquals(0, snapshot.getPercentile(99));
+    }
+
+    @Test
+    void olderSlotsLeaveTheWindow() {
+        RollingHistogram histogram = new RollingHistogram(1, 3, TimeUnit.MINUTES);
+        long now = System.nanoTime();
+        histogram.record(1000, now - 2 * SLOT_NANOS);
+        histogram.record(10, now);
+
+        RollingHistogram.Snapshot recent = histogram.snapshot(1, TimeUnit.MINUTES);
+        assertEquals(1, recent.getCount());
+        assertEquals(10, recent.getMax());
+
+        RollingHistogram.Snapshot all = histogram.snapshot(3, TimeUnit.MINUTES);
+        assertEquals(2, all.getCount());
+        assertEquals(1000, all.getMax());
+    }
+
+    @Test
+    void reusedSlotStartsOver() {
+        // 3 minutes window plus the current slot, so the slot of 4 minutes ago is reused now
+        RollingHistogram histogram = new RollingHistogram(1, 3, TimeUnit.MINUTES);
+        long now = System.nanoTime();
+        histogram.record(1000, now - 4 * SLOT_NANOS);
+        histogram.record(10, now);
+
+        RollingHistogram.Snapshot snapshot = histogram.snapshot(10, TimeUnit.MINUTES);
+        assertEquals(1, snapshot.getCount());
+        assertEquals(10, snapshot.getTotal());
+        assertEquals(10, snapshot.getMax());
+        assertEquals(10, snapshot.getPercentile(100));
+    }
+}
@@ -0,0 +1,138 @@
+package me.agentoak.mcsdnotifier;
+
+import org.bukkit.Server;
+import org.bukkit.event.Event;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+import org.bukkit.plugin.ServicesManager;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * {@link Server} and {@link Plugin} stand-ins for tests and benchmarks, implemented with {@link Proxy} so they do not
+ * depend on the exact API version. Methods that are not stubbed return {@code null} or a zero value.
+ */
+final class StubServer {
+    private static final int PLAYERS = 12;
+    private static final int MAX_PLAYERS = 20;
+    private static final int PLUGINS = 30;
+    private static final int WORLDS = 3;
+
+    private StubServer() {
+    }
+
+    static Server create() {
+        return create(null, null);
+    }
+
+    /**
+     * @param worldContainer folder the worlds are in, may be {@code null} if not needed
+     * @param calledEvents   receives the events passed to {@link PluginManager#callEvent(Event)}, may be {@code null}
+     */
+    static Server create(File worldContainer, List<Event> calledEvents) {
+        Plugin[] plugins = new Plugin[PLUGINS];
+        PluginManager pluginManager = proxy(PluginManager.class, (method, args) -> {
+            if ("callEvent".equals(method.getName()) && calledEvents != null) {
+                calledEvents.add((Event) args[0]);
+            }
+            return "getPlugins".equals(method.getName()) ? plugins : null;
+        });
+        ServicesManager servicesManager = proxy(ServicesManager.class, (method, args) -> null);
+        Logger logger = Logger.getLogger("StubServer");
+        double[] tps = {19.98, 20.0, 20.0};
+
+        return proxy(Server.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return "Paper";
+                case "getVersion":
+                    return "git-Paper-794 (MC: 1.16.5)";
+                case "getOnlinePlayers":
+                    return Collections.nCopies(PLAYERS, null);
+                case "getMaxPlayers":
+                    return MAX_PLAYERS;
+                case "getPluginManager":
+                    return pluginManager;
+                case "getServicesManager":
+                    return servicesManager;
+                case "getWorlds":
+                    return Collections.nCopies(WORLDS, null);
+                case "getLogger":
+                    return logger;
+                case "getTPS":
+                    return tps.clone();
+                case "isStopping":
+                    return false;
+                case "getWorldContainer":
+                    return worldContainer;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    /**
+     * @return enabled plugin named MCSDNotifier on the given server
+     */
+    static Plugin createPlugin(Server server, File dataFolder) {
+        Logger logger = Logger.getLogger("MCSDNotifier");
+        return proxy(Plugin.class, (method, args) -> {
+            switch (method.getName()) {
+                case "getName":
+                    return "MCSDNotifier";
+                case "getServer":
+                    return server;
+                case "getLogger":
+                    return logger;
+                case "getDataFolder":
+                    return dataFolder;
+                case "isEnabled":
+                    return true;
+                default:
+                    return null;
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface Handler {
+        Object invoke(Method method, Object[] args);
+    }
+
+    private static <T> T proxy(Class<T> type, Handler handler) {
+        return type.cast(Proxy.newProxyInstance(StubServer.class.getClassLoader(), new Class<?>[]{type},
+            (proxy, method, args) -> {
+                Object result = handler.invoke(method, args);
+                if (result == null && method.getReturnType().isPrimitive()) {
+                    return defaultValue(method.getReturnType());
+                }
+                return result;
+            }));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == void.class) {
+            return null;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == float.class) {
+            return 0F;
+        } else if (type == double.class) {
+            return 0D;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,468 @@
+package me.agentoak.mcsdnotifier.system;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Library;
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Platform;
+import me.agentoak.mcsdnotifier.RollingHistogram;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Stand-in for the notify socket of systemd, for testing the notify protocol without a real service manager.
+ * <p>
+ * Binds an {@code AF_UNIX} datagram socket (path or abstract {@code @} address), parses and validates every datagram
+ * like systemd does, and enforces the watchdog: if no {@code WATCHDOG=1} arrives within the watchdog interval while
+ * the service is not stopping, the expiry is recorded (where systemd would send {@code WatchdogSignal}). File
+ * descriptors passed with {@code FDSTORE=1} are kept open like in systemd's file descriptor store.
+ * <p>
+ * Send-to-receive latency is measured for transports wrapped with {@link #wrap(NotifyTransport)}. Intervals between
+ * watchdog pings are recorded to measure ping jitter.
+ */
+public final class FakeServiceManager implements AutoCloseable {
+    private static final int SOL_SOCKET = 1;
+    private static final int SO_RCVTIMEO = 20;
+    private static final int EAGAIN = 11;
+    private static final int MSG_CMSG_CLOEXEC = 0x40000000;
+    private static final long NSEC_PER_USEC = 1_000L;
+    /**
+     * In ms, how often the receiver thread checks the watchdog deadline while no messages arrive.
+     */
+    private static final long POLL_INTERVAL = 10L;
+    /**
+     * In ms, how long {@link #await(BooleanSupplier)} waits for messages to arrive.
+     */
+    private static final long AWAIT_TIMEOUT = 1_000L;
+    /**
+     * Room for up to this many descriptors per message.
+     */
+    private static final int MAX_FDS = 64;
+    private static final int CMSGHDR_SIZE = NativeLong.SIZE + 4 + 4;
+
+    interface ReceiverLibC extends Library {
+        int socket(int domain, int type, int protocol) throws LastErrorException;
+
+        int bind(int sockfd, byte[] addr, int addrlen) throws LastErrorException;
+
+        int setsockopt(int sockfd, int level, int optname, byte[] optval, int optlen) throws LastErrorException;
+
+        NativeLong recvmsg(int sockfd, LibC.Msghdr msg, int flags) throws LastErrorException;
+
+        int close(int fd) throws LastErrorException;
+    }
+
+    private final String address;
+    private final long watchdogNanos;
+    private final ReceiverLibC libc;
+    private final int fd;
+    private final Thread thread;
+    private final Queue<Long> sendTimes = new ConcurrentLinkedQueue<>();
+
+    private final RollingHistogram latency = new RollingHistogram(10, 600, TimeUnit.SECONDS);
+    private final RollingHistogram pingIntervals = new RollingHistogram(10, 600, TimeUnit.SECONDS);
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, List<Integer>> fdStore = Collections.synchronizedMap(new HashMap<>());
+
+    private volatile boolean running = true;
+    private volatile int mainPid;
+    private volatile boolean ready;
+    private volatile boolean stopping;
+    private volatile String status;
+    private volatile long extendTimeoutUsec;
+    private volatile long messages;
+    private volatile long watchdogExpiredAt;
+
+    private long lastPing;
+    private boolean fdStoreRequested;
+    private boolean fdStoreRemoveRequested;
+    private String fdName;
+
+    /**
+     * @param address      socket path or abstract socket name prefixed with {@code @}
+     * @param watchdogUsec watchdog interval to enforce, 0 to disable
+     */
+    public FakeServiceManager(String address, long watchdogUsec) throws SDNotifyException {
+        this.address = address;
+        this.watchdogNanos = TimeUnit.MICROSECONDS.toNanos(watchdogUsec);
+        this.libc = Native.loadLibrary(Platform.C_LIBRARY_NAME, ReceiverLibC.class);
+
+        byte[] sockaddr = SocketNotifyTransport.buildAddress(address);
+        fd = libc.socket(LibC.AF_UNIX, LibC.SOCK_DGRAM | LibC.SOCK_CLOEXEC, 0);
+        libc.bind(fd, sockaddr, sockaddr.length);
+
+        // struct timeval, so recv wakes up regularly to check the watchdog
+        ByteBuffer timeval = ByteBuffer.allocate(Native.LONG_SIZE * 2).order(ByteOrder.nativeOrder());
+        if (Native.LONG_SIZE == 8) {
+            timeval.putLong(0).putLong(TimeUnit.MILLISECONDS.toMicros(POLL_INTERVAL));
+        } else {
+            timeval.putInt(0).putInt((int) TimeUnit.MILLISECONDS.toMicros(POLL_INTERVAL));
+        }
+        libc.setsockopt(fd, SOL_SOCKET, SO_RCVTIMEO, timeval.array(), timeval.capacity());
+
+        thread = new Thread(this::receive, "FakeServiceManager");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Start receiving. Like systemd, the watchdog starts counting when the service is started.
+     */
+    public FakeServiceManager start() {
+        lastPing = System.nanoTime();
+        thread.start();
+        return this;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    /**
+     * Wrap a transport so the time of each send is recorded to measure latency. Must be used for all messages sent to
+     * this service manager, or latencies will be attributed to the wrong messages.
+     */
+    public NotifyTransport wrap(NotifyTransport transport) {
+        return new NotifyTransport() {
+            @Override
+            public int send(ByteBuffer message) {
+                sendTimes.add(System.nanoTime());
+                return transport.send(message);
+            }
+
+            @Override
+            public int send(ByteBuffer message, int[] fds) {
+                sendTimes.add(System.nanoTime());
+                return transport.send(message, fds);
+            }
+
+            @Override
+            public void close() {
+                transport.close();
+            }
+        };
+    }
+
+    private void receive() {
+        byte[] buffer = new byte[NotifyMessage.MAX_SIZE + 1];
+        Memory data = new Memory(buffer.length);
+        Memory control = new Memory(cmsgAlign(CMSGHDR_SIZE) + MAX_FDS * 4);
+        LibC.Iovec iovec = new LibC.Iovec();
+        iovec.iov_base = data;
+        iovec.iov_len = new NativeLong(data.size());
+        iovec.write();
+        LibC.Msghdr msghdr = new LibC.Msghdr();
+        msghdr.msg_iov = iovec.getPointer();
+        msghdr.msg_iovlen = new NativeLong(1);
+        msghdr.msg_control = control;
+
+        while (running) {
+            int received;
+            try {
+                msghdr.msg_controllen = new NativeLong(control.size());
+                received = libc.recvmsg(fd, msghdr, MSG_CMSG_CLOEXEC).intValue();
+            } catch (LastErrorException e) {
+                if (e.getErrorCode() != EAGAIN && running) {
+                    errors.add("recv() failed: errno=" + e.getErrorCode());
+                }
+                checkWatchdog(System.nanoTime());
+                continue;
+            }
+
+            long now = System.nanoTime();
+            Long sent = sendTimes.poll();
+            if (sent != null) {
+                latency.record((now - sent) / NSEC_PER_USEC, now);
+            }
+            if (received > NotifyMessage.MAX_SIZE) {
+                errors.add("Message too long: " + received + " bytes");
+            }
+            data.read(0, buffer, 0, Math.min(received, buffer.length));
+            fdStoreRequested = false;
+            fdStoreRemoveRequested = false;
+            fdName = "stored";
+            handle(buffer, Math.min(received, NotifyMessage.MAX_SIZE), now);
+            handleFds(receivedFds(control, msghdr.msg_controllen.intValue()));
+            // Counted once handled, so awaiting the count also awaits the effects of the message
+            messages++;
+            checkWatchdog(now);
+        }
+    }
+
+    private static int cmsgAlign(int length) {
+        return (length + NativeLong.SIZE - 1) & -NativeLong.SIZE;
+    }
+
+    /**
+     * Parse {@code SCM_RIGHTS} control messages.
+     */
+    private static List<Integer> receivedFds(Memory control, int controlLength) {
+        List<Integer> fds = new ArrayList<>();
+        int offset = 0;
+        while (offset + CMSGHDR_SIZE <= controlLength) {
+            int length = (int) control.getNativeLong(offset).longValue();
+            if (length < CMSGHDR_SIZE) {
+                break;
+            }
+            if (control.getInt(offset + NativeLong.SIZE) == LibC.SOL_SOCKET &&
+                    control.getInt(offset + NativeLong.SIZE + 4) == LibC.SCM_RIGHTS) {
+                int dataOffset = offset + cmsgAlign(CMSGHDR_SIZE);
+                for (int i = 0; i < (length - cmsgAlign(CMSGHDR_SIZE)) / 4; i++) {
+                    fds.add(control.getInt(dataOffset + i * 4));
+                }
+            }
+            offset += cmsgAlign(length);
+        }
+        return fds;
+    }
+
+    private void handleFds(List<Integer> fds) {
+        if (fdStoreRemoveRequested) {
+            List<Integer> removed = fdStore.remove(fdName);
+            if (removed != null) {
+                removed.forEach(libc::close);
+            }
+        }
+        if (fdStoreRequested) {
+            if (fds.isEmpty()) {
+                errors.add("FDSTORE=1 without file descriptors");
+            }
+            fdStore.computeIfAbsent(fdName, name -> new ArrayList<>()).addAll(fds);
+        } else if (!fds.isEmpty()) {
+            // systemd closes descriptors it did not ask for
+            errors.add("Got " + fds.size() + " file descriptors without FDSTORE=1");
+            fds.forEach(libc::close);
+        }
+    }
+
+    private void handle(byte[] buffer, int length, long now) {
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == 0) {
+                // systemd ignores the whole message
+                errors.add("Message with embedded NUL bytes");
+                return;
+            }
+        }
+
+        String message;
+        try {
+            message = StandardCharsets.UTF_8.newDecoder()
+                          .onMalformedInput(CodingErrorAction.REPORT)
+                          .decode(ByteBuffer.wrap(buffer, 0, length)).toString();
+        } catch (CharacterCodingException e) {
+            errors.add("Message is not valid UTF-8");
+            return;
+        }
+
+        for (String line : message.split("\n")) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            int separator = line.indexOf('=');
+            if (separator <= 0) {
+                errors.add("Not an assignment: " + line);
+                continue;
+            }
+            handle(line.substring(0, separator), line.substring(separator + 1), now);
+        }
+    }
+
+    private void handle(String key, String value, long now) {
+        switch (key) {
+            case "READY":
+                expectOne(key, value);
+                ready = true;
+                break;
+            case "RELOADING":
+                expectOne(key, value);
+                ready = false;
+                break;
+            case "STOPPING":
+                expectOne(key, value);
+                stopping = true;
+                break;
+            case "WATCHDOG":
+                if ("trigger".equals(value)) {
+                    watchdogExpiredAt = now;
+                } else {
+                    expectOne(key, value);
+                    pingIntervals.record((now - lastPing) / NSEC_PER_USEC, now);
+                    lastPing = now;
+                }
+                break;
+            case "STATUS":
+                status = value;
+                break;
+            case "MAINPID":
+                mainPid = (int) expectNumber(key, value);
+                if (mainPid <= 0) {
+                    errors.add("Invalid MAINPID: " + value);
+                }
+                break;
+            case "NOTIFYACCESS":
+                if (!"none".equals(value) && !"main".equals(value) && !"exec".equals(value) && !"all".equals(value)) {
+                    errors.add("Invalid NOTIFYACCESS: " + value);
+                }
+                break;
+            case "EXTEND_TIMEOUT_USEC":
+                extendTimeoutUsec = expectNumber(key, value);
+                break;
+            case "WATCHDOG_USEC":
+            case "MONOTONIC_USEC":
+            case "ERRNO":
+                expectNumber(key, value);
+                break;
+            case "FDSTORE":
+                expectOne(key, value);
+                fdStoreRequested = true;
+                break;
+            case "FDSTOREREMOVE":
+                expectOne(key, value);
+                fdStoreRemoveRequested = true;
+                break;
+            case "FDNAME":
+                if (value.isEmpty() || value.length() > 255 || value.contains(":")) {
+                    errors.add("Invalid FDNAME: " + value);
+                }
+                fdName = value;
+                break;
+            case "BUSERROR":
+            case "FDPOLL":
+                break;
+            default:
+                // sd_notify(3) reserves the X_ prefix for assignments of the service itself
+                if (!key.startsWith("X_")) {
+                    errors.add("Unknown assignment: " + key + "=" + value);
+                }
+        }
+    }
+
+    private void expectOne(String key, String value) {
+        if (!"1".equals(value)) {
+            errors.add("Expected " + key + "=1, got " + key + "=" + value);
+        }
+    }
+
+    private long expectNumber(String key, String value) {
+        try {
+            return Long.parseUnsignedLong(value);
+        } catch (NumberFormatException e) {
+            errors.add("Expected number for " + key + ", got " + value);
+            return -1;
+        }
+    }
+
+    private void checkWatchdog(long now) {
+        if (watchdogNanos > 0 && !stopping && watchdogExpiredAt == 0 && now - lastPing > watchdogNanos) {
+            watchdogExpiredAt = now;
+        }
+    }
+
+    /**
+     * Wait until the receiver thread has handled the messages a condition checks for, e.g. {@code manager::isReady}.
+     *
+     * @return false if the condition did not become true within a second
+     */
+    public boolean await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AWAIT_TIMEOUT);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                return false;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        return true;
+    }
+
+    /**
+     * Protocol violations seen so far.
+     */
+    public List<String> getErrors() {
+        synchronized (errors) {
+            return new ArrayList<>(errors);
+        }
+    }
+
+    /**
+     * {@link System#nanoTime()} when the watchdog expired (i.e. the service would have been killed), 0 if it did not.
+     */
+    public long getWatchdogExpiredAt() {
+        return watchdogExpiredAt;
+    }
+
+    public int getMainPid() {
+        return mainPid;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean isStopping() {
+        return stopping;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public long getExtendTimeoutUsec() {
+        return extendTimeoutUsec;
+    }
+
+    /**
+     * Number of descriptors in the file descriptor store under the given name.
+     */
+    public int getStoredFdCount(String name) {
+        List<Integer> fds = fdStore.get(name);
+        return fds == null ? 0 : fds.size();
+    }
+
+    public long getMessageCount() {
+        return messages;
+    }
+
+    /**
+     * In µs, time from send to receive of each message sent through a {@link #wrap(NotifyTransport) wrapped}
+     * transport.
+     */
+    public RollingHistogram.Snapshot getLatency() {
+        return latency.snapshot(600, TimeUnit.SECONDS);
+    }
+
+    /**
+     * In µs, time between consecutive watchdog pings.
+     */
+    public RollingHistogram.Snapshot getPingIntervals() {
+        return pingIntervals.snapshot(600, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(POLL_INTERVAL * 10);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        libc.close(fd);
+        synchronized (fdStore) {
+            fdStore.values().forEach(fds -> fds.forEach(libc::close));
+            fdStore.clear();
+        }
+    }
+}
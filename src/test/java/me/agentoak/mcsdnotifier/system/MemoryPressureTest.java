@@ -0,0 +1,125 @@
+package me.agentoak.mcsdnotifier.system;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Watches a FIFO or regular file in place of the cgroup's {@code memory.pressure}, like systemd allows with
+ * {@code $MEMORY_PRESSURE_WATCH}.
+ */
+class MemoryPressureTest {
+    private static final String TRIGGER = "some 150000 1000000\0";
+
+    interface FifoLibC extends Library {
+        int mkfifo(String pathname, int mode) throws LastErrorException;
+    }
+
+    @TempDir
+    Path folder;
+
+    private LibC libc;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(Platform.isLinux(), "Memory pressure is only supported on Linux");
+        libc = LibC.load();
+    }
+
+    @Test
+    void fifoSignalsPressureWhenWritten() throws Exception {
+        Path fifo = folder.resolve("memory.pressure");
+        Native.loadLibrary(Platform.C_LIBRARY_NAME, FifoLibC.class).mkfifo(fifo.toString(), 0600);
+        MemoryPressure pressure = create(fifo);
+        pressure.open();
+        try {
+            Thread writer = new Thread(() -> {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(100);
+                    Files.write(fifo, new byte[]{1, 2, 3});
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            writer.start();
+            assertTrue(pressure.await(), "FIFO write did not signal pressure");
+            writer.join();
+
+            // Drained, so only the wakeup ends the next wait
+            pressure.wakeup();
+            assertFalse(pressure.await(), "woken up thread saw pressure");
+            assertFalse(pressure.readStats().isPresent(), "FIFO has no pressure stall information");
+        } finally {
+            pressure.close();
+        }
+    }
+
+    @Test
+    void regularFileGetsTrigger() throws Exception {
+        Path file = Files.createFile(folder.resolve("memory.pressure"));
+        MemoryPressure pressure = create(file);
+        pressure.open();
+        try {
+            assertArrayEquals(TRIGGER.getBytes(StandardCharsets.US_ASCII), Files.readAllBytes(file));
+            pressure.wakeup();
+            assertFalse(pressure.await(), "woken up thread saw pressure");
+        } finally {
+            pressure.close();
+        }
+    }
+
+    @Test
+    void wakeupAfterCloseIsIgnored() throws Exception {
+        MemoryPressure pressure = create(Files.createFile(folder.resolve("memory.pressure")));
+        pressure.open();
+        pressure.close();
+        pressure.wakeup();
+    }
+
+    @Test
+    void invalidEnvironmentIsRejected() throws SDNotifyException {
+        Path procCgroup = folder.resolve("cgroup");
+        assertFalse(MemoryPressure.create(libc, "/dev/null", null, procCgroup).isPresent());
+        assertThrows(SDNotifyException.class, () -> MemoryPressure.create(libc, "memory.pressure", null, procCgroup));
+        assertThrows(SDNotifyException.class, () -> MemoryPressure.create(libc, "/memory.pressure", "%", procCgroup));
+    }
+
+    @Test
+    void parsesStats() {
+        Optional<MemoryPressure.Stats> stats = MemoryPressure.parseStats(Arrays.asList(
+            "some avg10=1.50 avg60=0.75 avg300=0.10 total=123456",
+            "full avg10=0.25 avg60=0.00 avg300=0.00 total=789"));
+        assertTrue(stats.isPresent());
+        assertEquals(1.5, stats.get().getSome().getAvg10(), 0);
+        assertEquals(0.1, stats.get().getSome().getAvg300(), 0);
+        assertEquals(123456, stats.get().getSome().getTotal());
+        assertEquals(0.25, stats.get().getFull().getAvg10(), 0);
+        assertEquals(789, stats.get().getFull().getTotal());
+        assertFalse(MemoryPressure.parseStats(Arrays.asList("")).isPresent());
+    }
+
+    private MemoryPressure create(Path path) throws SDNotifyException {
+        String write = Base64.getEncoder().encodeToString(TRIGGER.getBytes(StandardCharsets.US_ASCII));
+        return MemoryPressure.create(libc, path.toString(), write, Paths.get("/nonexistent")).get();
+    }
+}
@@ -0,0 +1,27 @@
+package me.agentoak.mcsdnotifier.system;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link NotifyTransport} that discards all messages, e.g. so benchmarks only measure building them.
+ */
+public final class NullTransport implements NotifyTransport {
+    private int length;
+
+    @Override
+    public int send(ByteBuffer message) {
+        length = message.limit();
+        return 1;
+    }
+
+    /**
+     * Length of the last message, e.g. for benchmarks to return so building it is not optimized away.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,105 @@
+package me.agentoak.mcsdnotifier.system;
+
+import com.sun.jna.Platform;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Sending watchdog notifications must not allocate, so the sender thread never adds garbage on a server that is
+ * already struggling.
+ * <p>
+ * Sends through {@link SocketNotifyTransport} to a {@link FakeServiceManager}, so the native send path is measured, not
+ * just building the message.
+ */
+class SDNotifyAllocationTest {
+    private static final String STATUS = "Running Paper git-Paper-794 (MC: 1.16.5) with 12/20 players, " +
+                                             "TPS avg: 19.98 20.00 20.00";
+    /**
+     * Enough calls that a single allocation per call could not hide in measurement noise, and that the loop gets
+     * compiled during warmup.
+     */
+    private static final int CALLS = 20_000;
+    private static final int ROUNDS = 5;
+
+    private com.sun.management.ThreadMXBean threads;
+    private FakeServiceManager manager;
+    private NotifyTransport transport;
+    private SDNotify sdNotify;
+
+    @BeforeEach
+    void setUp() throws SDNotifyException {
+        assumeTrue(Platform.isLinux(), "Notify sockets are only supported on Linux");
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+            "JVM cannot measure allocated bytes");
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled(),
+            "JVM cannot measure allocated bytes");
+        LibC libc = LibC.load();
+        manager = new FakeServiceManager("@mcsdnotifier-allocation-test-" + System.nanoTime(), 0).start();
+        transport = new SocketNotifyTransport(libc, manager.getAddress());
+        sdNotify = new SDNotify(libc.getpid(), transport, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) {
+            transport.close();
+            manager.close();
+        }
+    }
+
+    @Test
+    void watchdogDoesNotAllocate() {
+        assertEquals(0, allocatedBytes(() -> sdNotify.watchdog()),
+            "bytes allocated by " + CALLS + " calls of watchdog()");
+        assertReceived();
+    }
+
+    @Test
+    void watchdogWithStatusDoesNotAllocate() {
+        assertEquals(0, allocatedBytes(() -> sdNotify.watchdog(STATUS)),
+            "bytes allocated by " + CALLS + " calls of watchdog(String)");
+        assertReceived();
+        assertEquals(STATUS, manager.getStatus());
+    }
+
+    /**
+     * A send that failed would not allocate either, so make sure the messages actually arrived.
+     */
+    private void assertReceived() {
+        long expected = (long) CALLS * (ROUNDS + 1);
+        assertTrue(manager.await(() -> manager.getMessageCount() == expected),
+            manager.getMessageCount() + " of " + expected + " messages received");
+        assertTrue(manager.getErrors().isEmpty(), "protocol errors: " + manager.getErrors());
+    }
+
+    /**
+     * @return the fewest bytes allocated by one of several rounds of calls. An allocating call would allocate in every
+     * round, so the minimum only ignores one-off allocations of the JVM itself, e.g. while the loop gets compiled
+     */
+    private long allocatedBytes(Runnable call) {
+        long thread = Thread.currentThread().getId();
+        // Warm up, so class loading and lazy initialization are not counted
+        for (int i = 0; i < CALLS; i++) {
+            call.run();
+        }
+        threads.getThreadAllocatedBytes(thread);
+
+        long min = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < CALLS; i++) {
+                call.run();
+            }
+            min = Math.min(min, threads.getThreadAllocatedBytes(thread) - before);
+        }
+        return min;
+    }
+}
@@ -0,0 +1,125 @@
+package me.agentoak.mcsdnotifier.system;
+
+import com.sun.jna.Platform;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Checks the messages {@link SDNotify} sends against {@link FakeServiceManager}, which validates them like systemd.
+ */
+class SDNotifyTest {
+    private LibC libc;
+    private FakeServiceManager manager;
+    private NotifyTransport transport;
+    private SDNotify sdNotify;
+
+    @BeforeEach
+    void setUp() throws SDNotifyException {
+        assumeTrue(Platform.isLinux(), "Notify sockets are only supported on Linux");
+        libc = LibC.load();
+        manager = new FakeServiceManager("@mcsdnotifier-test-" + System.nanoTime(), 0).start();
+        transport = new SocketNotifyTransport(libc, manager.getAddress());
+        sdNotify = new SDNotify(libc.getpid(), transport, 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (manager != null) {
+            transport.close();
+            manager.close();
+        }
+    }
+
+    @Test
+    void lifecycle() {
+        sdNotify.init("Loading test");
+        assertTrue(manager.await(() -> manager.getMainPid() != 0), "MAINPID not received");
+        assertEquals(libc.getpid(), manager.getMainPid());
+        assertEquals("Loading test", manager.getStatus());
+
+        sdNotify.extendTimeout(TimeUnit.SECONDS.toMicros(30));
+        assertTrue(manager.await(() -> manager.getExtendTimeoutUsec() == TimeUnit.SECONDS.toMicros(30)),
+            "EXTEND_TIMEOUT_USEC not received");
+
+        sdNotify.ready(null);
+        assertTrue(manager.await(manager::isReady), "READY=1 not received");
+        assertEquals("Running", manager.getStatus());
+
+        sdNotify.stopping(null);
+        assertTrue(manager.await(manager::isStopping), "STOPPING=1 not received");
+        assertTrue(manager.getErrors().isEmpty(), "protocol errors: " + manager.getErrors());
+    }
+
+    @Test
+    void longStatusDoesNotPushOutBatchedFields() {
+        AtomicInteger observed = new AtomicInteger();
+        sdNotify.setObserver((assignments, value, result) -> observed.set(assignments));
+        StringBuilder status = new StringBuilder();
+        while (status.length() <= NotifyMessage.MAX_SIZE) {
+            status.append("long status ");
+        }
+        NotifyBatch batch = new NotifyBatch();
+        batch.add(NotifyField.of("X_TEST", "batched"));
+        batch.add(NotifyField.extendTimeout(30, TimeUnit.SECONDS));
+
+        sdNotify.send(NotifyObserver.WATCHDOG, status.toString(), batch);
+        assertTrue(manager.await(() -> manager.getExtendTimeoutUsec() == TimeUnit.SECONDS.toMicros(30)),
+            "EXTEND_TIMEOUT_USEC not received");
+        assertTrue(manager.getStatus().startsWith("long status"), "truncated status not received");
+        assertEquals(NotifyObserver.WATCHDOG | NotifyObserver.STATUS | NotifyObserver.EXTEND_TIMEOUT_USEC,
+            observed.get());
+        assertTrue(manager.getErrors().isEmpty(), "protocol errors: " + manager.getErrors());
+    }
+
+    @Test
+    void nulInStatusDoesNotDropMessage() {
+        sdNotify.watchdog("world\0name");
+        assertTrue(manager.await(() -> manager.getMessageCount() == 1), "message not received");
+        assertTrue(manager.getErrors().isEmpty(), "protocol errors: " + manager.getErrors());
+        assertEquals(1, manager.getPingIntervals().getCount());
+        assertEquals("world name", manager.getStatus());
+    }
+
+    @Test
+    void rejectsReservedFields() {
+        assertThrows(IllegalArgumentException.class, () -> NotifyField.of("READY", "1"));
+        assertThrows(IllegalArgumentException.class, () -> NotifyField.of("STATUS", "bypassed"));
+        assertThrows(IllegalArgumentException.class, () -> NotifyField.of("EXTEND_TIMEOUT_USEC", "1000"));
+        assertThrows(IllegalArgumentException.class, () -> NotifyField.of("x_lower", "value"));
+    }
+
+    @Test
+    void storedFdsArriveAndAreRemoved() {
+        int first = libc.socket(LibC.AF_UNIX, LibC.SOCK_DGRAM | LibC.SOCK_CLOEXEC, 0);
+        int second = libc.socket(LibC.AF_UNIX, LibC.SOCK_DGRAM | LibC.SOCK_CLOEXEC, 0);
+        try {
+            assertTrue(sdNotify.storeFds("listener", first, second), "FDSTORE=1 could not be sent");
+            assertTrue(manager.await(() -> manager.getStoredFdCount("listener") == 2),
+                "stored file descriptors not received");
+
+            sdNotify.removeFds("listener");
+            assertTrue(manager.await(() -> manager.getStoredFdCount("listener") == 0),
+                "file descriptors not removed from store");
+            assertTrue(manager.getErrors().isEmpty(), "protocol errors: " + manager.getErrors());
+        } finally {
+            libc.close(first);
+            libc.close(second);
+        }
+    }
+
+    @Test
+    void rejectsInvalidFdName() {
+        assertThrows(IllegalArgumentException.class, () -> sdNotify.storeFds("", 0));
+        assertThrows(IllegalArgumentException.class, () -> sdNotify.storeFds("a:b", 0));
+        assertThrows(IllegalArgumentException.class, () -> sdNotify.removeFds("line\nbreak"));
+    }
+}
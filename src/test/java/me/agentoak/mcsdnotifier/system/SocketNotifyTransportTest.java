@@ -0,0 +1,121 @@
+package me.agentoak.mcsdnotifier.system;
+
+import com.sun.jna.Platform;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Sends notifications through {@link SocketNotifyTransport} to a socket bound by {@link FakeServiceManager}.
+ */
+class SocketNotifyTransportTest {
+    @TempDir
+    Path folder;
+
+    private LibC libc;
+
+    @BeforeEach
+    void setUp() {
+        assumeTrue(Platform.isLinux(), "Notify sockets are only supported on Linux");
+        libc = LibC.load();
+    }
+
+    @Test
+    void sendsToPathSocket() throws SDNotifyException {
+        try (FakeServiceManager manager = new FakeServiceManager(folder.resolve("notify").toString(), 0).start()) {
+            assertReceived(manager);
+        }
+    }
+
+    @Test
+    void sendsToAbstractSocket() throws SDNotifyException {
+        try (FakeServiceManager manager = new FakeServiceManager("@mcsdnotifier-test-" + System.nanoTime(), 0)
+                                              .start()) {
+            assertReceived(manager);
+        }
+    }
+
+    @Test
+    void reconnectsWhenSocketIsRecreated() throws Exception {
+        Path socket = folder.resolve("notify");
+        SocketNotifyTransport transport;
+        try (FakeServiceManager manager = new FakeServiceManager(socket.toString(), 0).start()) {
+            transport = new SocketNotifyTransport(libc, socket.toString());
+        }
+        // Like systemd on daemon-reexec
+        Files.delete(socket);
+
+        try (FakeServiceManager manager = new FakeServiceManager(socket.toString(), 0).start()) {
+            SDNotify sdNotify = new SDNotify(libc.getpid(), transport, 0);
+            sdNotify.ready("Reconnected");
+            assertTrue(manager.await(manager::isReady), "READY=1 not received after reconnecting");
+            assertEquals("Reconnected", manager.getStatus());
+        } finally {
+            transport.close();
+        }
+    }
+
+    @Test
+    void recoversWhenSocketIsMissingForOneSend() throws Exception {
+        Path socket = folder.resolve("notify");
+        SocketNotifyTransport transport;
+        try (FakeServiceManager manager = new FakeServiceManager(socket.toString(), 0).start()) {
+            transport = new SocketNotifyTransport(libc, socket.toString());
+        }
+        try {
+            // Nobody listens on the socket, so the send and the reconnect fail
+            NotifyMessage message = new NotifyMessage();
+            assertTrue(transport.send(message.clear().append(NotifyMessage.WATCHDOG).finish()) < 0,
+                "sent without a listening socket");
+
+            Files.delete(socket);
+            try (FakeServiceManager manager = new FakeServiceManager(socket.toString(), 0).start()) {
+                LockSupport.parkNanos(SocketNotifyTransport.RECONNECT_INTERVAL);
+                SDNotify sdNotify = new SDNotify(libc.getpid(), transport, 0);
+                sdNotify.ready("Recovered");
+                assertTrue(manager.await(manager::isReady), "READY=1 not received after the socket came back");
+                assertEquals("Recovered", manager.getStatus());
+            }
+        } finally {
+            transport.close();
+        }
+        assertFalse(transport.send(new NotifyMessage().append(NotifyMessage.WATCHDOG).finish()) > 0,
+            "sent after close");
+    }
+
+    @Test
+    void rejectsUnsupportedAddress() {
+        assertThrows(SDNotifyException.class, () -> new SocketNotifyTransport(libc, "vsock:2:1234"));
+        assertThrows(SDNotifyException.class, () -> new SocketNotifyTransport(libc, "relative/notify"));
+    }
+
+    private void assertReceived(FakeServiceManager manager) throws SDNotifyException {
+        SocketNotifyTransport transport = new SocketNotifyTransport(libc, manager.getAddress());
+        try {
+            SDNotify sdNotify = new SDNotify(libc.getpid(), transport, 0);
+            sdNotify.init(null);
+            sdNotify.ready("Running test");
+            sdNotify.watchdog();
+
+            assertTrue(manager.await(() -> manager.getMessageCount() == 3), "messages not received");
+            assertTrue(manager.getErrors().isEmpty(), "protocol errors: " + manager.getErrors());
+            assertEquals(libc.getpid(), manager.getMainPid());
+            assertTrue(manager.isReady(), "READY=1 not received");
+            assertEquals("Running test", manager.getStatus());
+            assertEquals(1, manager.getPingIntervals().getCount());
+        } finally {
+            transport.close();
+        }
+    }
+}